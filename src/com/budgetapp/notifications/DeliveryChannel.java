@@ -0,0 +1,243 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * One stage of the notification pipeline: a bounded queue drained in batches by its own thread.
+ *
+ * A batch is sent once it is full or its linger time has passed. If sending fails, whatever
+ * the sink had not yet finished with is retried with exponential backoff and full jitter up
+ * to a maximum number of attempts, so nothing already delivered is sent twice. Only this
+ * channel's thread waits during a backoff; when its queue fills up, offer is refused, which
+ * is the backpressure signal to callers, and other channels carry on unaffected.
+ */
+public class DeliveryChannel implements AutoCloseable {
+    //Fraction of capacity above which the channel reports itself as congested
+    private static final double CONGESTED = 0.75;
+
+    private final String name;
+    private final NotificationSink sink;
+    private final BlockingQueue<Notification> queue;
+    private final int capacity;
+    private final int maxBatch;
+    private final long lingerMillis;
+    private final int maxAttempts;
+    private final long baseBackoffMillis;
+    private final long maxBackoffMillis;
+    private final Thread worker;
+    private volatile boolean running = true;
+
+    //Delivery statistics
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private volatile Exception lastError;
+
+    /**
+     * Creates a channel and starts its thread.
+     */
+    public DeliveryChannel(String name, NotificationSink sink, int capacity, int maxBatch, long lingerMillis,
+                           int maxAttempts, long baseBackoffMillis, long maxBackoffMillis) {
+        this.name = name;
+        this.sink = sink;
+        this.capacity = capacity;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.maxBatch = maxBatch;
+        this.lingerMillis = lingerMillis;
+        this.maxAttempts = maxAttempts;
+        this.baseBackoffMillis = baseBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+        this.worker = new Thread(this::run, "notification-" + name);
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * Queues a notification without waiting. Returns false, counting a rejection, if the queue is full.
+     */
+    public boolean offer(Notification notification) {
+        if (this.running && this.queue.offer(notification)) {
+            return true;
+        }
+        this.rejected.increment();
+        return false;
+    }
+
+    /**
+     * Checks whether the queue is filling up, so callers can slow down before offers are refused.
+     */
+    public boolean isCongested() {
+        return this.queue.size() >= this.capacity * CONGESTED;
+    }
+
+    /**
+     * Retrieves the channel's name.
+     */
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * Retrieves the number of queued notifications.
+     */
+    public int getQueueDepth() {
+        return this.queue.size();
+    }
+
+    /**
+     * Retrieves the histogram of time from creation to delivery.
+     */
+    public LatencyHistogram getLatency() {
+        return this.latency;
+    }
+
+    /**
+     * Retrieves the number of notifications delivered.
+     */
+    public long getDelivered() {
+        return this.delivered.sum();
+    }
+
+    /**
+     * Retrieves the number of notifications refused because the queue was full.
+     */
+    public long getRejected() {
+        return this.rejected.sum();
+    }
+
+    /**
+     * Retrieves the number of batch attempts that were retried.
+     */
+    public long getRetries() {
+        return this.retries.sum();
+    }
+
+    /**
+     * Retrieves the number of notifications refused by the destination or dropped after every attempt failed.
+     */
+    public long getFailed() {
+        return this.failed.sum();
+    }
+
+    /**
+     * Retrieves the number of notifications dropped after every attempt failed, a part of getFailed.
+     */
+    public long getDropped() {
+        return this.dropped.sum();
+    }
+
+    /**
+     * Retrieves the error that made the most recent batch attempt fail, or null if none has failed.
+     */
+    public Exception getLastError() {
+        return this.lastError;
+    }
+
+    /**
+     * Stops accepting notifications and lets the thread deliver what is already queued.
+     */
+    public void close() {
+        this.running = false;
+        this.worker.interrupt();
+    }
+
+    /**
+     * Drains the queue in batches until closed and empty.
+     */
+    private void run() {
+        List<Notification> batch = new ArrayList<>(this.maxBatch);
+        while (this.running || !this.queue.isEmpty()) {
+            try {
+                this.fill(batch);
+            } catch (InterruptedException e) {
+                //Closing, deliver whatever is queued without lingering
+                this.queue.drainTo(batch, this.maxBatch - batch.size());
+            }
+            if (!batch.isEmpty()) {
+                this.send(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Waits for a first notification, then gathers more until the batch is full or the linger time is up.
+     */
+    private void fill(List<Notification> batch) throws InterruptedException {
+        Notification first = this.queue.poll(1, TimeUnit.SECONDS);
+        if (first == null) {
+            return;
+        }
+        batch.add(first);
+        this.queue.drainTo(batch, this.maxBatch - batch.size());
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(this.lingerMillis);
+        while (batch.size() < this.maxBatch && this.running) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                break;
+            }
+            Notification more = this.queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (more == null) {
+                break;
+            }
+            batch.add(more);
+            this.queue.drainTo(batch, this.maxBatch - batch.size());
+        }
+    }
+
+    /**
+     * Sends a batch, retrying what is left of it with jittered exponential backoff.
+     */
+    private void send(List<Notification> batch) {
+        int finished = 0;
+        for (int attempt = 1; ; ++attempt) {
+            List<Notification> rest = batch.subList(finished, batch.size());
+            try {
+                this.finish(rest, this.sink.deliver(rest));
+                return;
+            } catch (Exception e) {
+                this.lastError = e;
+                if (e instanceof DeliveryException partial) {
+                    this.finish(rest.subList(0, partial.getCompleted()), partial.getRefused());
+                    finished += partial.getCompleted();
+                }
+                if (finished == batch.size()) {
+                    return;
+                }
+                if (attempt >= this.maxAttempts) {
+                    this.dropped.add(batch.size() - finished);
+                    this.failed.add(batch.size() - finished);
+                    return;
+                }
+            }
+
+            this.retries.increment();
+            long ceiling = Math.min(this.maxBackoffMillis, this.baseBackoffMillis << Math.min(attempt - 1, 20));
+            try {
+                Thread.sleep(ThreadLocalRandom.current().nextLong(ceiling + 1));
+            } catch (InterruptedException e) {
+                //Closing, make the remaining attempts without waiting
+            }
+        }
+    }
+
+    /**
+     * Counts notifications the sink has finished with, of which the given number were refused.
+     */
+    private void finish(List<Notification> done, int refused) {
+        long now = System.nanoTime();
+        for (Notification notification : done) {
+            this.latency.record(now - notification.createdNanos());
+        }
+        this.delivered.add(done.size() - refused);
+        this.failed.add(refused);
+    }
+}
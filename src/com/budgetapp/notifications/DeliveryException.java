@@ -0,0 +1,35 @@
+import java.io.IOException;
+
+/**
+ * Thrown by a sink that failed part-way through a batch, after finishing with its first notifications.
+ */
+public class DeliveryException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    private final int completed;
+    private final int refused;
+
+    /**
+     * Creates an exception for a batch whose first completed notifications were delivered or,
+     * for refused of them, refused for good before the failure.
+     */
+    public DeliveryException(String message, int completed, int refused, Throwable cause) {
+        super(message, cause);
+        this.completed = completed;
+        this.refused = refused;
+    }
+
+    /**
+     * Retrieves the number of leading notifications the sink had finished with.
+     */
+    public int getCompleted() {
+        return this.completed;
+    }
+
+    /**
+     * Retrieves how many of the finished notifications the destination refused for good.
+     */
+    public int getRefused() {
+        return this.refused;
+    }
+}
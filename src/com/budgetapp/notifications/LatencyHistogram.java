@@ -0,0 +1,97 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of latencies in nanoseconds with about 12% relative precision.
+ * Values below 16 get their own bucket; above that each power of two is split into
+ * eight linear sub-buckets, so recording is a few shifts and one atomic increment.
+ */
+public class LatencyHistogram {
+    //Bucket layout
+    private static final int LINEAR = 16;
+    private static final int SUB_BITS = 3;
+    private static final int SUBS = 1 << SUB_BITS;
+    private static final int BUCKETS = LINEAR + (63 - 4) * SUBS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records one latency. Negative values are recorded as zero.
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        this.counts.incrementAndGet(bucket(value));
+        this.count.incrementAndGet();
+        this.max.accumulateAndGet(value, Math::max);
+    }
+
+    /**
+     * Retrieves the number of recorded latencies.
+     */
+    public long getCount() {
+        return this.count.get();
+    }
+
+    /**
+     * Retrieves the largest recorded latency.
+     */
+    public long getMax() {
+        return this.max.get();
+    }
+
+    /**
+     * Retrieves an upper bound for the given percentile, between 0 and 100, or 0 if nothing was recorded.
+     */
+    public long getPercentile(double percentile) {
+        long total = this.count.get();
+        if (total == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long)Math.ceil(total * percentile / 100.0));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; ++i) {
+            seen += this.counts.get(i);
+            if (seen >= rank) {
+                return Math.min(upperBound(i), this.max.get());
+            }
+        }
+        return this.max.get();
+    }
+
+    /**
+     * Summarises the histogram in milliseconds.
+     */
+    public String toString() {
+        return String.format("count=%d p50=%.1fms p90=%.1fms p99=%.1fms max=%.1fms", this.getCount(),
+                this.getPercentile(50) / 1e6, this.getPercentile(90) / 1e6,
+                this.getPercentile(99) / 1e6, this.getMax() / 1e6);
+    }
+
+    /**
+     * Finds the bucket holding a value.
+     */
+    private static int bucket(long value) {
+        if (value < LINEAR) {
+            return (int)value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int)(value >>> (exponent - SUB_BITS)) & (SUBS - 1);
+        return LINEAR + (exponent - 4) * SUBS + sub;
+    }
+
+    /**
+     * Retrieves the largest value a bucket holds.
+     */
+    private static long upperBound(int bucket) {
+        if (bucket < LINEAR) {
+            return bucket;
+        }
+        int exponent = (bucket - LINEAR) / SUBS + 4;
+        int sub = (bucket - LINEAR) % SUBS;
+        long lower = (long)(SUBS + sub) << (exponent - SUB_BITS);
+        return lower + (1L << (exponent - SUB_BITS)) - 1;
+    }
+}
@@ -0,0 +1,14 @@
+/**
+ * One message to deliver, as handed to each enabled delivery channel.
+ * Scheduled reminders carry the time they fell due; other notifications carry 0.
+ */
+public record Notification(int profile, NotificationType type, String recipient, String title,
+                           String message, long createdNanos, long dueMillis) {
+    /**
+     * Creates a notification that was not scheduled.
+     */
+    public Notification(int profile, NotificationType type, String recipient, String title, String message,
+                        long createdNanos) {
+        this(profile, type, recipient, title, message, createdNanos, 0);
+    }
+}
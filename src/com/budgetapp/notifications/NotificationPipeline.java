@@ -0,0 +1,154 @@
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.function.IntFunction;
+
+/**
+ * Delivers reminders over the email, desktop and push channels selected in the notification settings.
+ *
+ * Each channel has its own bounded queue and thread, so a slow or failing channel backs up
+ * only itself: once its queue is full further notifications for it are refused and counted,
+ * while the other channels keep delivering. With a throttle set, repeats are dropped and
+ * each channel is rate limited per profile before anything is queued.
+ */
+public class NotificationPipeline implements ReminderHandler, AutoCloseable {
+    //Retry policy shared by every channel
+    private static final int MAX_ATTEMPTS = 5;
+    private static final long BASE_BACKOFF_MS = 500;
+    private static final long MAX_BACKOFF_MS = 30000;
+
+    private final IntFunction<NotificationSettings> settings;
+    private final IntFunction<String> addresses;
+    private final DeliveryChannel email;
+    private final DeliveryChannel desktop;
+    private final DeliveryChannel push;
+    private volatile NotificationThrottle throttle;
+    private volatile SummaryAggregator summaries;
+
+    /**
+     * Creates a pipeline looking up each profile's settings and email address with the given functions.
+     */
+    public NotificationPipeline(IntFunction<NotificationSettings> settings, IntFunction<String> addresses,
+                                NotificationSink email, NotificationSink desktop, NotificationSink push) {
+        this.settings = settings;
+        this.addresses = addresses;
+        //Email batches for longer to share SMTP sessions, desktop lingers just enough to coalesce bursts
+        this.email = new DeliveryChannel("email", email, 10000, 50, 2000, MAX_ATTEMPTS, BASE_BACKOFF_MS, MAX_BACKOFF_MS);
+        this.desktop = new DeliveryChannel("desktop", desktop, 1000, 20, 250, MAX_ATTEMPTS, BASE_BACKOFF_MS, MAX_BACKOFF_MS);
+        this.push = new DeliveryChannel("push", push, 10000, 100, 0, MAX_ATTEMPTS, BASE_BACKOFF_MS, MAX_BACKOFF_MS);
+    }
+
+    /**
+     * Creates a pipeline for the active user, showing desktop notifications in the system tray.
+     */
+    public static NotificationPipeline forActiveSettings(NotificationSink email, NotificationSink push) {
+        NotificationPipeline pipeline = new NotificationPipeline(profile -> SettingsManager.getNotificationSettings(),
+                profile -> SettingsManager.getEmail(), email, new SystemTrayNotifier(), push);
+        pipeline.setThrottle(new NotificationThrottle());
+        return pipeline;
+    }
+
+    /**
+     * Sets the throttle used to drop repeats and rate limit each channel, or null for none.
+     */
+    public void setThrottle(NotificationThrottle throttle) {
+        this.throttle = throttle;
+    }
+
+    /**
+     * Sets the aggregator weekly summary reminders take their text from, or null to send them without it.
+     */
+    public void setSummaries(SummaryAggregator summaries) {
+        this.summaries = summaries;
+    }
+
+    /**
+     * Queues a reminder that has fallen due on every channel its profile has switched on.
+     */
+    public void reminderDue(int profile, NotificationType type, long dueMillis) {
+        String message = "You have a " + type.getTitle().toLowerCase() + " from SpentWise.";
+        SummaryAggregator summaries = this.summaries;
+        if (type == NotificationType.WEEKLY_SUMMARY && summaries != null) {
+            LocalDate dueDate = Instant.ofEpochMilli(dueMillis).atZone(ZoneId.systemDefault()).toLocalDate();
+            message = summaries.getSummaryDue(dueDate, this.settings.apply(profile)).toMessage();
+        }
+        this.dispatch(new Notification(profile, type, this.addresses.apply(profile), type.getTitle(), message,
+                System.nanoTime(), dueMillis));
+    }
+
+    /**
+     * Queues a notification on every channel its profile has switched on.
+     * Returns false if any of those channels refused it because its queue was full; repeats and
+     * rate limited deliveries are dropped by design and do not count as refusals. The notification
+     * only counts as sent, for catching repeats, once some channel has taken it.
+     */
+    public boolean dispatch(Notification notification) {
+        NotificationSettings current = this.settings.apply(notification.profile());
+        NotificationThrottle throttle = this.throttle;
+        long now = System.currentTimeMillis();
+        if (throttle != null && throttle.isDuplicate(notification, now)) {
+            return true;
+        }
+
+        boolean accepted = true;
+        boolean taken = false;
+        if (current.notifyEmail() && notification.recipient() != null && !notification.recipient().isEmpty()
+                && admit(throttle, notification, NotificationThrottle.EMAIL, current, now)) {
+            boolean offered = this.email.offer(notification);
+            accepted &= offered;
+            taken |= offered;
+        }
+        if (current.notifyDesktop() && admit(throttle, notification, NotificationThrottle.DESKTOP, current, now)) {
+            boolean offered = this.desktop.offer(notification);
+            accepted &= offered;
+            taken |= offered;
+        }
+        if (current.notifyPush() && admit(throttle, notification, NotificationThrottle.PUSH, current, now)) {
+            boolean offered = this.push.offer(notification);
+            accepted &= offered;
+            taken |= offered;
+        }
+        if (throttle != null && taken) {
+            throttle.remember(notification, current, now);
+        }
+        return accepted;
+    }
+
+    /**
+     * Retrieves the email channel.
+     */
+    public DeliveryChannel getEmailChannel() {
+        return this.email;
+    }
+
+    /**
+     * Retrieves the desktop channel.
+     */
+    public DeliveryChannel getDesktopChannel() {
+        return this.desktop;
+    }
+
+    /**
+     * Retrieves the push channel.
+     */
+    public DeliveryChannel getPushChannel() {
+        return this.push;
+    }
+
+    /**
+     * Checks a channel's rate limit for a notification, letting everything through without a throttle.
+     */
+    private static boolean admit(NotificationThrottle throttle, Notification notification, int channel,
+                                 NotificationSettings settings, long now) {
+        return throttle == null || throttle.tryAcquire(notification.profile(), channel, settings, now);
+    }
+
+    /**
+     * Stops every channel once its queued notifications are delivered.
+     */
+    public void close() {
+        this.email.close();
+        this.desktop.close();
+        this.push.close();
+    }
+}
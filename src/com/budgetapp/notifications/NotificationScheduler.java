@@ -0,0 +1,316 @@
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.temporal.TemporalAdjusters;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Turns each profile's notification settings into recurring reminders on a timing wheel.
+ *
+ * Every enabled notification type of a profile is one timer due at the profile's notify
+ * time, daily, on Mondays or on the first of the month depending on its frequency. A
+ * single daemon thread advances the wheel once per tick and hands due reminders to the
+ * ReminderHandler, re-arming each one for its next occurrence. Changing a profile's
+ * settings only cancels and re-arms that profile's own timers. With a quiet hours
+ * evaluator set, a reminder falling in quiet hours is re-armed for the end of them.
+ */
+public class NotificationScheduler implements AutoCloseable {
+    //Default wheel resolution
+    private static final long DEFAULT_TICK_MS = 1000;
+
+    //Packed per-profile plan: enabled type mask, frequency ordinal and minute of day
+    private static final int NO_PLAN = -1;
+    private static final int TYPES = NotificationType.values().length;
+    private static final NotificationType[] TYPE_VALUES = NotificationType.values();
+    private static final long NONE = -1;
+
+    private final TimingWheel wheel;
+    private final long tickMillis;
+    private final ZoneId zone;
+    private final ReminderHandler handler;
+    private final Thread thread;
+    private volatile boolean running = true;
+    private QuietHoursEvaluator quietHours;
+
+    //Wheel handle and occurrence time for each profile and type, and each profile's plan
+    private long[] handles = new long[0];
+    private long[] occurrences = new long[0];
+    private int[] plans = new int[0];
+
+    //Last packed settings and computed occurrence, shared by the many profiles with one plan
+    private NotificationSettings memoSettings;
+    private int memoSettingsPlan;
+    private int memoPlan = NO_PLAN;
+    private long memoAfter;
+    private long memoNext;
+
+    //Reminders that fell due on the current advance, as profile and type slots with their occurrence times
+    private int[] due = new int[64];
+    private long[] dueTimes = new long[64];
+    private int dueCount;
+
+    /**
+     * Creates a scheduler with one second resolution in the system time zone.
+     */
+    public NotificationScheduler(ReminderHandler handler) {
+        this(handler, DEFAULT_TICK_MS, ZoneId.systemDefault());
+    }
+
+    /**
+     * Creates a scheduler and starts its thread.
+     */
+    public NotificationScheduler(ReminderHandler handler, long tickMillis, ZoneId zone) {
+        this.handler = handler;
+        this.tickMillis = tickMillis;
+        this.zone = zone;
+        this.wheel = new TimingWheel(System.currentTimeMillis() / tickMillis, 1024);
+        this.thread = new Thread(this::run, "notification-scheduler");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Schedules a profile's reminders from its notification settings, replacing any it had.
+     * Timers whose next occurrence is unchanged are left in place.
+     */
+    public synchronized void schedule(int profile, NotificationSettings settings) {
+        if (!settings.equals(this.memoSettings)) {
+            this.memoSettings = settings;
+            this.memoSettingsPlan = plan(settings);
+        }
+        int plan = this.memoSettingsPlan;
+        this.ensureProfile(profile);
+        if (this.plans[profile] == plan) {
+            return;
+        }
+        if (plan == NO_PLAN) {
+            this.cancel(profile);
+            return;
+        }
+        this.plans[profile] = plan;
+
+        long now = System.currentTimeMillis();
+        long next = this.nextOccurrence(plan, now);
+        long nextTick = this.tickOf(next);
+        for (int type = 0; type < TYPES; ++type) {
+            int slot = profile * TYPES + type;
+            long handle = this.handles[slot];
+            if ((plan & (1 << type)) == 0) {
+                this.cancelSlot(slot);
+            } else if (handle == NONE || this.wheel.deadline(handle) != nextTick) {
+                this.cancelSlot(slot);
+                this.handles[slot] = this.wheel.schedule(nextTick, slot);
+                this.occurrences[slot] = next;
+            }
+        }
+    }
+
+    /**
+     * Sets the evaluator used to hold back reminders during quiet hours, or null for none.
+     */
+    public synchronized void setQuietHours(QuietHoursEvaluator quietHours) {
+        this.quietHours = quietHours;
+    }
+
+    /**
+     * Cancels every reminder of a profile.
+     */
+    public synchronized void cancel(int profile) {
+        if (profile >= this.plans.length) {
+            return;
+        }
+        this.plans[profile] = NO_PLAN;
+        for (int type = 0; type < TYPES; ++type) {
+            this.cancelSlot(profile * TYPES + type);
+        }
+    }
+
+    /**
+     * Retrieves the number of pending reminders across all profiles.
+     */
+    public synchronized int size() {
+        return this.wheel.size();
+    }
+
+    /**
+     * Keeps a profile's reminders in step with the active settings in SettingsManager.
+     */
+    public void followActiveSettings(int profile) {
+        this.schedule(profile, SettingsManager.getNotificationSettings());
+        SettingsManager.subscribe((event) -> this.schedule(profile, SettingsManager.getNotificationSettings()),
+                Runnable::run, List.copyOf(SettingsManager.NOTIFICATION_KEYS));
+    }
+
+    /**
+     * Stops the scheduler thread. Pending reminders are dropped.
+     */
+    public void close() {
+        this.running = false;
+        this.thread.interrupt();
+    }
+
+    /**
+     * Advances the wheel once per tick and delivers due reminders outside the lock.
+     */
+    private void run() {
+        int[] delivering = new int[0];
+        long[] deliveringTimes = new long[0];
+        while (this.running) {
+            long now = System.currentTimeMillis();
+            long tick = now / this.tickMillis;
+            int count;
+            synchronized (this) {
+                this.dueCount = 0;
+                this.wheel.advance(tick, this::fire);
+                count = this.dueCount;
+                if (delivering.length < count) {
+                    delivering = new int[this.due.length];
+                    deliveringTimes = new long[this.due.length];
+                }
+                System.arraycopy(this.due, 0, delivering, 0, count);
+                System.arraycopy(this.dueTimes, 0, deliveringTimes, 0, count);
+            }
+
+            for (int i = 0; i < count; ++i) {
+                try {
+                    this.handler.reminderDue(delivering[i] / TYPES, TYPE_VALUES[delivering[i] % TYPES], deliveringTimes[i]);
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                }
+            }
+
+            try {
+                Thread.sleep(Math.max(1, (tick + 1) * this.tickMillis - System.currentTimeMillis()));
+            } catch (InterruptedException e) {
+                //Woken by close
+            }
+        }
+    }
+
+    /**
+     * Records a due reminder with the occurrence it was armed for, and re-arms it for its next
+     * occurrence. A reminder held back by quiet hours keeps its occurrence time. Called holding the lock.
+     */
+    private void fire(int slot) {
+        this.handles[slot] = NONE;
+        int plan = this.plans[slot / TYPES];
+        if (plan == NO_PLAN || (plan & (1 << (slot % TYPES))) == 0) {
+            return;
+        }
+
+        long firedMillis = this.wheel.currentTick() * this.tickMillis;
+        if (this.quietHours != null) {
+            long allowed = this.quietHours.nextAllowed(slot / TYPES, firedMillis);
+            if (allowed > firedMillis) {
+                //Deferred reminders fire once quiet hours end, then recur as usual
+                this.handles[slot] = this.wheel.schedule((allowed + this.tickMillis - 1) / this.tickMillis, slot);
+                return;
+            }
+        }
+
+        if (this.dueCount == this.due.length) {
+            this.due = Arrays.copyOf(this.due, this.dueCount * 2);
+            this.dueTimes = Arrays.copyOf(this.dueTimes, this.dueCount * 2);
+        }
+        this.due[this.dueCount] = slot;
+        this.dueTimes[this.dueCount++] = this.occurrences[slot];
+        //The tick can start before the occurrence itself, which must not come round again
+        long next = this.nextOccurrence(plan, Math.max(firedMillis, this.occurrences[slot]));
+        this.handles[slot] = this.wheel.schedule(this.tickOf(next), slot);
+        this.occurrences[slot] = next;
+    }
+
+    /**
+     * Cancels the timer in a profile and type slot, if any. Called holding the lock.
+     */
+    private void cancelSlot(int slot) {
+        if (slot < this.handles.length && this.handles[slot] != NONE) {
+            this.wheel.cancel(this.handles[slot]);
+            this.handles[slot] = NONE;
+        }
+    }
+
+    /**
+     * Grows the per-profile arrays to hold a profile. Called holding the lock.
+     */
+    private void ensureProfile(int profile) {
+        if (profile < 0) {
+            throw new IllegalArgumentException("Profile must not be negative: " + profile);
+        }
+        if (profile >= this.plans.length) {
+            int capacity = Math.max(profile + 1, this.plans.length * 2);
+            int previous = this.plans.length;
+            this.plans = Arrays.copyOf(this.plans, capacity);
+            Arrays.fill(this.plans, previous, capacity, NO_PLAN);
+            this.handles = Arrays.copyOf(this.handles, capacity * TYPES);
+            Arrays.fill(this.handles, previous * TYPES, capacity * TYPES, NONE);
+            this.occurrences = Arrays.copyOf(this.occurrences, capacity * TYPES);
+        }
+    }
+
+    /**
+     * Computes the first occurrence of a plan strictly after the given time.
+     */
+    private long nextOccurrence(int plan, long afterMillis) {
+        if (plan == this.memoPlan && afterMillis >= this.memoAfter && afterMillis < this.memoNext) {
+            return this.memoNext;
+        }
+
+        int frequency = (plan >>> TYPES) & 0x3;
+        LocalTime time = LocalTime.ofSecondOfDay((long)(plan >>> (TYPES + 2)) * 60);
+        LocalDate today = Instant.ofEpochMilli(afterMillis).atZone(this.zone).toLocalDate();
+        LocalDate date = switch (frequency) {
+            case 0 -> today;
+            case 2 -> today.withDayOfMonth(1);
+            default -> today.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+        };
+
+        long next = date.atTime(time).atZone(this.zone).toInstant().toEpochMilli();
+        while (next <= afterMillis) {
+            date = switch (frequency) {
+                case 0 -> date.plusDays(1);
+                case 2 -> date.plusMonths(1);
+                default -> date.plusWeeks(1);
+            };
+            next = date.atTime(time).atZone(this.zone).toInstant().toEpochMilli();
+        }
+
+        this.memoPlan = plan;
+        this.memoAfter = afterMillis;
+        this.memoNext = next;
+        return next;
+    }
+
+    /**
+     * Converts a time to the wheel tick it falls in.
+     */
+    private long tickOf(long millis) {
+        return millis / this.tickMillis;
+    }
+
+    /**
+     * Packs the parts of the notification settings that decide when reminders fire,
+     * or returns NO_PLAN if no reminder type is enabled.
+     */
+    private static int plan(NotificationSettings settings) {
+        int mask = 0;
+        for (NotificationType type : TYPE_VALUES) {
+            if (type.isEnabled(settings)) {
+                mask |= 1 << type.ordinal();
+            }
+        }
+        if (mask == 0) {
+            return NO_PLAN;
+        }
+
+        int frequency = SettingsSchema.ordinal(SettingsSchema.FREQUENCIES, settings.frequency());
+        if (frequency < 0) {
+            frequency = SettingsSchema.ordinal(SettingsSchema.FREQUENCIES, SettingsSchema.NOTIFY_FREQUENCY.defaultValue());
+        }
+        LocalTime time = SettingsSchema.NOTIFY_TIME.parse(settings.notifyTime());
+        return mask | (frequency << TYPES) | ((time.getHour() * 60 + time.getMinute()) << (TYPES + 2));
+    }
+}
@@ -0,0 +1,15 @@
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Transport at the end of a delivery channel, such as SMTP, the system tray or a push service.
+ */
+public interface NotificationSink {
+    /**
+     * Delivers a batch of notifications in order, returning how many the destination refused for good;
+     * those are dropped rather than retried. A sink that fails part-way throws a DeliveryException
+     * saying how many leading notifications it had finished with, so only the rest is retried.
+     * Any other exception makes the channel retry the whole batch later.
+     */
+    int deliver(List<Notification> batch) throws IOException;
+}
@@ -0,0 +1,247 @@
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits how many notifications each profile receives per channel and drops repeats of the same one.
+ *
+ * Every profile has a token bucket per channel, refilled at a number of notifications per
+ * notify frequency period, so weekly users get a weekly allowance rather than a daily one.
+ * Each bucket is one packed long in an array indexed by profile, and an untouched bucket
+ * is simply a full one.
+ *
+ * Repeats are caught by a fixed-size table of notification fingerprints, each kept for one
+ * frequency period after a channel last took the notification. A scheduled reminder's due
+ * time is part of its fingerprint, so the next occurrence is never mistaken for a repeat
+ * however short the month or the day of a clock change. A fingerprint is looked up in a small
+ * group of neighbouring slots; expired slots are reused, and when a group is full the entry
+ * closest to expiry is evicted, so memory stays at the size chosen up front however many
+ * notifications pass through.
+ */
+public class NotificationThrottle {
+    //Channels with their own bucket
+    public static final int EMAIL = 0;
+    public static final int DESKTOP = 1;
+    public static final int PUSH = 2;
+    private static final int CHANNELS = 3;
+
+    //Defaults: about a million fingerprints, bursts of 5 and 20 notifications per period
+    private static final int DEFAULT_MAX_KEYS = 1 << 20;
+    private static final int DEFAULT_BURST = 5;
+    private static final int DEFAULT_PER_PERIOD = 20;
+
+    //Length of each frequency period, by ordinal of SettingsSchema.FREQUENCIES
+    private static final long[] PERIOD_MS = new long[]{TimeUnit.DAYS.toMillis(1), TimeUnit.DAYS.toMillis(7),
+            TimeUnit.DAYS.toMillis(30)};
+
+    //Packed bucket: thousandths of a token in the top bits, last refill plus one in the low 40 bits
+    private static final int TIME_BITS = 40;
+    private static final long TIME_MASK = (1L << TIME_BITS) - 1;
+    private static final int MILLI = 1000;
+
+    //Slots searched for a fingerprint
+    private static final int PROBE = 8;
+
+    private final long origin = System.currentTimeMillis();
+    private final long burst;
+    private final long perPeriod;
+    private long[] buckets = new long[0];
+
+    //Fingerprint table, with each entry's expiry in seconds since origin plus one
+    private final long[] fingerprints;
+    private final int[] expiries;
+    private final int mask;
+
+    //Statistics
+    private long duplicates;
+    private long rateLimited;
+    private long evicted;
+
+    /**
+     * Creates a throttle with the default sizes.
+     */
+    public NotificationThrottle() {
+        this(DEFAULT_MAX_KEYS, DEFAULT_BURST, DEFAULT_PER_PERIOD);
+    }
+
+    /**
+     * Creates a throttle holding at least maxKeys fingerprints, allowing bursts of the given size
+     * and refilling perPeriod notifications per frequency period.
+     */
+    public NotificationThrottle(int maxKeys, int burst, int perPeriod) {
+        if (burst < 1 || burst >= (1 << (63 - TIME_BITS)) / MILLI || perPeriod < 1 || maxKeys < 1 || maxKeys > 1 << 30) {
+            throw new IllegalArgumentException("Invalid throttle limits");
+        }
+        int capacity = Math.max(PROBE, Integer.highestOneBit(maxKeys - 1) << 1);
+        this.fingerprints = new long[capacity];
+        this.expiries = new int[capacity];
+        this.mask = capacity - 1;
+        this.burst = burst;
+        this.perPeriod = perPeriod;
+    }
+
+    /**
+     * Checks whether the same notification was already delivered within the profile's frequency period.
+     */
+    public synchronized boolean isDuplicate(Notification notification, long nowMillis) {
+        long fingerprint = fingerprint(notification);
+        int now = (int)(this.sinceOrigin(nowMillis) / 1000) + 1;
+        int start = (int)(fingerprint ^ (fingerprint >>> 32)) & this.mask;
+        for (int i = 0; i < PROBE; ++i) {
+            int slot = (start + i) & this.mask;
+            if (this.fingerprints[slot] == fingerprint && this.expiries[slot] > now) {
+                this.duplicates++;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Remembers a notification a channel has taken, so repeats within the profile's frequency period are dropped.
+     */
+    public synchronized void remember(Notification notification, NotificationSettings settings, long nowMillis) {
+        long fingerprint = fingerprint(notification);
+        int now = (int)(this.sinceOrigin(nowMillis) / 1000) + 1;
+        int start = (int)(fingerprint ^ (fingerprint >>> 32)) & this.mask;
+
+        int free = -1;
+        int oldest = start;
+        for (int i = 0; i < PROBE; ++i) {
+            int slot = (start + i) & this.mask;
+            boolean live = this.expiries[slot] > now;
+            if (this.fingerprints[slot] == fingerprint) {
+                free = slot;
+                break;
+            }
+            if (!live && free < 0) {
+                free = slot;
+            }
+            if (this.expiries[slot] < this.expiries[oldest]) {
+                oldest = slot;
+            }
+        }
+
+        if (free < 0) {
+            free = oldest;
+            this.evicted++;
+        }
+        this.fingerprints[free] = fingerprint;
+        this.expiries[free] = (int)Math.min(Integer.MAX_VALUE, now + period(settings) / 1000);
+    }
+
+    /**
+     * Takes a token from a profile's bucket for a channel, returning false if it is empty.
+     */
+    public synchronized boolean tryAcquire(int profile, int channel, NotificationSettings settings, long nowMillis) {
+        int index = profile * CHANNELS + channel;
+        if (index >= this.buckets.length) {
+            this.buckets = Arrays.copyOf(this.buckets, Math.max(index + 1, this.buckets.length * 2));
+        }
+
+        long now = this.sinceOrigin(nowMillis);
+        long full = this.burst * MILLI;
+        long packed = this.buckets[index];
+        long tokens = full;
+        long refilled = now;
+        if (packed != 0) {
+            tokens = packed >>> TIME_BITS;
+            refilled = Math.min(now, (packed & TIME_MASK) - 1);
+            //Only move the refill time on by what the added tokens account for, so fractions are not lost
+            long rate = this.perPeriod * MILLI;
+            long period = period(settings);
+            long added = (now - refilled) * rate / period;
+            if (tokens + added >= full) {
+                tokens = full;
+                refilled = now;
+            } else {
+                tokens += added;
+                refilled += added * period / rate;
+            }
+        }
+
+        boolean allowed = tokens >= MILLI;
+        if (allowed) {
+            tokens -= MILLI;
+        } else {
+            this.rateLimited++;
+        }
+        this.buckets[index] = (tokens << TIME_BITS) | (refilled + 1);
+        return allowed;
+    }
+
+    /**
+     * Retrieves the number of notifications dropped as repeats.
+     */
+    public synchronized long getDuplicates() {
+        return this.duplicates;
+    }
+
+    /**
+     * Retrieves the number of channel deliveries refused for lack of tokens.
+     */
+    public synchronized long getRateLimited() {
+        return this.rateLimited;
+    }
+
+    /**
+     * Retrieves the number of live fingerprints evicted to make room for new ones.
+     */
+    public synchronized long getEvicted() {
+        return this.evicted;
+    }
+
+    /**
+     * Retrieves the number of fingerprints the table holds.
+     */
+    public int getCapacity() {
+        return this.fingerprints.length;
+    }
+
+    /**
+     * Retrieves milliseconds since this throttle was created, clamped to the packed time range.
+     */
+    private long sinceOrigin(long nowMillis) {
+        return Math.min(TIME_MASK - 1, Math.max(0, nowMillis - this.origin));
+    }
+
+    /**
+     * Retrieves the frequency period of a profile's settings.
+     */
+    private static long period(NotificationSettings settings) {
+        int frequency = settings.frequencyOrdinal();
+        if (frequency < 0) {
+            frequency = SettingsSchema.ordinal(SettingsSchema.FREQUENCIES, SettingsSchema.NOTIFY_FREQUENCY.defaultValue());
+        }
+        return PERIOD_MS[frequency];
+    }
+
+    /**
+     * Hashes a notification's profile, type, due time and text into a non-zero 64 bit fingerprint.
+     */
+    private static long fingerprint(Notification notification) {
+        //FNV-1a over the fields, then a final mix to spread the bits
+        long hash = 0xcbf29ce484222325L;
+        hash = (hash ^ notification.profile()) * 0x100000001b3L;
+        hash = (hash ^ notification.type().ordinal()) * 0x100000001b3L;
+        hash = (hash ^ notification.dueMillis()) * 0x100000001b3L;
+        hash = mix(hash, notification.title());
+        hash = mix(hash, notification.message());
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash == 0 ? 1 : hash;
+    }
+
+    /**
+     * Folds a string into an FNV-1a hash.
+     */
+    private static long mix(long hash, String text) {
+        if (text == null) {
+            return hash * 0x100000001b3L;
+        }
+        for (int i = 0; i < text.length(); ++i) {
+            hash = (hash ^ text.charAt(i)) * 0x100000001b3L;
+        }
+        return (hash ^ 0xff) * 0x100000001b3L;
+    }
+}
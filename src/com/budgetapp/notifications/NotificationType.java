@@ -0,0 +1,36 @@
+/**
+ * The kinds of reminder the user can switch on in the notification settings.
+ */
+public enum NotificationType {
+    BILLS("Bill Due Reminder"),
+    SUBSCRIPTIONS("Subscription Tracking"),
+    WEEKLY_SUMMARY("Weekly Summaries"),
+    OVERSPEND("Overspending Nudges"),
+    MOTIVATION("Motivational Boosts");
+
+    private final String title;
+
+    NotificationType(String title) {
+        this.title = title;
+    }
+
+    /**
+     * Retrieves the title shown to the user.
+     */
+    public String getTitle() {
+        return this.title;
+    }
+
+    /**
+     * Checks whether this kind of reminder is switched on in the given settings.
+     */
+    public boolean isEnabled(NotificationSettings settings) {
+        return switch (this) {
+            case BILLS -> settings.notifyBills();
+            case SUBSCRIPTIONS -> settings.notifySubscriptions();
+            case WEEKLY_SUMMARY -> settings.notifyWeekly();
+            case OVERSPEND -> settings.notifyOverspend();
+            case MOTIVATION -> settings.notifyMotivation();
+        };
+    }
+}
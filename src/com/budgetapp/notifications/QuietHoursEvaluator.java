@@ -0,0 +1,244 @@
+import java.time.Instant;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decides whether a profile is inside its quiet hours, with one bit test per check.
+ *
+ * Each distinct quiet window is compiled once into a bitmask with one bit per minute of
+ * the local day, so a window that wraps past midnight costs the same as any other.
+ * Profiles refer to a shared mask and a shared time zone by index. The zone's current
+ * UTC offset is cached until its next transition, so the local minute of an instant is
+ * plain arithmetic and daylight saving changes are picked up exactly when they happen.
+ *
+ * Checks may run on any thread while settings are updated.
+ */
+public class QuietHoursEvaluator {
+    //Minutes in a day and words in a compiled mask
+    private static final int MINUTES = 24 * 60;
+    private static final int WORDS = (MINUTES + 63) / 64;
+    private static final long MINUTE_MS = 60_000L;
+
+    //Compiled masks, index 0 is the empty mask used when quiet hours are off
+    private volatile long[][] masks = new long[][]{new long[WORDS]};
+    private final Map<Integer, Integer> maskIds = new HashMap<>();
+
+    //Time zones and their cached offsets
+    private final Map<ZoneId, Integer> zoneIds = new HashMap<>();
+    private volatile ZoneOffsetWindow[] offsets = new ZoneOffsetWindow[0];
+
+    //Mask and zone index of each profile
+    private volatile int[] profileMasks = new int[0];
+    private volatile int[] profileZones = new int[0];
+    private final int defaultZone;
+
+    /**
+     * Creates an evaluator whose profiles are in the system time zone until told otherwise.
+     */
+    public QuietHoursEvaluator() {
+        this(ZoneId.systemDefault());
+    }
+
+    /**
+     * Creates an evaluator whose profiles are in the given time zone until told otherwise.
+     */
+    public QuietHoursEvaluator(ZoneId defaultZone) {
+        this.defaultZone = this.zoneIndex(defaultZone);
+    }
+
+    /**
+     * Updates a profile's quiet window from its notification settings.
+     * The mask is only compiled the first time a window is seen.
+     */
+    public synchronized void update(int profile, NotificationSettings settings) {
+        this.ensureProfile(profile);
+        int mask = 0;
+        if (settings.quietHours()) {
+            LocalTime from = SettingsSchema.QUIET_FROM.parse(settings.quietFrom());
+            LocalTime to = SettingsSchema.QUIET_TO.parse(settings.quietTo());
+            mask = this.maskIndex(from.getHour() * 60 + from.getMinute(), to.getHour() * 60 + to.getMinute());
+        }
+        this.profileMasks[profile] = mask;
+    }
+
+    /**
+     * Sets the time zone a profile's quiet hours are read in.
+     */
+    public synchronized void setZone(int profile, ZoneId zone) {
+        this.ensureProfile(profile);
+        this.profileZones[profile] = this.zoneIndex(zone);
+    }
+
+    /**
+     * Keeps a profile's quiet window in step with the active settings in SettingsManager.
+     */
+    public void followActiveSettings(int profile) {
+        this.update(profile, SettingsManager.getNotificationSettings());
+        SettingsManager.subscribe((event) -> this.update(profile, SettingsManager.getNotificationSettings()),
+                Runnable::run, List.of(SettingsManager.KEY_QUIET_HOURS, SettingsManager.KEY_QUIET_FROM,
+                        SettingsManager.KEY_QUIET_TO));
+    }
+
+    /**
+     * Checks whether an instant falls inside a profile's quiet hours.
+     */
+    public boolean isQuiet(int profile, long epochMillis) {
+        long[] mask = this.maskOf(profile);
+        int offset = this.offsetWindow(this.zoneOf(profile), epochMillis).offsetSeconds();
+        int minute = (int)Math.floorMod(Math.floorDiv(epochMillis + offset * 1000L, MINUTE_MS), (long)MINUTES);
+        return (mask[minute >>> 6] & (1L << minute)) != 0;
+    }
+
+    /**
+     * Retrieves the first instant at or after the given one when a profile may be notified.
+     * This is the instant itself unless it falls inside the profile's quiet hours.
+     */
+    public long nextAllowed(int profile, long epochMillis) {
+        long[] mask = this.maskOf(profile);
+        int zone = this.zoneOf(profile);
+        long time = epochMillis;
+
+        //Each pass either finds the answer or moves to a zone transition, at most a few per day
+        for (int pass = 0; pass < 8; ++pass) {
+            ZoneOffsetWindow window = this.offsetWindow(zone, time);
+            int offset = window.offsetSeconds();
+            long localMinutes = Math.floorDiv(time + offset * 1000L, MINUTE_MS);
+            int minute = (int)Math.floorMod(localMinutes, (long)MINUTES);
+            if ((mask[minute >>> 6] & (1L << minute)) == 0) {
+                return time;
+            }
+
+            int clear = nextClear(mask, minute + 1);
+            int distance = clear >= 0 ? clear - minute : nextClear(mask, 0) + MINUTES - minute;
+            long candidate = (localMinutes + distance) * MINUTE_MS - offset * 1000L;
+
+            //The wall clock jumps at a transition, so look again from there
+            if (candidate < window.until()) {
+                return candidate;
+            }
+            time = window.until();
+        }
+        return time;
+    }
+
+    /**
+     * Finds or compiles the mask for a window from one minute of the day up to, but not including, another.
+     * Called holding the lock.
+     */
+    private int maskIndex(int from, int to) {
+        if (from == to) {
+            return 0;
+        }
+
+        Integer known = this.maskIds.get(from * MINUTES + to);
+        if (known != null) {
+            return known;
+        }
+
+        long[] mask = new long[WORDS];
+        for (int minute = from; minute != to; minute = (minute + 1) % MINUTES) {
+            mask[minute >>> 6] |= 1L << minute;
+        }
+        long[][] grown = Arrays.copyOf(this.masks, this.masks.length + 1);
+        grown[grown.length - 1] = mask;
+        this.masks = grown;
+        this.maskIds.put(from * MINUTES + to, grown.length - 1);
+        return grown.length - 1;
+    }
+
+    /**
+     * Finds or registers a time zone. Called holding the lock.
+     */
+    private int zoneIndex(ZoneId zone) {
+        Integer known = this.zoneIds.get(zone);
+        if (known != null) {
+            return known;
+        }
+
+        ZoneOffsetWindow[] grown = Arrays.copyOf(this.offsets, this.offsets.length + 1);
+        grown[grown.length - 1] = ZoneOffsetWindow.at(zone.getRules(), System.currentTimeMillis());
+        this.offsets = grown;
+        this.zoneIds.put(zone, grown.length - 1);
+        return grown.length - 1;
+    }
+
+    /**
+     * Grows the per-profile arrays to hold a profile. Called holding the lock.
+     */
+    private void ensureProfile(int profile) {
+        if (profile < 0) {
+            throw new IllegalArgumentException("Profile must not be negative: " + profile);
+        }
+        if (profile >= this.profileMasks.length) {
+            int capacity = Math.max(profile + 1, this.profileMasks.length * 2);
+            int previous = this.profileZones.length;
+            int[] zoneIndexes = Arrays.copyOf(this.profileZones, capacity);
+            Arrays.fill(zoneIndexes, previous, capacity, this.defaultZone);
+            this.profileZones = zoneIndexes;
+            this.profileMasks = Arrays.copyOf(this.profileMasks, capacity);
+        }
+    }
+
+    /**
+     * Retrieves a profile's compiled mask, the empty mask for unknown profiles.
+     */
+    private long[] maskOf(int profile) {
+        int[] indexes = this.profileMasks;
+        return this.masks[profile >= 0 && profile < indexes.length ? indexes[profile] : 0];
+    }
+
+    /**
+     * Retrieves a profile's zone index, the default zone for unknown profiles.
+     */
+    private int zoneOf(int profile) {
+        int[] indexes = this.profileZones;
+        return profile >= 0 && profile < indexes.length ? indexes[profile] : this.defaultZone;
+    }
+
+    /**
+     * Retrieves the span of a zone's UTC offset holding an instant, refreshing the cached one if needed.
+     */
+    private ZoneOffsetWindow offsetWindow(int zone, long epochMillis) {
+        ZoneOffsetWindow[] windows = this.offsets;
+        ZoneOffsetWindow window = windows[zone];
+        if (epochMillis < window.from() || epochMillis >= window.until()) {
+            //Racing refreshes compute the same window, so the unsynchronized store is harmless
+            window = ZoneOffsetWindow.at(window.rules(), epochMillis);
+            windows[zone] = window;
+        }
+        return window;
+    }
+
+    /**
+     * Finds the first minute at or after the given one whose bit is clear, or -1 if there is none before midnight.
+     */
+    private static int nextClear(long[] mask, int from) {
+        for (int minute = from; minute < MINUTES; ) {
+            long free = ~mask[minute >>> 6] & (-1L << minute);
+            if (free != 0) {
+                int found = ((minute >>> 6) << 6) + Long.numberOfTrailingZeros(free);
+                return found < MINUTES ? found : -1;
+            }
+            minute = ((minute >>> 6) + 1) << 6;
+        }
+        return -1;
+    }
+
+    /**
+     * A zone's UTC offset over the span between two of its transitions.
+     */
+    private record ZoneOffsetWindow(ZoneRules rules, int offsetSeconds, long from, long until) {
+        private static ZoneOffsetWindow at(ZoneRules rules, long epochMillis) {
+            Instant instant = Instant.ofEpochMilli(epochMillis);
+            ZoneOffsetTransition next = rules.nextTransition(instant);
+            long until = next == null ? Long.MAX_VALUE : next.toEpochSecond() * 1000L;
+            return new ZoneOffsetWindow(rules, rules.getOffset(instant).getTotalSeconds(), epochMillis, until);
+        }
+    }
+}
@@ -0,0 +1,12 @@
+import java.util.EventListener;
+
+/**
+ * Receives reminders from the NotificationScheduler when they fall due.
+ */
+public interface ReminderHandler extends EventListener {
+    /**
+     * Called on the scheduler thread for each reminder that is due, outside the scheduler lock.
+     * The due time is the occurrence the reminder stands for, even if it was held back by quiet hours.
+     */
+    void reminderDue(int profile, NotificationType type, long dueMillis);
+}
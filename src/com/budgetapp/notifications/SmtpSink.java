@@ -0,0 +1,148 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Sends email notifications to an SMTP endpoint, one connection per batch.
+ * Each notification is its own mail transaction within the session, so a batch
+ * costs one connection and greeting however many messages it holds.
+ */
+public class SmtpSink implements NotificationSink {
+    //Socket timeouts
+    private static final int CONNECT_TIMEOUT_MS = 5000;
+    private static final int READ_TIMEOUT_MS = 10000;
+
+    private final String host;
+    private final int port;
+    private final String sender;
+
+    /**
+     * Creates a sink for the given SMTP server and sender address.
+     */
+    public SmtpSink(String host, int port, String sender) {
+        if (!isSafe(sender)) {
+            throw new IllegalArgumentException("Invalid sender address");
+        }
+        this.host = host;
+        this.port = port;
+        this.sender = sender;
+    }
+
+    /**
+     * Sends every notification in the batch over a single SMTP session.
+     * A message the server refuses with a 5xx reply, or whose recipient could not be written safely,
+     * is skipped and counted as refused; a 4xx reply or a broken connection fails the rest of the batch.
+     */
+    public int deliver(List<Notification> batch) throws IOException {
+        int completed = 0;
+        int refused = 0;
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress(this.host, this.port), CONNECT_TIMEOUT_MS);
+            socket.setSoTimeout(READ_TIMEOUT_MS);
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+            OutputStream out = socket.getOutputStream();
+
+            expect(in, 220);
+            command(in, out, "HELO spentwise", 250);
+            for (Notification notification : batch) {
+                if (!isSafe(notification.recipient())) {
+                    refused++;
+                } else if (!this.send(in, out, notification)) {
+                    //Refused for good, clear the mail transaction and carry on with the next message
+                    command(in, out, "RSET", 250);
+                    refused++;
+                }
+                completed++;
+            }
+            command(in, out, "QUIT", 221);
+        } catch (IOException e) {
+            throw new DeliveryException(e.getMessage(), completed, refused, e);
+        }
+        return refused;
+    }
+
+    /**
+     * Sends one notification as its own mail transaction, returning false if the server refused it for good.
+     */
+    private boolean send(BufferedReader in, OutputStream out, Notification notification) throws IOException {
+        if (!accepted(in, out, "MAIL FROM:<" + this.sender + ">", 250)
+                || !accepted(in, out, "RCPT TO:<" + notification.recipient() + ">", 250)
+                || !accepted(in, out, "DATA", 354)) {
+            return false;
+        }
+
+        StringBuilder message = new StringBuilder();
+        message.append("From: ").append(this.sender).append("\r\n");
+        message.append("To: ").append(notification.recipient()).append("\r\n");
+        //A line break in the title would end the header early, so fold it onto one line
+        message.append("Subject: ").append(notification.title().replaceAll("[\r\n]+", " ")).append("\r\n\r\n");
+        for (String line : notification.message().split("\r?\n", -1)) {
+            //Dot-stuff lines so a lone "." cannot end the message early
+            message.append(line.startsWith(".") ? "." : "").append(line).append("\r\n");
+        }
+        message.append(".");
+        return accepted(in, out, message.toString(), 250);
+    }
+
+    /**
+     * Checks that an address can go into a command and header line, having no line breaks.
+     */
+    private static boolean isSafe(String address) {
+        return address != null && address.indexOf('\r') < 0 && address.indexOf('\n') < 0;
+    }
+
+    /**
+     * Writes one command line and checks the reply code.
+     */
+    private static void command(BufferedReader in, OutputStream out, String line, int expected) throws IOException {
+        if (!accepted(in, out, line, expected)) {
+            throw new IOException("SMTP server refused " + line.split(" ", 2)[0]);
+        }
+    }
+
+    /**
+     * Writes one command line and reads the reply, returning false on a permanent 5xx refusal
+     * and throwing on any other unexpected reply.
+     */
+    private static boolean accepted(BufferedReader in, OutputStream out, String line, int expected) throws IOException {
+        out.write((line + "\r\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+        String reply = reply(in);
+        if (reply.startsWith(String.valueOf(expected))) {
+            return true;
+        }
+        if (reply.charAt(0) == '5') {
+            return false;
+        }
+        throw new IOException("SMTP server replied " + reply);
+    }
+
+    /**
+     * Reads a possibly multi-line reply and checks its code.
+     */
+    private static void expect(BufferedReader in, int expected) throws IOException {
+        String line = reply(in);
+        if (!line.startsWith(String.valueOf(expected))) {
+            throw new IOException("SMTP server replied " + line);
+        }
+    }
+
+    /**
+     * Reads a possibly multi-line reply, returning its last line.
+     */
+    private static String reply(BufferedReader in) throws IOException {
+        String line;
+        do {
+            line = in.readLine();
+            if (line == null || line.length() < 3) {
+                throw new IOException("SMTP connection closed unexpectedly");
+            }
+        } while (line.length() > 3 && line.charAt(3) == '-');
+        return line;
+    }
+}
@@ -0,0 +1,69 @@
+import java.awt.AWTException;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.SystemTray;
+import java.awt.TrayIcon;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Shows desktop notifications through the system tray, coalescing each batch into one balloon.
+ * Where the platform has no system tray, every notification is reported as refused, so the
+ * channel counts it as failed rather than retrying, as no later attempt could succeed.
+ */
+public class SystemTrayNotifier implements NotificationSink {
+    //Titles listed in a coalesced balloon before it is summarised
+    private static final int MAX_LISTED = 3;
+
+    private TrayIcon icon;
+
+    /**
+     * Shows a batch as a single balloon: the notification itself, or a count and the first few titles.
+     */
+    public synchronized int deliver(List<Notification> batch) throws IOException {
+        if (!SystemTray.isSupported()) {
+            return batch.size();
+        }
+
+        if (this.icon == null) {
+            this.icon = new TrayIcon(trayImage(), "SpentWise");
+            this.icon.setImageAutoSize(true);
+            try {
+                SystemTray.getSystemTray().add(this.icon);
+            } catch (AWTException e) {
+                this.icon = null;
+                throw new IOException("Could not add system tray icon", e);
+            }
+        }
+
+        if (batch.size() == 1) {
+            Notification notification = batch.get(0);
+            this.icon.displayMessage(notification.title(), notification.message(), TrayIcon.MessageType.INFO);
+            return 0;
+        }
+
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < Math.min(MAX_LISTED, batch.size()); ++i) {
+            text.append(batch.get(i).title()).append("\n");
+        }
+        if (batch.size() > MAX_LISTED) {
+            text.append("and ").append(batch.size() - MAX_LISTED).append(" more");
+        }
+        this.icon.displayMessage("SpentWise - " + batch.size() + " new notifications", text.toString().trim(),
+                TrayIcon.MessageType.INFO);
+        return 0;
+    }
+
+    /**
+     * Draws a plain tray icon in the app's accent colour.
+     */
+    private static BufferedImage trayImage() {
+        BufferedImage image = new BufferedImage(16, 16, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(new Color(59, 130, 246));
+        g.fillOval(1, 1, 14, 14);
+        g.dispose();
+        return image;
+    }
+}
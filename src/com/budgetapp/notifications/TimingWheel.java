@@ -0,0 +1,229 @@
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Hierarchical timing wheel holding timers with an int payload, for millions of entries.
+ *
+ * Time is counted in ticks. Level L has 64 slots, each covering 64^L ticks, and a timer
+ * sits in the lowest level whose slot range tells its deadline apart from the current
+ * tick. Scheduling and cancelling link or unlink one list node, so both are O(1). When
+ * the current tick rolls over a level boundary, the matching slot of the level above is
+ * cascaded down; a timer is cascaded at most once per level before it fires.
+ *
+ * Timers live in parallel primitive arrays rather than objects, and are referred to by
+ * handles that pack a slot index with a generation count so that a stale handle never
+ * cancels a reused slot. Not thread safe; callers synchronize.
+ */
+public class TimingWheel {
+    //Wheel geometry, 11 levels of 64 slots cover every long tick value
+    private static final int BITS = 6;
+    private static final int SLOTS = 1 << BITS;
+    private static final int MASK = SLOTS - 1;
+    private static final int LEVELS = 11;
+    private static final int NONE = -1;
+
+    //List heads for every level and slot
+    private final int[] heads = new int[LEVELS * SLOTS];
+
+    //Timer nodes, a node not in any bucket is on the free list
+    private long[] deadlines;
+    private int[] payloads;
+    private int[] next;
+    private int[] prev;
+    private int[] buckets;
+    private int[] generations;
+    private int free = NONE;
+    private int allocated;
+    private int size;
+    private long currentTick;
+
+    //Payloads of timers expiring on the current tick, handed out after the wheel is consistent again
+    private int[] expired = new int[64];
+
+    /**
+     * Creates a wheel whose current tick is the given one, with room for some timers before growing.
+     */
+    public TimingWheel(long startTick, int initialCapacity) {
+        int capacity = Math.max(16, initialCapacity);
+        this.deadlines = new long[capacity];
+        this.payloads = new int[capacity];
+        this.next = new int[capacity];
+        this.prev = new int[capacity];
+        this.buckets = new int[capacity];
+        this.generations = new int[capacity];
+        Arrays.fill(this.heads, NONE);
+        this.currentTick = startTick;
+    }
+
+    /**
+     * Schedules a timer for a tick and returns its handle.
+     * A deadline that is not in the future fires on the next tick.
+     */
+    public long schedule(long deadlineTick, int payload) {
+        int node = this.allocate();
+        this.deadlines[node] = Math.max(deadlineTick, this.currentTick + 1);
+        this.payloads[node] = payload;
+        this.link(node);
+        this.size++;
+        return ((long)this.generations[node] << 32) | node;
+    }
+
+    /**
+     * Cancels a timer. Returns false if it already fired or was cancelled.
+     */
+    public boolean cancel(long handle) {
+        int node = (int)handle;
+        if (node < 0 || node >= this.allocated || this.buckets[node] == NONE
+                || this.generations[node] != (int)(handle >>> 32)) {
+            return false;
+        }
+        this.unlink(node);
+        this.release(node);
+        this.size--;
+        return true;
+    }
+
+    /**
+     * Retrieves the deadline tick of a pending timer, or -1 if the handle is stale.
+     */
+    public long deadline(long handle) {
+        int node = (int)handle;
+        if (node < 0 || node >= this.allocated || this.buckets[node] == NONE
+                || this.generations[node] != (int)(handle >>> 32)) {
+            return -1;
+        }
+        return this.deadlines[node];
+    }
+
+    /**
+     * Moves the wheel forward to the given tick, passing the payload of every timer that
+     * expires on the way to the consumer in deadline order. The consumer may schedule and
+     * cancel timers.
+     */
+    public void advance(long toTick, IntConsumer consumer) {
+        while (this.currentTick < toTick) {
+            long tick = ++this.currentTick;
+
+            //Cascade from the highest level whose boundary was crossed, so timers moving
+            //down land in slots that are still to be processed on this tick
+            int top = 0;
+            while (top + 1 < LEVELS && (tick & ((1L << (BITS * (top + 1))) - 1)) == 0) {
+                top++;
+            }
+            for (int level = top; level >= 1; --level) {
+                this.cascade(level * SLOTS + (int)((tick >>> (BITS * level)) & MASK));
+            }
+
+            int bucket = (int)(tick & MASK);
+            int count = 0;
+            for (int node = this.heads[bucket]; node != NONE; ) {
+                int following = this.next[node];
+                if (count == this.expired.length) {
+                    this.expired = Arrays.copyOf(this.expired, count * 2);
+                }
+                this.expired[count++] = this.payloads[node];
+                this.release(node);
+                node = following;
+            }
+            this.heads[bucket] = NONE;
+            this.size -= count;
+
+            for (int i = 0; i < count; ++i) {
+                consumer.accept(this.expired[i]);
+            }
+        }
+    }
+
+    /**
+     * Retrieves the tick the wheel has advanced to.
+     */
+    public long currentTick() {
+        return this.currentTick;
+    }
+
+    /**
+     * Retrieves the number of pending timers.
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Re-links every timer in a bucket of a higher level relative to the current tick.
+     */
+    private void cascade(int bucket) {
+        int node = this.heads[bucket];
+        this.heads[bucket] = NONE;
+        while (node != NONE) {
+            int following = this.next[node];
+            this.link(node);
+            node = following;
+        }
+    }
+
+    /**
+     * Puts a node at the head of the bucket matching its deadline.
+     */
+    private void link(int node) {
+        long distance = this.deadlines[node] ^ this.currentTick;
+        int level = distance == 0 ? 0 : (63 - Long.numberOfLeadingZeros(distance)) / BITS;
+        int bucket = level * SLOTS + (int)((this.deadlines[node] >>> (BITS * level)) & MASK);
+
+        int head = this.heads[bucket];
+        this.next[node] = head;
+        this.prev[node] = NONE;
+        if (head != NONE) {
+            this.prev[head] = node;
+        }
+        this.heads[bucket] = node;
+        this.buckets[node] = bucket;
+    }
+
+    /**
+     * Removes a node from its bucket.
+     */
+    private void unlink(int node) {
+        int before = this.prev[node];
+        int after = this.next[node];
+        if (before == NONE) {
+            this.heads[this.buckets[node]] = after;
+        } else {
+            this.next[before] = after;
+        }
+        if (after != NONE) {
+            this.prev[after] = before;
+        }
+    }
+
+    /**
+     * Takes a node from the free list, growing the arrays if it is empty.
+     */
+    private int allocate() {
+        if (this.free != NONE) {
+            int node = this.free;
+            this.free = this.next[node];
+            return node;
+        }
+
+        if (this.allocated == this.deadlines.length) {
+            int capacity = this.deadlines.length * 2;
+            this.deadlines = Arrays.copyOf(this.deadlines, capacity);
+            this.payloads = Arrays.copyOf(this.payloads, capacity);
+            this.next = Arrays.copyOf(this.next, capacity);
+            this.prev = Arrays.copyOf(this.prev, capacity);
+            this.buckets = Arrays.copyOf(this.buckets, capacity);
+            this.generations = Arrays.copyOf(this.generations, capacity);
+        }
+        return this.allocated++;
+    }
+
+    /**
+     * Returns a node to the free list and invalidates its handles.
+     */
+    private void release(int node) {
+        this.buckets[node] = NONE;
+        this.generations[node]++;
+        this.next[node] = this.free;
+        this.free = node;
+    }
+}
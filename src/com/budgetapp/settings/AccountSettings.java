@@ -0,0 +1,21 @@
+/**
+ * Immutable view of the user's account settings.
+ * Instances are published by SettingsManager and can be shared freely between threads.
+ */
+public record AccountSettings(String fullName, String dateOfBirth, String username,
+                              String email, String phone, String address,
+                              String accountCreated, String currency, boolean twoFactorAuth) {
+    //Values used when nothing has been saved yet
+    public static final AccountSettings DEFAULTS = new AccountSettings(SettingsSchema.FULL_NAME.defaultValue(),
+            SettingsSchema.DATE_OF_BIRTH.defaultValue(), SettingsSchema.USERNAME.defaultValue(),
+            SettingsSchema.EMAIL.defaultValue(), SettingsSchema.PHONE.defaultValue(),
+            SettingsSchema.ADDRESS.defaultValue(), SettingsSchema.ACCOUNT_CREATED.defaultValue(),
+            SettingsSchema.CURRENCY.defaultText(), SettingsSchema.TWO_FACTOR_AUTH.defaultValue());
+
+    /**
+     * Retrieves the currency as an ordinal of SettingsSchema.CURRENCIES, or -1 if it is not listed.
+     */
+    public int currencyOrdinal() {
+        return SettingsSchema.ordinal(SettingsSchema.CURRENCIES, this.currency);
+    }
+}
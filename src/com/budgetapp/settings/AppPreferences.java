@@ -0,0 +1,58 @@
+/**
+ * Immutable view of the application preferences.
+ * Instances are published by SettingsManager and can be shared freely between threads.
+ */
+public record AppPreferences(boolean darkMode, String fontSize, String language,
+                             String dateFormat, String timeFormat, boolean startOnBoot,
+                             boolean startMinimized, boolean autoBackup,
+                             String defaultView, String chartType, int animationsLevel) {
+    //Values used when nothing has been saved yet
+    public static final AppPreferences DEFAULTS = new AppPreferences(SettingsSchema.DARK_MODE.defaultValue(),
+            SettingsSchema.FONT_SIZE.defaultValue(), SettingsSchema.LANGUAGE.defaultValue(),
+            SettingsSchema.DATE_FORMAT.defaultText(), SettingsSchema.TIME_FORMAT.defaultText(),
+            SettingsSchema.START_ON_BOOT.defaultValue(), SettingsSchema.START_MINIMIZED.defaultValue(),
+            SettingsSchema.AUTO_BACKUP.defaultValue(), SettingsSchema.DEFAULT_VIEW.defaultValue(),
+            SettingsSchema.CHART_TYPE.defaultValue(), SettingsSchema.ANIMATIONS_LEVEL.defaultValue());
+
+    /**
+     * Retrieves the font size as an ordinal of SettingsSchema.FONT_SIZES, or -1 if it is not listed.
+     */
+    public int fontSizeOrdinal() {
+        return SettingsSchema.ordinal(SettingsSchema.FONT_SIZES, this.fontSize);
+    }
+
+    /**
+     * Retrieves the language as an ordinal of SettingsSchema.LANGUAGES, or -1 if it is not listed.
+     */
+    public int languageOrdinal() {
+        return SettingsSchema.ordinal(SettingsSchema.LANGUAGES, this.language);
+    }
+
+    /**
+     * Retrieves the date format as an ordinal of SettingsSchema.DATE_FORMATS, or -1 if it is not listed.
+     */
+    public int dateFormatOrdinal() {
+        return SettingsSchema.ordinal(SettingsSchema.DATE_FORMATS, this.dateFormat);
+    }
+
+    /**
+     * Retrieves the time format as an ordinal of SettingsSchema.TIME_FORMATS, or -1 if it is not listed.
+     */
+    public int timeFormatOrdinal() {
+        return SettingsSchema.ordinal(SettingsSchema.TIME_FORMATS, this.timeFormat);
+    }
+
+    /**
+     * Retrieves the default view as an ordinal of SettingsSchema.VIEWS, or -1 if it is not listed.
+     */
+    public int defaultViewOrdinal() {
+        return SettingsSchema.ordinal(SettingsSchema.VIEWS, this.defaultView);
+    }
+
+    /**
+     * Retrieves the chart type as an ordinal of SettingsSchema.CHART_TYPES, or -1 if it is not listed.
+     */
+    public int chartTypeOrdinal() {
+        return SettingsSchema.ordinal(SettingsSchema.CHART_TYPES, this.chartType);
+    }
+}
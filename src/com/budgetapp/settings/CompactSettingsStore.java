@@ -0,0 +1,184 @@
+import java.io.IOException;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Settings store that keeps the whole settings set as one SettingsCodec blob in
+ * another store. A save group becomes a single key write of a few hundred bytes,
+ * and values are served from the decoded copy held in memory.
+ *
+ * On first load from a store that still holds one string value per key, those
+ * values are encoded into the blob and the legacy keys are removed.
+ * A blob that cannot be decoded throws IOException, unless the store is opened with
+ * openOrReset, which reports it and starts from defaults until the next save replaces it.
+ */
+public class CompactSettingsStore implements SettingsStore {
+    //Key holding the encoded blob in the delegate store
+    public static final String BLOB_KEY = "settings.bin";
+
+    private final SettingsStore delegate;
+    private Map<String, String> values;
+
+    /**
+     * Wraps a store, migrating its string-valued settings into the compact encoding if needed.
+     */
+    public CompactSettingsStore(SettingsStore delegate) throws IOException {
+        this(delegate, false);
+    }
+
+    private CompactSettingsStore(SettingsStore delegate, boolean resetUnreadable) throws IOException {
+        this.delegate = delegate;
+        String blob = delegate.get(BLOB_KEY);
+        if (blob == null) {
+            this.migrate();
+            return;
+        }
+
+        try {
+            this.values = decode(blob);
+        } catch (IOException e) {
+            if (!resetUnreadable) {
+                throw e;
+            }
+            System.out.println("Stored settings could not be read, using defaults: " + e.getMessage());
+            this.values = new HashMap<>();
+        }
+    }
+
+    /**
+     * Wraps a store like the constructor, but starts from defaults if the stored blob cannot be decoded.
+     */
+    public static CompactSettingsStore openOrReset(SettingsStore delegate) throws IOException {
+        return new CompactSettingsStore(delegate, true);
+    }
+
+    @Override
+    public synchronized String get(String key) {
+        return this.values.get(key);
+    }
+
+    @Override
+    public synchronized void putAll(Map<String, String> entries) {
+        this.write(this.merge(entries));
+    }
+
+    /**
+     * Checks the blob the writes would produce, as the delegate only ever sees that one key.
+     */
+    @Override
+    public synchronized void check(Map<String, String> entries) {
+        byte[] blob = SettingsCodec.encode(this.merge(entries));
+        this.delegate.check(Map.of(BLOB_KEY, Base64.getEncoder().encodeToString(blob)));
+    }
+
+    @Override
+    public synchronized void clear() throws IOException {
+        this.delegate.clear();
+        this.values = new HashMap<>();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        this.delegate.flush();
+    }
+
+    @Override
+    public void addChangeListener(Consumer<String> listener) {
+        this.delegate.addChangeListener((key) -> {
+            if (!BLOB_KEY.equals(key)) {
+                return;
+            }
+            for (String changed : this.reload()) {
+                listener.accept(changed);
+            }
+        });
+    }
+
+    /**
+     * Applies a group of writes to a copy of the current values.
+     */
+    private Map<String, String> merge(Map<String, String> entries) {
+        Map<String, String> next = new HashMap<>(this.values);
+        for (Map.Entry<String, String> entry : entries.entrySet()) {
+            if (entry.getValue() == null) {
+                next.remove(entry.getKey());
+            } else {
+                next.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return next;
+    }
+
+    /**
+     * Encodes the legacy per-key values into a blob and removes the old keys.
+     */
+    private void migrate() throws IOException {
+        Map<String, String> legacy = new HashMap<>();
+        Map<String, String> removals = new HashMap<>();
+        for (SettingKey<?> field : SettingsSchema.FIELDS) {
+            String value = this.delegate.get(field.key());
+            if (value != null) {
+                legacy.put(field.key(), value);
+                removals.put(field.key(), null);
+            }
+        }
+
+        this.write(legacy);
+        if (!removals.isEmpty()) {
+            this.delegate.putAll(removals);
+            this.delegate.flush();
+            System.out.println("Migrated " + removals.size() + " settings to the compact encoding");
+        }
+    }
+
+    /**
+     * Encodes and stores a full set of values, keeping exactly what the blob can represent.
+     */
+    private void write(Map<String, String> next) {
+        byte[] blob = SettingsCodec.encode(next);
+        this.delegate.putAll(Map.of(BLOB_KEY, Base64.getEncoder().encodeToString(blob)));
+        try {
+            this.values = SettingsCodec.decode(blob);
+        } catch (IOException e) {
+            throw new IllegalStateException("Settings codec could not decode its own output", e);
+        }
+    }
+
+    /**
+     * Re-reads the blob after an external change and returns the keys whose values differ.
+     */
+    private synchronized Set<String> reload() {
+        Set<String> changed = new HashSet<>();
+        try {
+            String blob = this.delegate.get(BLOB_KEY);
+            Map<String, String> next = blob == null ? new HashMap<>() : decode(blob);
+            for (SettingKey<?> field : SettingsSchema.FIELDS) {
+                if (!Objects.equals(this.values.get(field.key()), next.get(field.key()))) {
+                    changed.add(field.key());
+                }
+            }
+            this.values = next;
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return changed;
+    }
+
+    /**
+     * Decodes a stored blob, throwing IOException if it is not valid Base64 or not a valid encoding.
+     */
+    private static Map<String, String> decode(String blob) throws IOException {
+        byte[] data;
+        try {
+            data = Base64.getDecoder().decode(blob);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Stored settings are not valid Base64", e);
+        }
+        return SettingsCodec.decode(data);
+    }
+}
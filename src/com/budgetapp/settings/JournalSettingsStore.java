@@ -0,0 +1,352 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.CRC32;
+
+/**
+ * Settings store that appends each save group as one checksummed record to a journal.
+ * A write costs the size of its record rather than a rewrite of the whole store,
+ * and a group is durable once flush returns.
+ *
+ * When the journal grows past a threshold it is compacted in the background into a
+ * checkpoint file holding the full state, and the journal is truncated. On startup
+ * the checkpoint is loaded and the journal replayed on top of it; a torn or corrupt
+ * trailing record left by a crash is dropped and cut off.
+ *
+ * Record layout: magic, type, payload length, CRC32 of the payload, payload.
+ */
+public class JournalSettingsStore implements SettingsStore {
+    //Record format constants
+    private static final int MAGIC = 0x53574a52;
+    private static final int HEADER_SIZE = 13;
+    private static final byte TYPE_ENTRIES = 1;
+    private static final byte TYPE_CLEAR = 2;
+
+    //Default journal size that triggers a compaction
+    public static final long DEFAULT_COMPACT_THRESHOLD = 64 * 1024;
+
+    //Longest key or value writeUTF can encode, in bytes of modified UTF-8
+    static final int MAX_UTF_BYTES = 65535;
+
+    private final Path journalFile;
+    private final Path checkpointFile;
+    private final long compactThreshold;
+    private final Map<String, String> values = new HashMap<>();
+    private final Object compactLock = new Object();
+    private final ExecutorService compactor = Executors.newSingleThreadExecutor((r) -> {
+        Thread thread = new Thread(r, "settings-journal-compactor");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private FileChannel journal;
+    private boolean compactionQueued;
+
+    /**
+     * Opens the journal with the default compaction threshold.
+     */
+    public JournalSettingsStore(Path journalFile) throws IOException {
+        this(journalFile, DEFAULT_COMPACT_THRESHOLD);
+    }
+
+    /**
+     * Opens the journal, recovering state from its checkpoint and any complete records.
+     */
+    public JournalSettingsStore(Path journalFile, long compactThreshold) throws IOException {
+        this.journalFile = journalFile;
+        this.checkpointFile = journalFile.resolveSibling(journalFile.getFileName() + ".checkpoint");
+        this.compactThreshold = compactThreshold;
+        if (journalFile.getParent() != null) {
+            Files.createDirectories(journalFile.getParent());
+        }
+
+        if (Files.exists(this.checkpointFile)) {
+            byte[] checkpoint = Files.readAllBytes(this.checkpointFile);
+            if (this.replay(ByteBuffer.wrap(checkpoint)) < checkpoint.length) {
+                System.out.println("Settings checkpoint is corrupt, recovering from journal only");
+                this.values.clear();
+            }
+        }
+
+        byte[] contents = Files.exists(journalFile) ? Files.readAllBytes(journalFile) : new byte[0];
+        long valid = this.replay(ByteBuffer.wrap(contents));
+        this.journal = FileChannel.open(journalFile, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (valid < contents.length) {
+            System.out.println("Dropping " + (contents.length - valid) + " bytes of torn settings journal");
+            this.journal.truncate(valid);
+            this.journal.force(true);
+        }
+        this.journal.position(valid);
+    }
+
+    @Override
+    public synchronized String get(String key) {
+        return this.values.get(key);
+    }
+
+    @Override
+    public synchronized void putAll(Map<String, String> entries) {
+        if (entries.isEmpty()) {
+            return;
+        }
+
+        this.check(entries);
+        try {
+            this.append(TYPE_ENTRIES, encodeEntries(entries));
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not append to settings journal", e);
+        }
+        applyEntries(this.values, entries);
+    }
+
+    @Override
+    public void check(Map<String, String> entries) {
+        for (Map.Entry<String, String> entry : entries.entrySet()) {
+            if (utfLength(entry.getKey()) > MAX_UTF_BYTES
+                    || (entry.getValue() != null && utfLength(entry.getValue()) > MAX_UTF_BYTES)) {
+                throw new IllegalArgumentException("Setting too long for the settings journal: " + entry.getKey());
+            }
+        }
+    }
+
+    @Override
+    public synchronized void clear() throws IOException {
+        this.append(TYPE_CLEAR, new byte[0]);
+        this.values.clear();
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        this.journal.force(false);
+        if (this.journal.size() > this.compactThreshold && !this.compactionQueued) {
+            this.compactionQueued = true;
+            this.compactor.execute(this::compact);
+        }
+    }
+
+    /**
+     * Writes the full state to a new checkpoint and drops the journal records it covers.
+     * The checkpoint is written and forced without holding the store's lock, so saves
+     * carry on meanwhile; only the file swap is done under it. The checkpoint is replaced
+     * atomically, and replaying journal records it already covers gives the same state,
+     * so a crash at any point leaves either the old checkpoint with the full journal or
+     * the new checkpoint with a journal that still holds every later record.
+     */
+    public void compact() {
+        synchronized (this.compactLock) {
+            try {
+                Map<String, String> state;
+                long covered;
+                synchronized (this) {
+                    this.compactionQueued = false;
+                    state = new HashMap<>(this.values);
+                    covered = this.journal.position();
+                }
+
+                Path temp = this.checkpointFile.resolveSibling(this.checkpointFile.getFileName() + ".tmp");
+                writeFile(temp, encodeRecord(TYPE_ENTRIES, encodeEntries(state)));
+                synchronized (this) {
+                    Files.move(temp, this.checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                    this.dropJournalUpTo(covered);
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Retrieves the current journal size in bytes.
+     */
+    public synchronized long getJournalSize() throws IOException {
+        return this.journal.size();
+    }
+
+    /**
+     * Removes the journal records before an offset, keeping any appended after it.
+     * Usually nothing was appended and the journal is simply truncated. Otherwise the
+     * later records are copied to a new journal that replaces the old one atomically.
+     * Must be called holding the store's lock.
+     */
+    private void dropJournalUpTo(long offset) throws IOException {
+        long end = this.journal.position();
+        if (end == offset) {
+            this.journal.truncate(0);
+            this.journal.position(0);
+            return;
+        }
+
+        ByteBuffer later = ByteBuffer.allocate((int)(end - offset));
+        while (later.hasRemaining()) {
+            if (this.journal.read(later, offset + later.position()) < 0) {
+                throw new IOException("Settings journal ended before offset " + end);
+            }
+        }
+        later.flip();
+        Path temp = this.journalFile.resolveSibling(this.journalFile.getFileName() + ".tmp");
+        writeFile(temp, later);
+        Files.move(temp, this.journalFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        this.journal.close();
+        this.journal = FileChannel.open(this.journalFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.journal.position(this.journal.size());
+    }
+
+    /**
+     * Appends one record at the end of the journal.
+     * A failed write is cut off again so later records are not hidden behind it.
+     */
+    private void append(byte type, byte[] payload) throws IOException {
+        long start = this.journal.position();
+        try {
+            writeFully(this.journal, encodeRecord(type, payload));
+        } catch (IOException e) {
+            this.journal.truncate(start);
+            this.journal.position(start);
+            throw e;
+        }
+    }
+
+    /**
+     * Applies every complete, valid record in the buffer to the in-memory state.
+     * Returns the number of bytes consumed, which stops at the first bad record.
+     */
+    private long replay(ByteBuffer buffer) throws IOException {
+        while (buffer.remaining() >= HEADER_SIZE) {
+            int start = buffer.position();
+            int magic = buffer.getInt();
+            byte type = buffer.get();
+            int length = buffer.getInt();
+            int checksum = buffer.getInt();
+            if (magic != MAGIC || length < 0 || length > buffer.remaining()) {
+                return start;
+            }
+
+            byte[] payload = new byte[length];
+            buffer.get(payload);
+            if (checksum(payload) != checksum) {
+                return start;
+            }
+
+            if (type == TYPE_CLEAR) {
+                this.values.clear();
+            } else if (type == TYPE_ENTRIES) {
+                applyEntries(this.values, decodeEntries(payload));
+            } else {
+                return start;
+            }
+        }
+        return buffer.position();
+    }
+
+    /**
+     * Frames a payload with its header and checksum.
+     */
+    private static ByteBuffer encodeRecord(byte type, byte[] payload) {
+        ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + payload.length);
+        record.putInt(MAGIC);
+        record.put(type);
+        record.putInt(payload.length);
+        record.putInt(checksum(payload));
+        record.put(payload);
+        record.flip();
+        return record;
+    }
+
+    /**
+     * Serializes a group of writes. A null value is written as a removal.
+     */
+    private static byte[] encodeEntries(Map<String, String> entries) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(entries.size());
+        for (Map.Entry<String, String> entry : entries.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeBoolean(entry.getValue() != null);
+            if (entry.getValue() != null) {
+                out.writeUTF(entry.getValue());
+            }
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Deserializes a group of writes produced by encodeEntries.
+     */
+    private static Map<String, String> decodeEntries(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        int count = in.readInt();
+        Map<String, String> entries = new HashMap<>();
+        for (int i = 0; i < count; ++i) {
+            String key = in.readUTF();
+            entries.put(key, in.readBoolean() ? in.readUTF() : null);
+        }
+        return entries;
+    }
+
+    /**
+     * Applies a group of writes to a map, removing keys with null values.
+     */
+    private static void applyEntries(Map<String, String> target, Map<String, String> entries) {
+        for (Map.Entry<String, String> entry : entries.entrySet()) {
+            if (entry.getValue() == null) {
+                target.remove(entry.getKey());
+            } else {
+                target.put(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Computes the CRC32 of a payload.
+     */
+    private static int checksum(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        return (int)crc.getValue();
+    }
+
+    /**
+     * Counts the bytes writeUTF needs for a string.
+     */
+    static int utfLength(String text) {
+        int length = 0;
+        for (int i = 0; i < text.length(); ++i) {
+            char c = text.charAt(i);
+            length += c >= 0x0001 && c <= 0x007F ? 1 : c <= 0x07FF ? 2 : 3;
+        }
+        return length;
+    }
+
+    /**
+     * Writes a buffer to a new file, replacing any old one, and forces it to disk.
+     */
+    private static void writeFile(Path file, ByteBuffer buffer) throws IOException {
+        try (FileChannel out = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(out, buffer);
+            out.force(true);
+        }
+    }
+
+    /**
+     * Writes the whole buffer to a channel.
+     */
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
@@ -0,0 +1,233 @@
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Settings store backed by a memory-mapped file with one fixed-size slot per key.
+ * Reads and writes go straight to the key's slot, so neither depends on how many
+ * settings exist, and nothing is reparsed or rewritten as a whole.
+ *
+ * Layout: a 16 byte header (magic, format version, slot count, slot size) followed
+ * by the slots. Each slot holds its key name, a CRC32 of the name and value, the value
+ * length and the value bytes. Slots are found by their key name when
+ * the file opens, so keys may be added or reordered without disturbing saved values.
+ * A new key takes a slot with no key, or a new slot at the end of the file. Slots of
+ * keys this version does not know are left alone.
+ *
+ * Values are overwritten in place, so crash consistency is per slot only. A slot cut
+ * short by a crash during flush fails its checksum when the file next opens and is
+ * reset to unsaved, and a save group cut short may leave some of its keys old and some new.
+ * Format 1 files, which had no checksums, are upgraded in place when opened.
+ */
+public class MappedFileSettingsStore implements SettingsStore {
+    //File format constants
+    private static final int MAGIC = 0x53575354;
+    private static final int FORMAT_VERSION = 2;
+    private static final int UNCHECKED_VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int SLOT_SIZE = 512;
+    private static final int MAX_KEY_BYTES = 56;
+    private static final int CRC_OFFSET = 2 + MAX_KEY_BYTES;
+    private static final int VALUE_OFFSET = CRC_OFFSET + 4;
+    private static final int MAX_VALUE_BYTES = SLOT_SIZE - VALUE_OFFSET - 4;
+    private static final int ABSENT = -1;
+
+    private final Map<String, Integer> slots = new HashMap<>();
+    private final MappedByteBuffer buffer;
+
+    /**
+     * Opens or creates the settings file with a slot for each of the given keys.
+     */
+    public MappedFileSettingsStore(Path file, List<String> keys) throws IOException {
+        for (String key : keys) {
+            if (key.getBytes(StandardCharsets.UTF_8).length > MAX_KEY_BYTES) {
+                throw new IllegalArgumentException("Key too long for a settings slot: " + key);
+            }
+        }
+
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            //Find the slot already holding each key, noting the slots no key holds
+            MappedByteBuffer existing = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            int count = slotCount(existing);
+            ArrayDeque<Integer> free = new ArrayDeque<>();
+            for (int slot = 0; slot < count; ++slot) {
+                String key = slotKey(existing, slot);
+                if (key == null || this.slots.containsKey(key)) {
+                    free.add(slot);
+                } else if (keys.contains(key)) {
+                    this.slots.put(key, slot);
+                }
+            }
+
+            //Give each new key a free slot, or a new one at the end
+            for (String key : keys) {
+                if (!this.slots.containsKey(key)) {
+                    this.slots.put(key, free.isEmpty() ? count++ : free.poll());
+                }
+            }
+            this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long)SLOT_SIZE * count);
+            if (slotCount(this.buffer) == 0) {
+                this.buffer.putInt(0, MAGIC);
+                this.buffer.putInt(12, SLOT_SIZE);
+            } else if (this.buffer.getInt(4) == UNCHECKED_VERSION) {
+                //Same layout with the checksum bytes unused, so checksum what is there
+                for (int slot = 0; slot < count; ++slot) {
+                    this.buffer.putInt(HEADER_SIZE + slot * SLOT_SIZE + CRC_OFFSET, checksum(this.buffer, slot));
+                }
+            }
+            this.buffer.putInt(4, FORMAT_VERSION);
+            this.buffer.putInt(8, count);
+        }
+
+        for (Map.Entry<String, Integer> entry : this.slots.entrySet()) {
+            int slot = entry.getValue();
+            if (!entry.getKey().equals(slotKey(this.buffer, slot))) {
+                this.resetSlot(slot, entry.getKey());
+            } else if (this.buffer.getInt(HEADER_SIZE + slot * SLOT_SIZE + CRC_OFFSET) != checksum(this.buffer, slot)) {
+                System.out.println("Setting " + entry.getKey() + " was cut short by an interrupted write, using its default");
+                this.resetSlot(slot, entry.getKey());
+            }
+        }
+    }
+
+    @Override
+    public synchronized String get(String key) {
+        int slot = this.slotOf(key);
+        int base = HEADER_SIZE + slot * SLOT_SIZE;
+        int length = this.buffer.getInt(base + VALUE_OFFSET);
+        if (length < 0 || length > MAX_VALUE_BYTES) {
+            return null;
+        }
+
+        byte[] bytes = new byte[length];
+        this.buffer.get(base + VALUE_OFFSET + 4, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public synchronized void putAll(Map<String, String> entries) {
+        //Check the whole group first so a refused group leaves every slot as it was
+        this.check(entries);
+        for (Map.Entry<String, String> entry : entries.entrySet()) {
+            this.writeValue(this.slotOf(entry.getKey()), entry.getValue());
+        }
+    }
+
+    @Override
+    public void check(Map<String, String> entries) {
+        for (Map.Entry<String, String> entry : entries.entrySet()) {
+            this.slotOf(entry.getKey());
+            if (entry.getValue() != null && entry.getValue().length() * 3 > MAX_VALUE_BYTES) {
+                int length = entry.getValue().getBytes(StandardCharsets.UTF_8).length;
+                if (length > MAX_VALUE_BYTES) {
+                    throw new IllegalArgumentException("Value too long for settings slot " + entry.getKey()
+                            + ": " + length + " bytes");
+                }
+            }
+        }
+    }
+
+    @Override
+    public synchronized void clear() {
+        for (int slot : this.slots.values()) {
+            this.writeValue(slot, null);
+        }
+    }
+
+    /**
+     * Forces written values to disk. A crash part-way may leave only some slots written,
+     * each either old, new, or detected as cut short when the file next opens.
+     */
+    @Override
+    public synchronized void flush() {
+        this.buffer.force();
+    }
+
+    /**
+     * Claims a slot for a key and marks it empty.
+     */
+    private void resetSlot(int slot, String key) {
+        int base = HEADER_SIZE + slot * SLOT_SIZE;
+        byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+        this.buffer.putShort(base, (short)bytes.length);
+        this.buffer.put(base + 2, bytes);
+        this.writeValue(slot, null);
+    }
+
+    /**
+     * Writes a value to a slot, or marks it empty for null, then updates the slot's checksum.
+     */
+    private void writeValue(int slot, String value) {
+        int base = HEADER_SIZE + slot * SLOT_SIZE;
+        if (value == null) {
+            this.buffer.putInt(base + VALUE_OFFSET, ABSENT);
+        } else {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            this.buffer.put(base + VALUE_OFFSET + 4, bytes);
+            this.buffer.putInt(base + VALUE_OFFSET, bytes.length);
+        }
+        this.buffer.putInt(base + CRC_OFFSET, checksum(this.buffer, slot));
+    }
+
+    /**
+     * Computes the CRC32 of a slot's key name, value length and value bytes.
+     */
+    private static int checksum(MappedByteBuffer buffer, int slot) {
+        int base = HEADER_SIZE + slot * SLOT_SIZE;
+        int length = buffer.getInt(base + VALUE_OFFSET);
+        CRC32 crc = new CRC32();
+        crc.update(buffer.slice(base, CRC_OFFSET));
+        crc.update(buffer.slice(base + VALUE_OFFSET, 4 + (length > 0 && length <= MAX_VALUE_BYTES ? length : 0)));
+        return (int)crc.getValue();
+    }
+
+    /**
+     * Retrieves the number of slots in a mapped file, or 0 if it has no valid header.
+     */
+    private static int slotCount(MappedByteBuffer buffer) {
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(12) != SLOT_SIZE
+                || (buffer.getInt(4) != FORMAT_VERSION && buffer.getInt(4) != UNCHECKED_VERSION)) {
+            return 0;
+        }
+        return Math.max(0, Math.min(buffer.getInt(8), (buffer.capacity() - HEADER_SIZE) / SLOT_SIZE));
+    }
+
+    /**
+     * Reads the key name recorded in a slot, or returns null if the slot has none.
+     */
+    private static String slotKey(MappedByteBuffer buffer, int slot) {
+        int base = HEADER_SIZE + slot * SLOT_SIZE;
+        int length = buffer.getShort(base);
+        if (length <= 0 || length > MAX_KEY_BYTES) {
+            return null;
+        }
+
+        byte[] bytes = new byte[length];
+        buffer.get(base + 2, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Looks up the slot index for a key.
+     */
+    private int slotOf(String key) {
+        Integer slot = this.slots.get(key);
+        if (slot == null) {
+            throw new IllegalArgumentException("Unknown settings key: " + key);
+        }
+        return slot;
+    }
+}
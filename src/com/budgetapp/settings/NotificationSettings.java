@@ -0,0 +1,27 @@
+/**
+ * Immutable view of the notification settings.
+ * Instances are published by SettingsManager and can be shared freely between threads,
+ * so quiet hours are always seen together with their matching from/to times.
+ */
+public record NotificationSettings(boolean notifyBills, boolean notifySubscriptions,
+                                   boolean notifyWeekly, boolean notifyOverspend,
+                                   boolean notifyMotivation, String frequency,
+                                   String notifyTime, boolean notifyEmail,
+                                   boolean notifyDesktop, boolean notifyPush,
+                                   boolean quietHours, String quietFrom, String quietTo) {
+    //Values used when nothing has been saved yet
+    public static final NotificationSettings DEFAULTS = new NotificationSettings(SettingsSchema.NOTIFY_BILLS.defaultValue(),
+            SettingsSchema.NOTIFY_SUBSCRIPTIONS.defaultValue(), SettingsSchema.NOTIFY_WEEKLY.defaultValue(),
+            SettingsSchema.NOTIFY_OVERSPEND.defaultValue(), SettingsSchema.NOTIFY_MOTIVATION.defaultValue(),
+            SettingsSchema.NOTIFY_FREQUENCY.defaultValue(), SettingsSchema.NOTIFY_TIME.defaultText(),
+            SettingsSchema.NOTIFY_EMAIL.defaultValue(), SettingsSchema.NOTIFY_DESKTOP.defaultValue(),
+            SettingsSchema.NOTIFY_PUSH.defaultValue(), SettingsSchema.QUIET_HOURS.defaultValue(),
+            SettingsSchema.QUIET_FROM.defaultText(), SettingsSchema.QUIET_TO.defaultText());
+
+    /**
+     * Retrieves the frequency as an ordinal of SettingsSchema.FREQUENCIES, or -1 if it is not listed.
+     */
+    public int frequencyOrdinal() {
+        return SettingsSchema.ordinal(SettingsSchema.FREQUENCIES, this.frequency);
+    }
+}
@@ -0,0 +1,72 @@
+import java.io.IOException;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.prefs.BackingStoreException;
+import java.util.prefs.Preferences;
+
+/**
+ * Settings store backed by the Java Preferences API.
+ * This is the default backend.
+ */
+public class PreferencesSettingsStore implements SettingsStore {
+    //Preferences node holding the settings
+    private final Preferences prefs;
+
+    /**
+     * Creates a store on the given preferences node.
+     */
+    public PreferencesSettingsStore(Preferences prefs) {
+        this.prefs = prefs;
+    }
+
+    @Override
+    public String get(String key) {
+        return this.prefs.get(key, null);
+    }
+
+    @Override
+    public void putAll(Map<String, String> entries) {
+        //Check the whole group first so a refused group writes nothing
+        this.check(entries);
+        for (Map.Entry<String, String> entry : entries.entrySet()) {
+            if (entry.getValue() == null) {
+                this.prefs.remove(entry.getKey());
+            } else {
+                this.prefs.put(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    @Override
+    public void check(Map<String, String> entries) {
+        for (Map.Entry<String, String> entry : entries.entrySet()) {
+            if (entry.getKey().length() > Preferences.MAX_KEY_LENGTH
+                    || (entry.getValue() != null && entry.getValue().length() > Preferences.MAX_VALUE_LENGTH)) {
+                throw new IllegalArgumentException("Setting too long for preferences: " + entry.getKey());
+            }
+        }
+    }
+
+    @Override
+    public void clear() throws IOException {
+        try {
+            this.prefs.clear();
+        } catch (BackingStoreException e) {
+            throw new IOException("Could not clear preferences", e);
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        try {
+            this.prefs.flush();
+        } catch (BackingStoreException e) {
+            throw new IOException("Could not flush preferences", e);
+        }
+    }
+
+    @Override
+    public void addChangeListener(Consumer<String> listener) {
+        this.prefs.addPreferenceChangeListener((evt) -> listener.accept(evt.getKey()));
+    }
+}
@@ -0,0 +1,232 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Settings engine for deployments where many users share one installation.
+ * Profiles live in a single indexed ProfileStore, and the most recently used ones
+ * are kept in memory with LRU eviction, so switching to an active profile is a
+ * hash lookup and switching to an inactive one is a single record read.
+ */
+public class ProfileSettingsEngine implements AutoCloseable {
+    //Default number of profiles kept in memory
+    public static final int DEFAULT_CACHE_CAPACITY = 1024;
+
+    private final ProfileStore profiles;
+    private final LinkedHashMap<String, Profile> active = new LinkedHashMap<>(16, 0.75F, true);
+    private final int cacheCapacity;
+    private int dirtyCount;
+
+    /**
+     * Opens the engine on a profile directory with the default cache capacity.
+     */
+    public ProfileSettingsEngine(Path directory) throws IOException {
+        this(directory, DEFAULT_CACHE_CAPACITY);
+    }
+
+    /**
+     * Opens the engine on a profile directory, keeping up to cacheCapacity profiles in memory.
+     */
+    public ProfileSettingsEngine(Path directory, int cacheCapacity) throws IOException {
+        if (cacheCapacity < 1) {
+            throw new IllegalArgumentException("Profile cache must hold at least one profile: " + cacheCapacity);
+        }
+        this.profiles = new ProfileStore(directory);
+        this.cacheCapacity = cacheCapacity;
+    }
+
+    /**
+     * Returns a settings store view of one user's profile, creating the profile if needed.
+     */
+    public SettingsStore forProfile(String username) {
+        if (JournalSettingsStore.utfLength(username) > JournalSettingsStore.MAX_UTF_BYTES) {
+            throw new IllegalArgumentException("Username too long for the profile store");
+        }
+        return new ProfileSettingsStore(username);
+    }
+
+    /**
+     * Retrieves the number of profiles on disk.
+     */
+    public int getProfileCount() {
+        return this.profiles.size();
+    }
+
+    /**
+     * Retrieves the number of profiles currently held in memory.
+     */
+    public synchronized int getActiveCount() {
+        return this.active.size();
+    }
+
+    /**
+     * Writes every dirty cached profile and makes the store durable.
+     */
+    public synchronized void flush() throws IOException {
+        for (Profile profile : this.active.values()) {
+            this.writeBack(profile);
+        }
+        this.evict();
+        this.profiles.flush();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        this.flush();
+        this.profiles.close();
+    }
+
+    /**
+     * Returns the cached profile for a user, loading it from disk on a miss.
+     * A load drops the least recently used unchanged profiles beyond the cache capacity,
+     * so reads alone never grow the cache; changed ones wait for the next write or flush.
+     */
+    private synchronized Profile profile(String username) throws IOException {
+        Profile profile = this.active.get(username);
+        if (profile == null) {
+            Map<String, String> values = this.profiles.load(username);
+            profile = new Profile(username, values == null ? new HashMap<>() : values);
+            this.active.put(username, profile);
+
+            //Stop once no unchanged profile but the new one is left, so a cache of changed ones is not scanned
+            Iterator<Profile> eldest = this.active.values().iterator();
+            while (this.active.size() > this.cacheCapacity && this.active.size() - this.dirtyCount > 1) {
+                Profile candidate = eldest.next();
+                if (!candidate.dirty && candidate != profile) {
+                    eldest.remove();
+                }
+            }
+        }
+        return profile;
+    }
+
+    /**
+     * Drops the least recently used profiles beyond the cache capacity, writing dirty ones out first.
+     * A profile that cannot be written stays cached with its changes, and the error is thrown.
+     */
+    private void evict() throws IOException {
+        Iterator<Profile> eldest = this.active.values().iterator();
+        while (this.active.size() > this.cacheCapacity) {
+            this.writeBack(eldest.next());
+            eldest.remove();
+        }
+    }
+
+    /**
+     * Marks a cached profile as having unsaved changes.
+     */
+    private void markDirty(Profile profile) {
+        if (!profile.dirty) {
+            profile.dirty = true;
+            this.dirtyCount++;
+        }
+    }
+
+    /**
+     * Appends a profile to the store if it has unsaved changes.
+     */
+    private void writeBack(Profile profile) throws IOException {
+        if (profile.dirty) {
+            this.profiles.save(profile.username, profile.values);
+            profile.dirty = false;
+            this.dirtyCount--;
+        }
+    }
+
+    /**
+     * In-memory state of one profile.
+     */
+    private static class Profile {
+        private final String username;
+        private final Map<String, String> values;
+        private boolean dirty;
+
+        private Profile(String username, Map<String, String> values) {
+            this.username = username;
+            this.values = values;
+        }
+    }
+
+    /**
+     * Settings store view bound to one profile.
+     */
+    private class ProfileSettingsStore implements SettingsStore {
+        private final String username;
+
+        private ProfileSettingsStore(String username) {
+            this.username = username;
+        }
+
+        @Override
+        public String get(String key) {
+            synchronized (ProfileSettingsEngine.this) {
+                try {
+                    return ProfileSettingsEngine.this.profile(this.username).values.get(key);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    return null;
+                }
+            }
+        }
+
+        @Override
+        public void putAll(Map<String, String> entries) {
+            //Refuse what ProfileStore could never write, or its write-back would block every eviction
+            this.check(entries);
+            synchronized (ProfileSettingsEngine.this) {
+                try {
+                    //Make room first, so a profile that cannot be written back refuses the whole group
+                    Profile profile = ProfileSettingsEngine.this.profile(this.username);
+                    ProfileSettingsEngine.this.evict();
+                    for (Map.Entry<String, String> entry : entries.entrySet()) {
+                        if (entry.getValue() == null) {
+                            profile.values.remove(entry.getKey());
+                        } else {
+                            profile.values.put(entry.getKey(), entry.getValue());
+                        }
+                    }
+                    ProfileSettingsEngine.this.markDirty(profile);
+                } catch (IOException e) {
+                    throw new IllegalStateException("Could not load profile " + this.username
+                            + " or write back an evicted one", e);
+                }
+            }
+        }
+
+        /**
+         * Refuses keys and values too long for the writeUTF encoding of a profile record.
+         */
+        @Override
+        public void check(Map<String, String> entries) {
+            for (Map.Entry<String, String> entry : entries.entrySet()) {
+                if (JournalSettingsStore.utfLength(entry.getKey()) > JournalSettingsStore.MAX_UTF_BYTES
+                        || (entry.getValue() != null
+                        && JournalSettingsStore.utfLength(entry.getValue()) > JournalSettingsStore.MAX_UTF_BYTES)) {
+                    throw new IllegalArgumentException("Setting too long for profile " + this.username + ": " + entry.getKey());
+                }
+            }
+        }
+
+        @Override
+        public void clear() throws IOException {
+            synchronized (ProfileSettingsEngine.this) {
+                Profile profile = ProfileSettingsEngine.this.profile(this.username);
+                ProfileSettingsEngine.this.evict();
+                profile.values.clear();
+                ProfileSettingsEngine.this.markDirty(profile);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            synchronized (ProfileSettingsEngine.this) {
+                ProfileSettingsEngine.this.writeBack(ProfileSettingsEngine.this.profile(this.username));
+                ProfileSettingsEngine.this.evict();
+                ProfileSettingsEngine.this.profiles.flush();
+            }
+        }
+    }
+}
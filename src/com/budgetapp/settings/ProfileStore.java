@@ -0,0 +1,319 @@
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Indexed on-disk store holding the settings of many user profiles in one data file.
+ * Each save appends a checksummed profile record to the data file and its offset to
+ * an index file, so loading or saving a profile costs one seek and one record
+ * regardless of how many profiles exist.
+ *
+ * The index is read into a hash map when the store opens, stopping at the first entry
+ * that cannot be decoded, and is cut back to the last complete entry before anything is
+ * appended to it. Records appended after the last index entry, for example when a crash
+ * cut the index short, are found by scanning the data file from that point.
+ *
+ * Every save leaves the profile's previous record and index entry behind. Once these
+ * outnumber the live ones, both files are rewritten with only the live records. The old
+ * index is removed before the new data file replaces the old one, so a crash part-way
+ * leaves a data file without an index, which is rebuilt by scanning it.
+ */
+public class ProfileStore implements AutoCloseable {
+    //Record format constants
+    private static final int MAGIC = 0x53575046;
+    private static final int HEADER_SIZE = 12;
+
+    //Superseded index entries allowed before compacting, and at least as many as live ones
+    private static final int MIN_DEAD_ENTRIES = 256;
+
+    private final Path dataFile;
+    private final Path indexFile;
+    private FileChannel data;
+    private FileChannel indexChannel;
+    private DataOutputStream index;
+    private final Map<String, Long> offsets = new HashMap<>();
+    private long entries;
+
+    /**
+     * Opens or creates a profile store in the given directory.
+     */
+    public ProfileStore(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        this.dataFile = directory.resolve("profiles.dat");
+        this.indexFile = directory.resolve("profiles.idx");
+        this.data = FileChannel.open(this.dataFile, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        long indexed = 0;
+        long complete = 0;
+        if (Files.exists(this.indexFile)) {
+            byte[] bytes = Files.readAllBytes(this.indexFile);
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+            try {
+                while (in.available() > 0) {
+                    String username = in.readUTF();
+                    long offset = in.readLong();
+                    if (offset < 0 || offset >= this.data.size()) {
+                        break;
+                    }
+                    this.offsets.put(username, offset);
+                    indexed = Math.max(indexed, offset);
+                    complete = bytes.length - in.available();
+                    this.entries++;
+                }
+            } catch (IOException e) {
+                //Torn or garbled entry, the index ends at the last complete one
+            }
+            if (complete < bytes.length) {
+                System.out.println("Dropping " + (bytes.length - complete) + " bytes of torn profile index");
+            }
+        }
+
+        this.openIndex(complete);
+        this.recoverUnindexed(indexed);
+        this.compactIfNeeded();
+    }
+
+    /**
+     * Loads the settings saved for a profile, or null if the profile does not exist.
+     */
+    public synchronized Map<String, String> load(String username) throws IOException {
+        Long offset = this.offsets.get(username);
+        if (offset == null) {
+            return null;
+        }
+
+        ProfileRecord record = this.readRecord(offset);
+        if (record == null || !record.username().equals(username)) {
+            throw new IOException("Corrupt profile record for " + username + " at offset " + offset);
+        }
+        return record.values();
+    }
+
+    /**
+     * Appends a new version of a profile's settings and indexes it.
+     */
+    public synchronized void save(String username, Map<String, String> values) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeUTF(username);
+        out.writeInt(values.size());
+        for (Map.Entry<String, String> entry : values.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeUTF(entry.getValue());
+        }
+        out.flush();
+        byte[] payload = bytes.toByteArray();
+
+        ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + payload.length);
+        record.putInt(MAGIC);
+        record.putInt(payload.length);
+        record.putInt(checksum(payload));
+        record.put(payload);
+        record.flip();
+
+        long offset = this.data.size();
+        while (record.hasRemaining()) {
+            this.data.write(record, offset + record.position());
+        }
+        this.index.writeUTF(username);
+        this.index.writeLong(offset);
+        this.offsets.put(username, offset);
+        this.entries++;
+    }
+
+    /**
+     * Makes all saved profiles durable, compacting the files first if most of their entries are superseded.
+     */
+    public synchronized void flush() throws IOException {
+        this.data.force(false);
+        this.index.flush();
+        this.compactIfNeeded();
+    }
+
+    /**
+     * Retrieves the number of stored profiles.
+     */
+    public synchronized int size() {
+        return this.offsets.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        this.flush();
+        this.index.close();
+        this.data.close();
+    }
+
+    /**
+     * Opens the index for appending after its first length bytes, cutting off anything beyond them.
+     */
+    private void openIndex(long length) throws IOException {
+        this.indexChannel = FileChannel.open(this.indexFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        this.indexChannel.truncate(length);
+        this.indexChannel.position(length);
+        this.index = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(this.indexChannel)));
+    }
+
+    /**
+     * Rewrites both files with only the live record of each profile once superseded entries outnumber live ones.
+     */
+    private void compactIfNeeded() throws IOException {
+        long dead = this.entries - this.offsets.size();
+        if (dead < MIN_DEAD_ENTRIES || dead < this.offsets.size()) {
+            return;
+        }
+
+        Path dataTemp = this.dataFile.resolveSibling(this.dataFile.getFileName() + ".tmp");
+        Path indexTemp = this.indexFile.resolveSibling(this.indexFile.getFileName() + ".tmp");
+        Map<String, Long> compacted = new HashMap<>();
+        ByteArrayOutputStream indexBytes = new ByteArrayOutputStream();
+        DataOutputStream indexOut = new DataOutputStream(indexBytes);
+        try (FileChannel out = FileChannel.open(dataTemp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            for (Map.Entry<String, Long> entry : this.offsets.entrySet()) {
+                ProfileRecord record = this.readRecord(entry.getValue());
+                if (record == null) {
+                    throw new IOException("Corrupt profile record for " + entry.getKey() + " at offset " + entry.getValue());
+                }
+                long offset = out.position();
+                for (long copied = 0; copied < record.length(); ) {
+                    copied += this.data.transferTo(entry.getValue() + copied, record.length() - copied, out);
+                }
+                indexOut.writeUTF(entry.getKey());
+                indexOut.writeLong(offset);
+                compacted.put(entry.getKey(), offset);
+            }
+            out.force(false);
+        }
+        try (FileChannel out = FileChannel.open(indexTemp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer bytes = ByteBuffer.wrap(indexBytes.toByteArray());
+            while (bytes.hasRemaining()) {
+                out.write(bytes);
+            }
+            out.force(false);
+        }
+
+        //Without an index the data file is rescanned on open, so removing it first keeps every step recoverable
+        this.index.close();
+        this.data.close();
+        Files.delete(this.indexFile);
+        Files.move(dataTemp, this.dataFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Files.move(indexTemp, this.indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        this.data = FileChannel.open(this.dataFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.openIndex(Files.size(this.indexFile));
+        this.offsets.clear();
+        this.offsets.putAll(compacted);
+        this.entries = compacted.size();
+    }
+
+    /**
+     * Indexes any complete records written after the given offset.
+     */
+    private void recoverUnindexed(long from) throws IOException {
+        long offset = from;
+        long size = this.data.size();
+        if (offset >= size) {
+            return;
+        }
+
+        ProfileRecord record = this.readRecord(offset);
+        if (record != null && this.offsets.get(record.username()) != null
+                && this.offsets.get(record.username()) == offset) {
+            offset += record.length();
+        }
+
+        while (offset < size) {
+            record = this.readRecord(offset);
+            if (record == null) {
+                System.out.println("Dropping " + (size - offset) + " bytes of torn profile data");
+                this.data.truncate(offset);
+                break;
+            }
+            this.offsets.put(record.username(), offset);
+            this.index.writeUTF(record.username());
+            this.index.writeLong(offset);
+            this.entries++;
+            offset += record.length();
+        }
+        this.index.flush();
+    }
+
+    /**
+     * Reads and validates the record at an offset, or returns null if it is torn or corrupt.
+     */
+    private ProfileRecord readRecord(long offset) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        if (this.readFully(header, offset) < HEADER_SIZE) {
+            return null;
+        }
+        header.flip();
+        int magic = header.getInt();
+        int length = header.getInt();
+        int checksum = header.getInt();
+        if (magic != MAGIC || length < 0 || offset + HEADER_SIZE + length > this.data.size()) {
+            return null;
+        }
+
+        ByteBuffer payload = ByteBuffer.allocate(length);
+        this.readFully(payload, offset + HEADER_SIZE);
+        byte[] bytes = payload.array();
+        if (checksum(bytes) != checksum) {
+            return null;
+        }
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        String username = in.readUTF();
+        int count = in.readInt();
+        Map<String, String> values = new HashMap<>();
+        for (int i = 0; i < count; ++i) {
+            values.put(in.readUTF(), in.readUTF());
+        }
+        return new ProfileRecord(username, values, HEADER_SIZE + length);
+    }
+
+    /**
+     * Reads into the buffer from a file position until it is full or the file ends.
+     */
+    private int readFully(ByteBuffer buffer, long position) throws IOException {
+        int total = 0;
+        while (buffer.hasRemaining()) {
+            int read = this.data.read(buffer, position + total);
+            if (read < 0) {
+                break;
+            }
+            total += read;
+        }
+        return total;
+    }
+
+    /**
+     * Computes the CRC32 of a payload.
+     */
+    private static int checksum(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        return (int)crc.getValue();
+    }
+
+    /**
+     * A decoded profile record and its size on disk.
+     */
+    private record ProfileRecord(String username, Map<String, String> values, int length) {
+    }
+}
@@ -0,0 +1,197 @@
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * A typed setting, declaring its persisted name, value type, default, codec and validation.
+ * Stores keep every setting as raw text; parse turns that text into a typed value and
+ * format turns a typed value back into text. The registry of all keys is SettingsSchema.
+ */
+public final class SettingKey<T> {
+    private final String key;
+    private final Class<T> type;
+    private final SettingsSchema.Kind kind;
+    private final String[] options;
+    private final T defaultValue;
+    private final String defaultText;
+    private final Function<String, T> parser;
+    private final Function<T, String> formatter;
+    private final Predicate<T> validator;
+
+    private SettingKey(String key, Class<T> type, SettingsSchema.Kind kind, String[] options, T defaultValue,
+                       Function<String, T> parser, Function<T, String> formatter, Predicate<T> validator) {
+        this.key = key;
+        this.type = type;
+        this.kind = kind;
+        this.options = options;
+        this.defaultValue = defaultValue;
+        this.parser = parser;
+        this.formatter = formatter;
+        this.validator = validator;
+        this.defaultText = formatter.apply(defaultValue);
+    }
+
+    /**
+     * Declares a free text setting.
+     */
+    public static SettingKey<String> text(String key, String defaultValue) {
+        return new SettingKey<>(key, String.class, SettingsSchema.Kind.TEXT, null, defaultValue,
+                Function.identity(), Function.identity(), Objects::nonNull);
+    }
+
+    /**
+     * Declares an on/off setting stored as "true" or "false".
+     */
+    public static SettingKey<Boolean> flag(String key, boolean defaultValue) {
+        return new SettingKey<>(key, Boolean.class, SettingsSchema.Kind.FLAG, null, defaultValue,
+                (raw) -> "true".equalsIgnoreCase(raw) ? Boolean.TRUE : "false".equalsIgnoreCase(raw) ? Boolean.FALSE : null,
+                String::valueOf, Objects::nonNull);
+    }
+
+    /**
+     * Declares an integer setting limited to an inclusive range.
+     */
+    public static SettingKey<Integer> number(String key, int defaultValue, int min, int max) {
+        return new SettingKey<>(key, Integer.class, SettingsSchema.Kind.NUMBER, null, defaultValue,
+                Integer::valueOf, String::valueOf, (value) -> value != null && value >= min && value <= max);
+    }
+
+    /**
+     * Declares a setting whose value must be one of the given options.
+     */
+    public static SettingKey<String> choice(String key, String[] options, String defaultValue) {
+        return new SettingKey<>(key, String.class, SettingsSchema.Kind.CHOICE, options, defaultValue,
+                Function.identity(), Function.identity(), (value) -> value != null && SettingsSchema.ordinal(options, value) >= 0);
+    }
+
+    /**
+     * Declares a choice setting whose options stand for the values at the same positions.
+     */
+    public static <T> SettingKey<T> choice(String key, String[] options, T[] values, Class<T> type, T defaultValue) {
+        return new SettingKey<>(key, type, SettingsSchema.Kind.CHOICE, options, defaultValue,
+                (raw) -> {
+                    int ordinal = SettingsSchema.ordinal(options, raw);
+                    return ordinal < 0 ? null : values[ordinal];
+                },
+                (value) -> options[indexOf(values, value)],
+                (value) -> indexOf(values, value) >= 0);
+    }
+
+    /**
+     * Declares a time of day setting, stored in 12-hour or 24-hour form depending on the kind.
+     */
+    public static SettingKey<LocalTime> clock(String key, SettingsSchema.Kind kind, LocalTime defaultValue) {
+        DateTimeFormatter format = kind == SettingsSchema.Kind.CLOCK_12H ? SettingsSchema.CLOCK_12H_FORMAT : SettingsSchema.CLOCK_24H_FORMAT;
+        return new SettingKey<>(key, LocalTime.class, kind, null, defaultValue,
+                (raw) -> LocalTime.parse(raw, format), format::format, Objects::nonNull);
+    }
+
+    /**
+     * Retrieves the name the setting is persisted under.
+     */
+    public String key() {
+        return this.key;
+    }
+
+    /**
+     * Retrieves the type of the setting's parsed value.
+     */
+    public Class<T> type() {
+        return this.type;
+    }
+
+    /**
+     * Retrieves how the setting's raw text is encoded in the compact binary format.
+     */
+    public SettingsSchema.Kind kind() {
+        return this.kind;
+    }
+
+    /**
+     * Retrieves the choice options, or null if the setting is not a choice.
+     */
+    public String[] options() {
+        return this.options;
+    }
+
+    /**
+     * Retrieves the value used when nothing valid has been saved.
+     */
+    public T defaultValue() {
+        return this.defaultValue;
+    }
+
+    /**
+     * Retrieves the default value as raw text.
+     */
+    public String defaultText() {
+        return this.defaultText;
+    }
+
+    /**
+     * Checks whether a value may be saved for this setting.
+     */
+    public boolean isValid(T value) {
+        return this.validator.test(value);
+    }
+
+    /**
+     * Parses raw text, returning the default if it is missing, malformed or invalid.
+     */
+    public T parse(String raw) {
+        if (raw == null) {
+            return this.defaultValue;
+        }
+
+        try {
+            T value = this.parser.apply(raw);
+            return this.isValid(value) ? value : this.defaultValue;
+        } catch (NumberFormatException | DateTimeParseException e) {
+            return this.defaultValue;
+        }
+    }
+
+    /**
+     * Checks raw text about to be saved, throwing IllegalArgumentException unless it parses to a valid value.
+     */
+    public void validate(String raw) {
+        T value;
+        try {
+            value = raw == null ? null : this.parser.apply(raw);
+        } catch (NumberFormatException | DateTimeParseException e) {
+            value = null;
+        }
+        if (value == null || !this.isValid(value)) {
+            throw new IllegalArgumentException("Invalid value for " + this.key + ": " + raw);
+        }
+    }
+
+    /**
+     * Formats a value as raw text, rejecting values that fail validation.
+     */
+    public String format(T value) {
+        if (!this.isValid(value)) {
+            throw new IllegalArgumentException("Invalid value for " + this.key + ": " + value);
+        }
+        return this.formatter.apply(value);
+    }
+
+    /**
+     * Finds a value among choice values, or returns -1 if it is not one of them.
+     */
+    private static <T> int indexOf(T[] values, T value) {
+        for (int i = 0; i < values.length; ++i) {
+            if (values[i].equals(value)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public String toString() {
+        return this.key;
+    }
+}
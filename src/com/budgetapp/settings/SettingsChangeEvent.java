@@ -0,0 +1,14 @@
+import java.util.Set;
+
+/**
+ * Describes one or more coalesced settings changes.
+ * The version is that of the snapshot published by the latest change included.
+ */
+public record SettingsChangeEvent(Set<String> keys, long version) {
+    /**
+     * Checks whether the given key changed.
+     */
+    public boolean affects(String key) {
+        return this.keys.contains(key);
+    }
+}
@@ -0,0 +1,250 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact, versioned binary encoding of the whole settings set.
+ *
+ * Layout: magic "SW", schema version, field count, a presence bitmap, a bitmap of
+ * flag values, then each present non-flag field in schema order. Choices are a single
+ * ordinal byte, clock times a minute-of-day, numbers a zigzag varint and text a
+ * length-prefixed UTF-8 string. A choice or time that is not in canonical form is
+ * written after an escape marker so that nothing is lost. The field count lets newer
+ * readers decode older blobs that have fewer fields.
+ */
+public final class SettingsCodec {
+    //Format constants
+    private static final byte MAGIC_0 = 'S';
+    private static final byte MAGIC_1 = 'W';
+    private static final int CHOICE_ESCAPE = 0xFF;
+    private static final int CLOCK_ESCAPE = 0xFFFF;
+
+    private SettingsCodec() {
+    }
+
+    /**
+     * Encodes settings values keyed by setting name. Keys missing from the map are stored as absent.
+     */
+    public static byte[] encode(Map<String, String> values) {
+        List<SettingKey<?>> fields = SettingsSchema.FIELDS;
+        ByteArrayOutputStream out = new ByteArrayOutputStream(128);
+        out.write(MAGIC_0);
+        out.write(MAGIC_1);
+        out.write(SettingsSchema.VERSION);
+        writeVarint(out, fields.size());
+
+        byte[] present = new byte[(fields.size() + 7) / 8];
+        byte[] flags = new byte[(fields.size() + 7) / 8];
+        ByteArrayOutputStream body = new ByteArrayOutputStream(128);
+        for (int i = 0; i < fields.size(); ++i) {
+            SettingKey<?> field = fields.get(i);
+            String value = values.get(field.key());
+            if (value == null || !encodeField(body, field, value, flags, i)) {
+                continue;
+            }
+            present[i / 8] |= (byte)(1 << (i % 8));
+        }
+
+        out.writeBytes(present);
+        out.writeBytes(flags);
+        out.writeBytes(body.toByteArray());
+        return out.toByteArray();
+    }
+
+    /**
+     * Decodes a blob produced by encode back into values keyed by setting name.
+     */
+    public static Map<String, String> decode(byte[] data) throws IOException {
+        Reader in = new Reader(data);
+        if (in.readByte() != MAGIC_0 || in.readByte() != MAGIC_1) {
+            throw new IOException("Not an encoded settings blob");
+        }
+        int version = in.readByte();
+        if (version < 1 || version > SettingsSchema.VERSION) {
+            throw new IOException("Unsupported settings schema version " + version);
+        }
+        int count = in.readVarint();
+        if (count > SettingsSchema.FIELDS.size()) {
+            throw new IOException("Settings blob has " + count + " fields, schema knows "
+                    + SettingsSchema.FIELDS.size());
+        }
+
+        byte[] present = in.readBytes((count + 7) / 8);
+        byte[] flags = in.readBytes((count + 7) / 8);
+        Map<String, String> values = new LinkedHashMap<>();
+        for (int i = 0; i < count; ++i) {
+            if ((present[i / 8] & (1 << (i % 8))) == 0) {
+                continue;
+            }
+
+            SettingKey<?> field = SettingsSchema.FIELDS.get(i);
+            values.put(field.key(), switch (field.kind()) {
+                case FLAG -> String.valueOf((flags[i / 8] & (1 << (i % 8))) != 0);
+                case NUMBER -> String.valueOf(in.readZigzag());
+                case CHOICE -> {
+                    int ordinal = in.readByte();
+                    if (ordinal == CHOICE_ESCAPE) {
+                        yield in.readText();
+                    } else if (ordinal >= field.options().length) {
+                        throw new IOException("Unknown ordinal " + ordinal + " for " + field.key());
+                    }
+                    yield field.options()[ordinal];
+                }
+                case CLOCK_12H, CLOCK_24H -> {
+                    int minutes = (in.readByte() << 8) | in.readByte();
+                    if (minutes == CLOCK_ESCAPE) {
+                        yield in.readText();
+                    } else if (minutes >= 24 * 60) {
+                        throw new IOException("Invalid time " + minutes + " for " + field.key());
+                    }
+                    DateTimeFormatter format = field.kind() == SettingsSchema.Kind.CLOCK_12H ? SettingsSchema.CLOCK_12H_FORMAT : SettingsSchema.CLOCK_24H_FORMAT;
+                    yield LocalTime.of(minutes / 60, minutes % 60).format(format);
+                }
+                case TEXT -> in.readText();
+            });
+        }
+        return values;
+    }
+
+    /**
+     * Writes one field. Returns false if the value cannot be represented and should be stored as absent.
+     */
+    private static boolean encodeField(ByteArrayOutputStream body, SettingKey<?> field, String value,
+                                       byte[] flags, int index) {
+        switch (field.kind()) {
+            case FLAG -> {
+                if ("true".equalsIgnoreCase(value)) {
+                    flags[index / 8] |= (byte)(1 << (index % 8));
+                } else if (!"false".equalsIgnoreCase(value)) {
+                    return false;
+                }
+            }
+            case NUMBER -> {
+                try {
+                    writeZigzag(body, Integer.parseInt(value));
+                } catch (NumberFormatException e) {
+                    return false;
+                }
+            }
+            case CHOICE -> {
+                int ordinal = SettingsSchema.ordinal(field.options(), value);
+                if (ordinal < 0) {
+                    body.write(CHOICE_ESCAPE);
+                    writeText(body, value);
+                } else {
+                    body.write(ordinal);
+                }
+            }
+            case CLOCK_12H, CLOCK_24H -> {
+                DateTimeFormatter format = field.kind() == SettingsSchema.Kind.CLOCK_12H ? SettingsSchema.CLOCK_12H_FORMAT : SettingsSchema.CLOCK_24H_FORMAT;
+                int minutes = clockMinutes(value, format);
+                body.write(minutes >> 8);
+                body.write(minutes & 0xFF);
+                if (minutes == CLOCK_ESCAPE) {
+                    writeText(body, value);
+                }
+            }
+            case TEXT -> writeText(body, value);
+        }
+        return true;
+    }
+
+    /**
+     * Parses a clock time as minutes of the day, or returns the escape marker if it
+     * would not format back to exactly the same text.
+     */
+    private static int clockMinutes(String value, DateTimeFormatter format) {
+        try {
+            LocalTime time = LocalTime.parse(value, format);
+            if (time.format(format).equals(value)) {
+                return time.getHour() * 60 + time.getMinute();
+            }
+        } catch (DateTimeParseException e) {
+            //Fall through to the escaped text form
+        }
+        return CLOCK_ESCAPE;
+    }
+
+    /**
+     * Writes a length-prefixed UTF-8 string.
+     */
+    private static void writeText(ByteArrayOutputStream out, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarint(out, bytes.length);
+        out.writeBytes(bytes);
+    }
+
+    /**
+     * Writes a signed integer as a zigzag varint.
+     */
+    private static void writeZigzag(ByteArrayOutputStream out, int value) {
+        writeVarint(out, (value << 1) ^ (value >> 31));
+    }
+
+    /**
+     * Writes an unsigned varint, seven bits per byte.
+     */
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    /**
+     * Bounds-checked cursor over an encoded blob.
+     */
+    private static class Reader {
+        private final byte[] data;
+        private int position;
+
+        private Reader(byte[] data) {
+            this.data = data;
+        }
+
+        private int readByte() throws IOException {
+            if (this.position >= this.data.length) {
+                throw new IOException("Truncated settings blob");
+            }
+            return this.data[this.position++] & 0xFF;
+        }
+
+        private byte[] readBytes(int length) throws IOException {
+            if (length < 0 || this.position + length > this.data.length) {
+                throw new IOException("Truncated settings blob");
+            }
+            byte[] bytes = new byte[length];
+            System.arraycopy(this.data, this.position, bytes, 0, length);
+            this.position += length;
+            return bytes;
+        }
+
+        private int readVarint() throws IOException {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                int b = this.readByte();
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Malformed varint in settings blob");
+        }
+
+        private int readZigzag() throws IOException {
+            int value = this.readVarint();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        private String readText() throws IOException {
+            return new String(this.readBytes(this.readVarint()), StandardCharsets.UTF_8);
+        }
+    }
+}
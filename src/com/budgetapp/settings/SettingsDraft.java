@@ -0,0 +1,112 @@
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Form state for editing settings, with per-field dirty tracking.
+ * A draft starts from the values SettingsManager had when it was created and
+ * remembers only the fields whose edited value differs from that baseline, so
+ * saving it writes just those keys. Setting a field back to its original value
+ * clears it again.
+ */
+public class SettingsDraft {
+    private final Map<String, String> baseline;
+    private final Map<String, String> edits = new HashMap<>();
+
+    /**
+     * Creates a draft over the given baseline values keyed by setting name.
+     */
+    public SettingsDraft(Map<String, String> baseline) {
+        this.baseline = new HashMap<>(baseline);
+    }
+
+    /**
+     * Retrieves the current value of a field, edited or not.
+     */
+    public synchronized String get(String key) {
+        return this.edits.containsKey(key) ? this.edits.get(key) : this.baseline.get(key);
+    }
+
+    /**
+     * Retrieves the value a field had when the draft was created or last saved.
+     */
+    public synchronized String getOriginal(String key) {
+        return this.baseline.get(key);
+    }
+
+    /**
+     * Sets a field, marking it dirty only if it differs from the baseline.
+     */
+    public synchronized void set(String key, String value) {
+        if (Objects.equals(this.baseline.get(key), value)) {
+            this.edits.remove(key);
+        } else {
+            this.edits.put(key, value);
+        }
+    }
+
+    /**
+     * Sets a boolean field.
+     */
+    public void set(String key, boolean value) {
+        this.set(key, String.valueOf(value));
+    }
+
+    /**
+     * Checks whether any field differs from the baseline.
+     */
+    public synchronized boolean isDirty() {
+        return !this.edits.isEmpty();
+    }
+
+    /**
+     * Retrieves the dirty fields and their edited values.
+     */
+    public synchronized Map<String, String> getDirtyValues() {
+        return Collections.unmodifiableMap(new HashMap<>(this.edits));
+    }
+
+    /**
+     * Makes the given saved values the new baseline and clears them from the dirty set.
+     */
+    public synchronized void markSaved(Map<String, String> saved) {
+        for (Map.Entry<String, String> entry : saved.entrySet()) {
+            this.baseline.put(entry.getKey(), entry.getValue());
+            if (Objects.equals(this.edits.get(entry.getKey()), entry.getValue())) {
+                this.edits.remove(entry.getKey());
+            }
+        }
+    }
+
+    /**
+     * Takes the current value of every dirty field that was changed elsewhere since the baseline was
+     * taken as its new baseline, discarding the edit, and returns those keys. The remaining edits
+     * can then be saved, and the user can review the others against the values now stored.
+     */
+    public synchronized Set<String> rebase(Function<String, String> current) {
+        Set<String> conflicts = new HashSet<>();
+        Iterator<String> dirty = this.edits.keySet().iterator();
+        while (dirty.hasNext()) {
+            String key = dirty.next();
+            String value = current.apply(key);
+            if (!Objects.equals(this.baseline.get(key), value)) {
+                this.baseline.put(key, value);
+                dirty.remove();
+                conflicts.add(key);
+            }
+        }
+        return conflicts;
+    }
+
+    /**
+     * Discards every edit.
+     */
+    public synchronized void revert() {
+        this.edits.clear();
+    }
+}
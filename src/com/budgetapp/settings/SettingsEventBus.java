@@ -0,0 +1,115 @@
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Delivers settings change events to listeners subscribed to specific keys.
+ * Each subscription has its own executor, for example the Event Dispatch Thread
+ * for UI listeners. Changes published while an earlier event is still waiting to
+ * be delivered are merged into it, so a slow listener sees one combined event
+ * instead of a backlog.
+ */
+public class SettingsEventBus {
+    private final CopyOnWriteArrayList<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+
+    /**
+     * Registers a listener for changes to any of the given keys, delivered on the executor.
+     * An empty key collection subscribes to every key.
+     */
+    public void subscribe(SettingsListener listener, Executor executor, Collection<String> keys) {
+        this.subscriptions.add(new Subscription(listener, executor, Set.copyOf(keys)));
+    }
+
+    /**
+     * Removes every subscription of the given listener.
+     */
+    public void unsubscribe(SettingsListener listener) {
+        this.subscriptions.removeIf((subscription) -> subscription.listener == listener);
+    }
+
+    /**
+     * Publishes one change to every subscriber interested in at least one of the keys.
+     */
+    public void publish(Set<String> changed, long version) {
+        if (changed.isEmpty()) {
+            return;
+        }
+
+        for (Subscription subscription : this.subscriptions) {
+            Set<String> relevant = subscription.filter(changed);
+            if (!relevant.isEmpty()) {
+                subscription.enqueue(relevant, version);
+            }
+        }
+    }
+
+    /**
+     * One listener, its key filter and its undelivered event.
+     */
+    private static class Subscription {
+        private final SettingsListener listener;
+        private final Executor executor;
+        private final Set<String> keys;
+        private final AtomicReference<SettingsChangeEvent> undelivered = new AtomicReference<>();
+
+        private Subscription(SettingsListener listener, Executor executor, Set<String> keys) {
+            this.listener = listener;
+            this.executor = executor;
+            this.keys = keys;
+        }
+
+        /**
+         * Returns the changed keys this subscription is interested in.
+         */
+        private Set<String> filter(Set<String> changed) {
+            if (this.keys.isEmpty()) {
+                return changed;
+            }
+
+            Set<String> relevant = new HashSet<>();
+            for (String key : changed) {
+                if (this.keys.contains(key)) {
+                    relevant.add(key);
+                }
+            }
+            return relevant;
+        }
+
+        /**
+         * Merges a change into the undelivered event, scheduling delivery if none was waiting.
+         */
+        private void enqueue(Set<String> keys, long version) {
+            SettingsChangeEvent previous = this.undelivered.getAndUpdate((waiting) -> {
+                if (waiting == null) {
+                    return new SettingsChangeEvent(Set.copyOf(keys), version);
+                }
+                Set<String> merged = new HashSet<>(waiting.keys());
+                merged.addAll(keys);
+                return new SettingsChangeEvent(Set.copyOf(merged), Math.max(version, waiting.version()));
+            });
+
+            if (previous == null) {
+                this.executor.execute(this::deliver);
+            }
+        }
+
+        /**
+         * Hands the undelivered event to the listener.
+         */
+        private void deliver() {
+            SettingsChangeEvent event = this.undelivered.getAndSet(null);
+            if (event == null) {
+                return;
+            }
+
+            try {
+                this.listener.settingsChanged(event);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
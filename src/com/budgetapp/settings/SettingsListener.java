@@ -0,0 +1,11 @@
+import java.util.EventListener;
+
+/**
+ * Receives notice of settings changes from SettingsManager.
+ */
+public interface SettingsListener extends EventListener {
+    /**
+     * Called once per save with every subscribed key that the save changed.
+     */
+    void settingsChanged(SettingsChangeEvent event);
+}
@@ -1,52 +1,190 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.prefs.Preferences;
+import javax.swing.SwingUtilities;
 
 /**
  * Manages settings and preferences for the SpentWise application.
  * Provides methods to save, retrieve, and reset user preferences.
+ * Saves are staged in memory and written to the backing store as one
+ * coalesced group once the flush window has elapsed. Reads are served from
+ * an immutable snapshot that is replaced atomically on every change.
+ * The backing store defaults to Java Preferences and can be switched with
+ * -Dspentwise.settings.store=mapped (memory-mapped file) or journal
+ * (append-only journal with crash recovery). Values are kept in a compact
+ * binary encoding unless -Dspentwise.settings.encoding=text is given.
+ * Listeners can subscribe to individual keys or whole groups and receive one
+ * coalesced event per save.
+ * Typed values for the keys declared in SettingsSchema are read with get and
+ * parsed once per change.
+ * A checksummed copy of all settings is written after each flush and read at
+ * startup, so the first frame renders while the store opens in the background.
  */
 public class SettingsManager {
-    //Preferences storage for persistent settings
-    private static final Preferences prefs = Preferences.userNodeForPackage(SettingsManager.class);
+    //System properties selecting the settings backend at startup
+    private static final String STORE_PROPERTY = "spentwise.settings.store";
+    private static final String FILE_PROPERTY = "spentwise.settings.file";
+    private static final String PROFILES_PROPERTY = "spentwise.settings.profiles";
+    private static final String ENCODING_PROPERTY = "spentwise.settings.encoding";
+    private static final String SNAPSHOT_PROPERTY = "spentwise.settings.snapshot";
+    private static final Path DEFAULT_DIRECTORY = Paths.get(System.getProperty("user.home"), ".spentwise");
 
+    //Default delay before staged writes are committed to the backing store
+    private static final long DEFAULT_FLUSH_WINDOW_MS = 500;
+
+    //Write-behind staging area, a null value marks a staged removal
+    private static final Map<String, String> pending = new LinkedHashMap<>();
+    private static final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor((r) -> {
+        Thread thread = new Thread(r, "settings-flusher");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static ScheduledFuture<?> scheduledFlush;
+    private static volatile long flushWindowMs = DEFAULT_FLUSH_WINDOW_MS;
+
+    //Published settings, replaced copy-on-write and read without locking
+    private static final long ANY_VERSION = -1;
+    private static final AtomicReference<SettingsSnapshot> snapshot =
+            new AtomicReference<>(new SettingsSnapshot(0, null, null, null));
+    private static final LongAdder cacheHits = new LongAdder();
+    private static final LongAdder cacheMisses = new LongAdder();
+    private static final LongAdder cacheInvalidations = new LongAdder();
+
+    //Changes published under the pending lock, handed to subscribers once it is released
+    private static final List<SettingsChangeEvent> unpublished = new ArrayList<>();
+
+    //Typed values parsed from the published snapshot, discarded whenever it is replaced
+    private static volatile ParsedValues parsed = new ParsedValues(null, Map.of(), new ConcurrentHashMap<>());
+    private static final LongAdder valuesParsed = new LongAdder();
+
+    //Dirty tracking counters for key writes
+    private static final LongAdder writesAvoided = new LongAdder();
+    private static final LongAdder writesPerformed = new LongAdder();
+
+    //Asynchronous saves, run on virtual threads and serialized per settings group
+    private static final ExecutorService saver = Executors.newVirtualThreadPerTaskExecutor();
+    private static final Map<Set<String>, AsyncSave> queuedSaves = new HashMap<>();
+    private static final Map<Set<String>, CompletableFuture<Boolean>> lastSaves = new HashMap<>();
+    private static final LongAdder savesSuperseded = new LongAdder();
+
+    //Change notification for subscribed listeners
+    private static final SettingsEventBus events = new SettingsEventBus();
+
+    //Setting names, as declared with their types and defaults in SettingsSchema
     //Account settings keys
-    private static final String KEY_FULLNAME = "fullName";
-    private static final String KEY_DOB = "dateOfBirth";
-    private static final String KEY_USERNAME = "username";
-    private static final String KEY_EMAIL = "email";
-    private static final String KEY_PHONE = "phone";
-    private static final String KEY_ADDRESS = "address";
-    private static final String KEY_ACCOUNT_CREATED = "accountCreated";
-    private static final String KEY_CURRENCY = "currency";
-    private static final String KEY_TWO_FACTOR = "twoFactorAuth";
+    public static final String KEY_FULLNAME = SettingsSchema.FULL_NAME.key();
+    public static final String KEY_DOB = SettingsSchema.DATE_OF_BIRTH.key();
+    public static final String KEY_USERNAME = SettingsSchema.USERNAME.key();
+    public static final String KEY_EMAIL = SettingsSchema.EMAIL.key();
+    public static final String KEY_PHONE = SettingsSchema.PHONE.key();
+    public static final String KEY_ADDRESS = SettingsSchema.ADDRESS.key();
+    public static final String KEY_ACCOUNT_CREATED = SettingsSchema.ACCOUNT_CREATED.key();
+    public static final String KEY_CURRENCY = SettingsSchema.CURRENCY.key();
+    public static final String KEY_TWO_FACTOR = SettingsSchema.TWO_FACTOR_AUTH.key();
 
     //App preferences keys
-    private static final String KEY_DARK_MODE = "darkMode";
-    private static final String KEY_FONT_SIZE = "fontSize";
+    public static final String KEY_DARK_MODE = SettingsSchema.DARK_MODE.key();
+    public static final String KEY_FONT_SIZE = SettingsSchema.FONT_SIZE.key();
     private static final String KEY_THEME = "theme";
-    private static final String KEY_LANGUAGE = "language";
-    private static final String KEY_DATE_FORMAT = "dateFormat";
-    private static final String KEY_TIME_FORMAT = "timeFormat";
-    private static final String KEY_STARTUP = "startOnBoot";
-    private static final String KEY_START_MINIMIZED = "startMinimized";
-    private static final String KEY_AUTO_BACKUP = "autoBackup";
-    private static final String KEY_DEFAULT_VIEW = "defaultView";
-    private static final String KEY_CHART_TYPE = "chartType";
-    private static final String KEY_ANIMATIONS = "animationsLevel";
+    public static final String KEY_LANGUAGE = SettingsSchema.LANGUAGE.key();
+    public static final String KEY_DATE_FORMAT = SettingsSchema.DATE_FORMAT.key();
+    public static final String KEY_TIME_FORMAT = SettingsSchema.TIME_FORMAT.key();
+    public static final String KEY_STARTUP = SettingsSchema.START_ON_BOOT.key();
+    public static final String KEY_START_MINIMIZED = SettingsSchema.START_MINIMIZED.key();
+    public static final String KEY_AUTO_BACKUP = SettingsSchema.AUTO_BACKUP.key();
+    public static final String KEY_DEFAULT_VIEW = SettingsSchema.DEFAULT_VIEW.key();
+    public static final String KEY_CHART_TYPE = SettingsSchema.CHART_TYPE.key();
+    public static final String KEY_ANIMATIONS = SettingsSchema.ANIMATIONS_LEVEL.key();
 
     //Notification settings keys
-    private static final String KEY_NOTIFY_BILLS = "notifyBills";
-    private static final String KEY_NOTIFY_SUBSCRIPTIONS = "notifySubscriptions";
-    private static final String KEY_NOTIFY_WEEKLY = "notifyWeekly";
-    private static final String KEY_NOTIFY_OVERSPEND = "notifyOverspend";
-    private static final String KEY_NOTIFY_MOTIVATION = "notifyMotivation";
-    private static final String KEY_NOTIFY_FREQUENCY = "notifyFrequency";
-    private static final String KEY_NOTIFY_TIME = "notifyTime";
-    private static final String KEY_NOTIFY_EMAIL = "notifyEmail";
-    private static final String KEY_NOTIFY_DESKTOP = "notifyDesktop";
-    private static final String KEY_NOTIFY_PUSH = "notifyPush";
-    private static final String KEY_QUIET_HOURS = "quietHours";
-    private static final String KEY_QUIET_FROM = "quietFrom";
-    private static final String KEY_QUIET_TO = "quietTo";
+    public static final String KEY_NOTIFY_BILLS = SettingsSchema.NOTIFY_BILLS.key();
+    public static final String KEY_NOTIFY_SUBSCRIPTIONS = SettingsSchema.NOTIFY_SUBSCRIPTIONS.key();
+    public static final String KEY_NOTIFY_WEEKLY = SettingsSchema.NOTIFY_WEEKLY.key();
+    public static final String KEY_NOTIFY_OVERSPEND = SettingsSchema.NOTIFY_OVERSPEND.key();
+    public static final String KEY_NOTIFY_MOTIVATION = SettingsSchema.NOTIFY_MOTIVATION.key();
+    public static final String KEY_NOTIFY_FREQUENCY = SettingsSchema.NOTIFY_FREQUENCY.key();
+    public static final String KEY_NOTIFY_TIME = SettingsSchema.NOTIFY_TIME.key();
+    public static final String KEY_NOTIFY_EMAIL = SettingsSchema.NOTIFY_EMAIL.key();
+    public static final String KEY_NOTIFY_DESKTOP = SettingsSchema.NOTIFY_DESKTOP.key();
+    public static final String KEY_NOTIFY_PUSH = SettingsSchema.NOTIFY_PUSH.key();
+    public static final String KEY_QUIET_HOURS = SettingsSchema.QUIET_HOURS.key();
+    public static final String KEY_QUIET_FROM = SettingsSchema.QUIET_FROM.key();
+    public static final String KEY_QUIET_TO = SettingsSchema.QUIET_TO.key();
+
+    //Keys belonging to each settings group, usable as subscription filters
+    private static final List<String> ALL_KEYS = List.of(KEY_FULLNAME, KEY_DOB, KEY_USERNAME, KEY_EMAIL,
+            KEY_PHONE, KEY_ADDRESS, KEY_ACCOUNT_CREATED, KEY_CURRENCY, KEY_TWO_FACTOR, KEY_DARK_MODE,
+            KEY_FONT_SIZE, KEY_LANGUAGE, KEY_DATE_FORMAT, KEY_TIME_FORMAT, KEY_STARTUP, KEY_START_MINIMIZED,
+            KEY_AUTO_BACKUP, KEY_DEFAULT_VIEW, KEY_CHART_TYPE, KEY_ANIMATIONS, KEY_NOTIFY_BILLS,
+            KEY_NOTIFY_SUBSCRIPTIONS, KEY_NOTIFY_WEEKLY, KEY_NOTIFY_OVERSPEND, KEY_NOTIFY_MOTIVATION,
+            KEY_NOTIFY_FREQUENCY, KEY_NOTIFY_TIME, KEY_NOTIFY_EMAIL, KEY_NOTIFY_DESKTOP, KEY_NOTIFY_PUSH,
+            KEY_QUIET_HOURS, KEY_QUIET_FROM, KEY_QUIET_TO);
+    public static final Set<String> ACCOUNT_KEYS = Set.of(KEY_FULLNAME, KEY_DOB, KEY_USERNAME, KEY_EMAIL,
+            KEY_PHONE, KEY_ADDRESS, KEY_ACCOUNT_CREATED, KEY_CURRENCY, KEY_TWO_FACTOR);
+    public static final Set<String> APP_KEYS = Set.of(KEY_DARK_MODE, KEY_FONT_SIZE, KEY_LANGUAGE,
+            KEY_DATE_FORMAT, KEY_TIME_FORMAT, KEY_STARTUP, KEY_START_MINIMIZED, KEY_AUTO_BACKUP,
+            KEY_DEFAULT_VIEW, KEY_CHART_TYPE, KEY_ANIMATIONS);
+    public static final Set<String> NOTIFICATION_KEYS = Set.of(KEY_NOTIFY_BILLS, KEY_NOTIFY_SUBSCRIPTIONS,
+            KEY_NOTIFY_WEEKLY, KEY_NOTIFY_OVERSPEND, KEY_NOTIFY_MOTIVATION, KEY_NOTIFY_FREQUENCY,
+            KEY_NOTIFY_TIME, KEY_NOTIFY_EMAIL, KEY_NOTIFY_DESKTOP, KEY_NOTIFY_PUSH, KEY_QUIET_HOURS,
+            KEY_QUIET_FROM, KEY_QUIET_TO);
+
+    //Backing store for persistent settings, opened in the background at startup and replaced on profile switches
+    private static final CompletableFuture<SettingsStore> initialStore =
+            CompletableFuture.supplyAsync(SettingsManager::openInitialStore, saver);
+    private static volatile SettingsStore store;
+    private static volatile String activeProfile;
+    private static ProfileSettingsEngine profileEngine;
+
+    //Warm-start copy of the settings, rewritten after every successful flush of the startup store
+    private static final Path SNAPSHOT_FILE = snapshotFile();
+    private static final Object snapshotFileLock = new Object();
+    private static long snapshotFileVersion = -1;
+
+    static {
+        //Serve the first reads from the warm-start copy, then check it against the store once open
+        Map<String, String> warm = SNAPSHOT_FILE != null ? SettingsSnapshotFile.read(SNAPSHOT_FILE, storeSource()) : null;
+        if (warm != null) {
+            snapshot.set(new SettingsSnapshot(0, toAccount(warm::get), toAppPreferences(warm::get),
+                    toNotifications(warm::get)));
+            initialStore.thenRunAsync(() -> {
+                invalidate(KEY_FULLNAME);
+                invalidate(KEY_DARK_MODE);
+                invalidate(KEY_NOTIFY_BILLS);
+                //A copy that disagreed with the store has been reloaded past version 0
+                if (snapshot.get().version() > 0) {
+                    rewriteSnapshotFile();
+                }
+            }, saver);
+        } else if (SNAPSHOT_FILE != null) {
+            //Rebuild a missing or damaged copy so the next start is warm
+            initialStore.thenRunAsync(SettingsManager::rewriteSnapshotFile, saver);
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(SettingsManager::shutdown, "settings-shutdown-flush"));
+    }
 
     /**
      * Saves user account settings to persistent storage.
@@ -54,77 +192,111 @@ public class SettingsManager {
     public static void saveAccountSettings(String fullName, String dob, String username,
                                            String email, String phone, String address,
                                            String currency, boolean twoFactor) {
-        prefs.put(KEY_FULLNAME, fullName);
-        prefs.put(KEY_DOB, dob);
-        prefs.put(KEY_USERNAME, username);
-        prefs.put(KEY_EMAIL, email);
-        prefs.put(KEY_PHONE, phone);
-        prefs.put(KEY_ADDRESS, address);
-        prefs.put(KEY_CURRENCY, currency);
-        prefs.putBoolean(KEY_TWO_FACTOR, twoFactor);
+        saveAccountSettings(new AccountSettings(fullName, dob, username, email, phone, address,
+                account().accountCreated(), currency, twoFactor));
+    }
+
+    /**
+     * Saves user account settings, overwriting any concurrent change.
+     */
+    public static void saveAccountSettings(AccountSettings settings) {
+        saveAccountSettings(settings, ANY_VERSION);
+    }
+
+    /**
+     * Saves user account settings only if no other save has been published since
+     * the snapshot with the given version was read.
+     * Returns false, without writing anything, if the version is stale, and throws
+     * IllegalArgumentException, publishing nothing, if a changed value is invalid or
+     * the store cannot hold a value.
+     */
+    public static boolean saveAccountSettings(AccountSettings settings, long expectedVersion) {
+        boolean staged;
+        synchronized (pending) {
+            SettingsSnapshot current = snapshot.get();
+            if (!isExpected(current, expectedVersion)) {
+                return false;
+            }
+            AccountSettings previous = current.account() != null ? current.account() : loadAccount();
+            staged = commit(current, current.withAccount(settings, current.version() + 1), values(previous), values(settings));
+        }
+        deliverEvents();
+        if (staged) {
+            commitGroup();
+        }
+        return true;
+    }
+
+    /**
+     * Saves user account settings on a background thread, overwriting any concurrent change.
+     * A newer save replaces one that has not started yet, and both futures
+     * complete with the outcome of the newer save.
+     */
+    public static CompletableFuture<Boolean> saveAccountSettingsAsync(AccountSettings settings) {
+        return submit(List.of(ACCOUNT_KEYS), null, () -> saveAccountSettings(settings, ANY_VERSION));
     }
 
     /**
      * Retrieves the user's full name.
      */
     public static String getFullName() {
-        return prefs.get(KEY_FULLNAME, "");
+        return account().fullName();
     }
 
     /**
      * Retrieves the user's date of birth.
      */
     public static String getDateOfBirth() {
-        return prefs.get(KEY_DOB, "");
+        return account().dateOfBirth();
     }
 
     /**
      * Retrieves the user's username.
      */
     public static String getUsername() {
-        return prefs.get(KEY_USERNAME, "");
+        return account().username();
     }
 
     /**
      * Retrieves the user's email address.
      */
     public static String getEmail() {
-        return prefs.get(KEY_EMAIL, "");
+        return account().email();
     }
 
     /**
      * Retrieves the user's phone number.
      */
     public static String getPhone() {
-        return prefs.get(KEY_PHONE, "");
+        return account().phone();
     }
 
     /**
      * Retrieves the user's address.
      */
     public static String getAddress() {
-        return prefs.get(KEY_ADDRESS, "");
+        return account().address();
     }
 
     /**
      * Retrieves the date when the account was created.
      */
     public static String getAccountCreated() {
-        return prefs.get(KEY_ACCOUNT_CREATED, "");
+        return account().accountCreated();
     }
 
     /**
      * Retrieves the user's preferred currency.
      */
     public static String getCurrency() {
-        return prefs.get(KEY_CURRENCY, "USD ($)");
+        return account().currency();
     }
 
     /**
      * Checks if two-factor authentication is enabled.
      */
     public static boolean getTwoFactorAuth() {
-        return prefs.getBoolean(KEY_TWO_FACTOR, false);
+        return account().twoFactorAuth();
     }
 
     /**
@@ -134,94 +306,125 @@ public class SettingsManager {
                                           String dateFormat, String timeFormat, boolean startOnBoot,
                                           boolean startMinimized, boolean autoBackup,
                                           String defaultView, String chartType, int animations) {
-        prefs.putBoolean(KEY_DARK_MODE, darkMode);
-        prefs.put(KEY_FONT_SIZE, fontSize);
-        prefs.put(KEY_LANGUAGE, language);
-        prefs.put(KEY_DATE_FORMAT, dateFormat);
-        prefs.put(KEY_TIME_FORMAT, timeFormat);
-        prefs.putBoolean(KEY_STARTUP, startOnBoot);
-        prefs.putBoolean(KEY_START_MINIMIZED, startMinimized);
-        prefs.putBoolean(KEY_AUTO_BACKUP, autoBackup);
-        prefs.put(KEY_DEFAULT_VIEW, defaultView);
-        prefs.put(KEY_CHART_TYPE, chartType);
-        prefs.putInt(KEY_ANIMATIONS, animations);
+        saveAppPreferences(new AppPreferences(darkMode, fontSize, language, dateFormat, timeFormat,
+                startOnBoot, startMinimized, autoBackup, defaultView, chartType, animations));
+    }
+
+    /**
+     * Saves application preferences, overwriting any concurrent change.
+     */
+    public static void saveAppPreferences(AppPreferences settings) {
+        saveAppPreferences(settings, ANY_VERSION);
+    }
+
+    /**
+     * Saves application preferences only if no other save has been published since
+     * the snapshot with the given version was read.
+     * Returns false, without writing anything, if the version is stale, and throws
+     * IllegalArgumentException, publishing nothing, if a changed value is invalid or
+     * the store cannot hold a value.
+     */
+    public static boolean saveAppPreferences(AppPreferences settings, long expectedVersion) {
+        boolean staged;
+        synchronized (pending) {
+            SettingsSnapshot current = snapshot.get();
+            if (!isExpected(current, expectedVersion)) {
+                return false;
+            }
+            AppPreferences previous = current.appPreferences() != null ? current.appPreferences() : loadAppPreferences();
+            staged = commit(current, current.withAppPreferences(settings, current.version() + 1), values(previous), values(settings));
+        }
+        deliverEvents();
+        if (staged) {
+            commitGroup();
+        }
+        return true;
+    }
+
+    /**
+     * Saves application preferences on a background thread, overwriting any concurrent change.
+     * A newer save replaces one that has not started yet, and both futures
+     * complete with the outcome of the newer save.
+     */
+    public static CompletableFuture<Boolean> saveAppPreferencesAsync(AppPreferences settings) {
+        return submit(List.of(APP_KEYS), null, () -> saveAppPreferences(settings, ANY_VERSION));
     }
 
     /**
      * Checks if dark mode is enabled.
      */
     public static boolean getDarkMode() {
-        return prefs.getBoolean(KEY_DARK_MODE, false);
+        return appPreferences().darkMode();
     }
 
     /**
      * Retrieves the preferred font size.
      */
     public static String getFontSize() {
-        return prefs.get(KEY_FONT_SIZE, "Medium");
+        return appPreferences().fontSize();
     }
 
     /**
      * Retrieves the preferred interface language.
      */
     public static String getLanguage() {
-        return prefs.get(KEY_LANGUAGE, "English");
+        return appPreferences().language();
     }
 
     /**
      * Retrieves the preferred date format.
      */
     public static String getDateFormat() {
-        return prefs.get(KEY_DATE_FORMAT, "MM/DD/YYYY");
+        return appPreferences().dateFormat();
     }
 
     /**
      * Retrieves the preferred time format.
      */
     public static String getTimeFormat() {
-        return prefs.get(KEY_TIME_FORMAT, "12-hour (AM/PM)");
+        return appPreferences().timeFormat();
     }
 
     /**
      * Checks if application should start on system boot.
      */
     public static boolean getStartOnBoot() {
-        return prefs.getBoolean(KEY_STARTUP, false);
+        return appPreferences().startOnBoot();
     }
 
     /**
      * Checks if application should start minimized.
      */
     public static boolean getStartMinimized() {
-        return prefs.getBoolean(KEY_START_MINIMIZED, false);
+        return appPreferences().startMinimized();
     }
 
     /**
      * Checks if automatic data backup is enabled.
      */
     public static boolean getAutoBackup() {
-        return prefs.getBoolean(KEY_AUTO_BACKUP, true);
+        return appPreferences().autoBackup();
     }
 
     /**
      * Retrieves the preferred default budget view.
      */
     public static String getDefaultView() {
-        return prefs.get(KEY_DEFAULT_VIEW, "Monthly");
+        return appPreferences().defaultView();
     }
 
     /**
      * Retrieves the preferred chart type.
      */
     public static String getChartType() {
-        return prefs.get(KEY_CHART_TYPE, "Pie Chart");
+        return appPreferences().chartType();
     }
 
     /**
      * Retrieves the animations intensity level.
      */
     public static int getAnimationsLevel() {
-        return prefs.getInt(KEY_ANIMATIONS, 50);
+        return appPreferences().animationsLevel();
     }
 
     /**
@@ -233,118 +436,159 @@ public class SettingsManager {
                                                 String notifyTime, boolean notifyEmail,
                                                 boolean notifyDesktop, boolean notifyPush,
                                                 boolean quietHours, String quietFrom, String quietTo) {
-        prefs.putBoolean(KEY_NOTIFY_BILLS, notifyBills);
-        prefs.putBoolean(KEY_NOTIFY_SUBSCRIPTIONS, notifySubscriptions);
-        prefs.putBoolean(KEY_NOTIFY_WEEKLY, notifyWeekly);
-        prefs.putBoolean(KEY_NOTIFY_OVERSPEND, notifyOverspend);
-        prefs.putBoolean(KEY_NOTIFY_MOTIVATION, notifyMotivation);
-        prefs.put(KEY_NOTIFY_FREQUENCY, frequency);
-        prefs.put(KEY_NOTIFY_TIME, notifyTime);
-        prefs.putBoolean(KEY_NOTIFY_EMAIL, notifyEmail);
-        prefs.putBoolean(KEY_NOTIFY_DESKTOP, notifyDesktop);
-        prefs.putBoolean(KEY_NOTIFY_PUSH, notifyPush);
-        prefs.putBoolean(KEY_QUIET_HOURS, quietHours);
-        prefs.put(KEY_QUIET_FROM, quietFrom);
-        prefs.put(KEY_QUIET_TO, quietTo);
+        saveNotificationSettings(new NotificationSettings(notifyBills, notifySubscriptions, notifyWeekly,
+                notifyOverspend, notifyMotivation, frequency, notifyTime, notifyEmail, notifyDesktop,
+                notifyPush, quietHours, quietFrom, quietTo));
+    }
+
+    /**
+     * Saves notification settings, overwriting any concurrent change.
+     */
+    public static void saveNotificationSettings(NotificationSettings settings) {
+        saveNotificationSettings(settings, ANY_VERSION);
+    }
+
+    /**
+     * Saves notification settings only if no other save has been published since
+     * the snapshot with the given version was read.
+     * Returns false, without writing anything, if the version is stale, and throws
+     * IllegalArgumentException, publishing nothing, if a changed value is invalid or
+     * the store cannot hold a value.
+     */
+    public static boolean saveNotificationSettings(NotificationSettings settings, long expectedVersion) {
+        boolean staged;
+        synchronized (pending) {
+            SettingsSnapshot current = snapshot.get();
+            if (!isExpected(current, expectedVersion)) {
+                return false;
+            }
+            NotificationSettings previous = current.notifications() != null ? current.notifications() : loadNotifications();
+            staged = commit(current, current.withNotifications(settings, current.version() + 1), values(previous), values(settings));
+        }
+        deliverEvents();
+        if (staged) {
+            commitGroup();
+        }
+        return true;
+    }
+
+    /**
+     * Saves notification settings on a background thread, overwriting any concurrent change.
+     * A newer save replaces one that has not started yet, and both futures
+     * complete with the outcome of the newer save.
+     */
+    public static CompletableFuture<Boolean> saveNotificationSettingsAsync(NotificationSettings settings) {
+        return submit(List.of(NOTIFICATION_KEYS), null, () -> saveNotificationSettings(settings, ANY_VERSION));
     }
 
     /**
      * Checks if bill due notifications are enabled.
      */
     public static boolean getNotifyBills() {
-        return prefs.getBoolean(KEY_NOTIFY_BILLS, true);
+        return notifications().notifyBills();
     }
 
     /**
      * Checks if subscription tracking notifications are enabled.
      */
     public static boolean getNotifySubscriptions() {
-        return prefs.getBoolean(KEY_NOTIFY_SUBSCRIPTIONS, true);
+        return notifications().notifySubscriptions();
     }
 
     /**
      * Checks if weekly summary notifications are enabled.
      */
     public static boolean getNotifyWeekly() {
-        return prefs.getBoolean(KEY_NOTIFY_WEEKLY, true);
+        return notifications().notifyWeekly();
     }
 
     /**
      * Checks if overspending alert notifications are enabled.
      */
     public static boolean getNotifyOverspend() {
-        return prefs.getBoolean(KEY_NOTIFY_OVERSPEND, true);
+        return notifications().notifyOverspend();
     }
 
     /**
      * Checks if motivational notifications are enabled.
      */
     public static boolean getNotifyMotivation() {
-        return prefs.getBoolean(KEY_NOTIFY_MOTIVATION, true);
+        return notifications().notifyMotivation();
     }
 
     /**
      * Retrieves the notification frequency setting.
      */
     public static String getNotifyFrequency() {
-        return prefs.get(KEY_NOTIFY_FREQUENCY, "Weekly");
+        return notifications().frequency();
     }
 
     /**
      * Retrieves the preferred notification time.
      */
     public static String getNotifyTime() {
-        return prefs.get(KEY_NOTIFY_TIME, "9:00 AM");
+        return notifications().notifyTime();
     }
 
     /**
      * Checks if email notifications are enabled.
      */
     public static boolean getNotifyEmail() {
-        return prefs.getBoolean(KEY_NOTIFY_EMAIL, true);
+        return notifications().notifyEmail();
     }
 
     /**
      * Checks if desktop notifications are enabled.
      */
     public static boolean getNotifyDesktop() {
-        return prefs.getBoolean(KEY_NOTIFY_DESKTOP, true);
+        return notifications().notifyDesktop();
     }
 
     /**
      * Checks if mobile push notifications are enabled.
      */
     public static boolean getNotifyPush() {
-        return prefs.getBoolean(KEY_NOTIFY_PUSH, false);
+        return notifications().notifyPush();
     }
 
     /**
      * Checks if quiet hours are enabled.
      */
     public static boolean getQuietHours() {
-        return prefs.getBoolean(KEY_QUIET_HOURS, false);
+        return notifications().quietHours();
     }
 
     /**
      * Retrieves the quiet hours start time.
      */
     public static String getQuietFrom() {
-        return prefs.get(KEY_QUIET_FROM, "22:00");
+        return notifications().quietFrom();
     }
 
     /**
      * Retrieves the quiet hours end time.
      */
     public static String getQuietTo() {
-        return prefs.get(KEY_QUIET_TO, "07:00");
+        return notifications().quietTo();
     }
 
     /**
      * Resets all settings to default values.
      */
     public static void resetAllSettings() {
+        SettingsSnapshot saved;
         try {
-            prefs.clear();
+            synchronized (pending) {
+                SettingsSnapshot previous = getSnapshot();
+                pending.clear();
+                cancelScheduledFlush();
+                store().clear();
+                republish(previous);
+                saved = snapshotForFile();
+            }
+            deliverEvents();
+            store().flush();
+            writeSnapshotFile(saved);
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -355,14 +599,24 @@ public class SettingsManager {
      */
     public static void resetAccountSettings() {
         try {
-            prefs.remove(KEY_FULLNAME);
-            prefs.remove(KEY_DOB);
-            prefs.remove(KEY_USERNAME);
-            prefs.remove(KEY_EMAIL);
-            prefs.remove(KEY_PHONE);
-            prefs.remove(KEY_ADDRESS);
-            prefs.remove(KEY_CURRENCY);
-            prefs.remove(KEY_TWO_FACTOR);
+            synchronized (pending) {
+                AccountSettings previous = account();
+                stageRemove(KEY_FULLNAME);
+                stageRemove(KEY_DOB);
+                stageRemove(KEY_USERNAME);
+                stageRemove(KEY_EMAIL);
+                stageRemove(KEY_PHONE);
+                stageRemove(KEY_ADDRESS);
+                stageRemove(KEY_CURRENCY);
+                stageRemove(KEY_TWO_FACTOR);
+                SettingsSnapshot current = snapshot.get();
+                AccountSettings reset = loadAccount();
+                snapshot.set(current.withAccount(reset, current.version() + 1));
+                cacheInvalidations.increment();
+                publishChanges(values(previous), values(reset), current.version() + 1);
+            }
+            deliverEvents();
+            commitGroup();
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -373,17 +627,27 @@ public class SettingsManager {
      */
     public static void resetAppPreferences() {
         try {
-            prefs.remove(KEY_DARK_MODE);
-            prefs.remove(KEY_FONT_SIZE);
-            prefs.remove(KEY_LANGUAGE);
-            prefs.remove(KEY_DATE_FORMAT);
-            prefs.remove(KEY_TIME_FORMAT);
-            prefs.remove(KEY_STARTUP);
-            prefs.remove(KEY_START_MINIMIZED);
-            prefs.remove(KEY_AUTO_BACKUP);
-            prefs.remove(KEY_DEFAULT_VIEW);
-            prefs.remove(KEY_CHART_TYPE);
-            prefs.remove(KEY_ANIMATIONS);
+            synchronized (pending) {
+                AppPreferences previous = appPreferences();
+                stageRemove(KEY_DARK_MODE);
+                stageRemove(KEY_FONT_SIZE);
+                stageRemove(KEY_LANGUAGE);
+                stageRemove(KEY_DATE_FORMAT);
+                stageRemove(KEY_TIME_FORMAT);
+                stageRemove(KEY_STARTUP);
+                stageRemove(KEY_START_MINIMIZED);
+                stageRemove(KEY_AUTO_BACKUP);
+                stageRemove(KEY_DEFAULT_VIEW);
+                stageRemove(KEY_CHART_TYPE);
+                stageRemove(KEY_ANIMATIONS);
+                SettingsSnapshot current = snapshot.get();
+                AppPreferences reset = loadAppPreferences();
+                snapshot.set(current.withAppPreferences(reset, current.version() + 1));
+                cacheInvalidations.increment();
+                publishChanges(values(previous), values(reset), current.version() + 1);
+            }
+            deliverEvents();
+            commitGroup();
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -394,21 +658,1034 @@ public class SettingsManager {
      */
     public static void resetNotificationSettings() {
         try {
-            prefs.remove(KEY_NOTIFY_BILLS);
-            prefs.remove(KEY_NOTIFY_SUBSCRIPTIONS);
-            prefs.remove(KEY_NOTIFY_WEEKLY);
-            prefs.remove(KEY_NOTIFY_OVERSPEND);
-            prefs.remove(KEY_NOTIFY_MOTIVATION);
-            prefs.remove(KEY_NOTIFY_FREQUENCY);
-            prefs.remove(KEY_NOTIFY_TIME);
-            prefs.remove(KEY_NOTIFY_EMAIL);
-            prefs.remove(KEY_NOTIFY_DESKTOP);
-            prefs.remove(KEY_NOTIFY_PUSH);
-            prefs.remove(KEY_QUIET_HOURS);
-            prefs.remove(KEY_QUIET_FROM);
-            prefs.remove(KEY_QUIET_TO);
+            synchronized (pending) {
+                NotificationSettings previous = notifications();
+                stageRemove(KEY_NOTIFY_BILLS);
+                stageRemove(KEY_NOTIFY_SUBSCRIPTIONS);
+                stageRemove(KEY_NOTIFY_WEEKLY);
+                stageRemove(KEY_NOTIFY_OVERSPEND);
+                stageRemove(KEY_NOTIFY_MOTIVATION);
+                stageRemove(KEY_NOTIFY_FREQUENCY);
+                stageRemove(KEY_NOTIFY_TIME);
+                stageRemove(KEY_NOTIFY_EMAIL);
+                stageRemove(KEY_NOTIFY_DESKTOP);
+                stageRemove(KEY_NOTIFY_PUSH);
+                stageRemove(KEY_QUIET_HOURS);
+                stageRemove(KEY_QUIET_FROM);
+                stageRemove(KEY_QUIET_TO);
+                SettingsSnapshot current = snapshot.get();
+                NotificationSettings reset = loadNotifications();
+                snapshot.set(current.withNotifications(reset, current.version() + 1));
+                cacheInvalidations.increment();
+                publishChanges(values(previous), values(reset), current.version() + 1);
+            }
+            deliverEvents();
+            commitGroup();
         } catch (Exception e) {
             e.printStackTrace();
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Sets how long staged writes wait before being committed as one group.
+     * A window of zero commits every save immediately.
+     */
+    public static void setFlushWindow(long millis) {
+        if (millis < 0) {
+            throw new IllegalArgumentException("Flush window must not be negative: " + millis);
+        }
+        flushWindowMs = millis;
+    }
+
+    /**
+     * Retrieves the current flush window in milliseconds.
+     */
+    public static long getFlushWindow() {
+        return flushWindowMs;
+    }
+
+    /**
+     * Commits all staged writes to the backing store in a single flush.
+     * Called automatically on shutdown, but may be called explicitly. If the store
+     * refuses the writes they stay staged and its exception is thrown.
+     */
+    public static void flush() {
+        SettingsStore target;
+        SettingsSnapshot saved;
+        synchronized (pending) {
+            if (pending.isEmpty()) {
+                cancelScheduledFlush();
+                return;
+            }
+            target = drainPending();
+            saved = snapshotForFile();
+        }
+
+        try {
+            target.flush();
+            writeSnapshotFile(saved);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Switches the active settings to a user's profile in the shared profile store.
+     * Staged writes are committed to the previous profile first, then every group is
+     * reloaded from the new profile.
+     */
+    public static void switchProfile(String username) {
+        SettingsStore previous;
+        synchronized (pending) {
+            SettingsSnapshot before = getSnapshot();
+            previous = drainPending();
+            store = profileEngine().forProfile(username);
+            activeProfile = username;
+            republish(before);
+        }
+        deliverEvents();
+
+        try {
+            previous.flush();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Retrieves the username of the active profile, or null when the single-user store is in use.
+     */
+    public static String getActiveProfile() {
+        return activeProfile;
+    }
+
+    /**
+     * Retrieves the typed value of a setting. Values are parsed at most once per
+     * change, so repeated reads of times, formats and currencies cost a lookup.
+     */
+    public static <T> T get(SettingKey<T> key) {
+        SettingsSnapshot current = getSnapshot();
+        ParsedValues cache = parsed;
+        if (cache.source() != current) {
+            cache = new ParsedValues(current, values(current), new ConcurrentHashMap<>());
+            parsed = cache;
+        }
+
+        Map<String, String> raw = cache.raw();
+        return key.type().cast(cache.values().computeIfAbsent(key, (k) -> {
+            valuesParsed.increment();
+            return k.parse(raw.get(k.key()));
+        }));
+    }
+
+    /**
+     * Saves the typed value of a single setting, overwriting any concurrent change.
+     * Throws IllegalArgumentException if the value fails the setting's validation.
+     */
+    public static <T> void set(SettingKey<T> key, T value) {
+        String text = key.format(value);
+        SettingsDraft draft;
+        do {
+            draft = newDraft();
+            draft.set(key.key(), text);
+        } while (!save(draft));
+    }
+
+    /**
+     * Creates a form draft whose baseline is the current value of every setting.
+     */
+    public static SettingsDraft newDraft() {
+        return new SettingsDraft(values(getSnapshot()));
+    }
+
+    /**
+     * Saves the dirty fields of a draft, writing only keys whose values actually changed.
+     * Returns false, without writing anything, if another save changed one of the
+     * draft's dirty fields after the draft's baseline was taken. Throws
+     * IllegalArgumentException, publishing nothing, if a changed value is invalid or the
+     * store cannot hold a value.
+     */
+    public static boolean save(SettingsDraft draft) {
+        return save(draft, draft.getDirtyValues());
+    }
+
+    /**
+     * Saves the given dirty values of a draft, checking them against the draft's baseline.
+     */
+    private static boolean save(SettingsDraft draft, Map<String, String> dirty) {
+        if (dirty.isEmpty()) {
+            return true;
+        }
+
+        boolean staged;
+        synchronized (pending) {
+            SettingsSnapshot current = getSnapshot();
+            Map<String, String> before = values(current);
+            for (String key : dirty.keySet()) {
+                if (!Objects.equals(before.get(key), draft.getOriginal(key))) {
+                    return false;
+                }
+            }
+
+            Map<String, String> merged = new HashMap<>(before);
+            merged.putAll(dirty);
+            SettingsSnapshot next = new SettingsSnapshot(current.version() + 1, toAccount(merged::get),
+                    toAppPreferences(merged::get), toNotifications(merged::get));
+
+            //Account only for the groups the draft touched, as a group save would have written them
+            Map<String, String> after = values(next);
+            Set<String> covered = new HashSet<>();
+            for (Set<String> group : groupsOf(dirty.keySet())) {
+                covered.addAll(group);
+            }
+            before.keySet().retainAll(covered);
+            after.keySet().retainAll(covered);
+            staged = commit(current, next, before, after);
+        }
+        deliverEvents();
+
+        draft.markSaved(dirty);
+        if (staged) {
+            commitGroup();
+        }
+        return true;
+    }
+
+    /**
+     * Saves the dirty fields of a draft on a background thread.
+     * The fields are captured when this is called, and a newer save of the same
+     * draft replaces one that has not started yet. Completes with false if
+     * another save changed one of the draft's dirty fields, and exceptionally if
+     * a changed value is invalid or the store cannot hold a value.
+     */
+    public static CompletableFuture<Boolean> saveAsync(SettingsDraft draft) {
+        Map<String, String> dirty = draft.getDirtyValues();
+        return submit(groupsOf(dirty.keySet()), draft, () -> save(draft, dirty));
+    }
+
+    /**
+     * Retrieves a consistent snapshot of every settings group.
+     * The snapshot's version can be passed back to the save methods to detect lost updates.
+     */
+    public static SettingsSnapshot getSnapshot() {
+        SettingsSnapshot current = snapshot.get();
+        if (current.account() != null && current.appPreferences() != null && current.notifications() != null) {
+            cacheHits.increment();
+            return current;
+        }
+
+        cacheMisses.increment();
+        synchronized (pending) {
+            current = snapshot.get();
+            SettingsSnapshot loaded = new SettingsSnapshot(current.version(),
+                    current.account() != null ? current.account() : loadAccount(),
+                    current.appPreferences() != null ? current.appPreferences() : loadAppPreferences(),
+                    current.notifications() != null ? current.notifications() : loadNotifications());
+            snapshot.compareAndSet(current, loaded);
+            return loaded;
+        }
+    }
+
+    /**
+     * Retrieves the current account settings as one consistent record.
+     */
+    public static AccountSettings getAccountSettings() {
+        return account();
+    }
+
+    /**
+     * Retrieves the current application preferences as one consistent record.
+     */
+    public static AppPreferences getAppPreferences() {
+        return appPreferences();
+    }
+
+    /**
+     * Retrieves the current notification settings as one consistent record.
+     */
+    public static NotificationSettings getNotificationSettings() {
+        return notifications();
+    }
+
+    /**
+     * Subscribes a UI listener to changes of the given keys, delivered on the Event Dispatch Thread.
+     * With no keys the listener receives every change. Each save produces at most one event.
+     */
+    public static void subscribe(SettingsListener listener, String... keys) {
+        events.subscribe(listener, SwingUtilities::invokeLater, List.of(keys));
+    }
+
+    /**
+     * Subscribes a background listener to changes of the given keys, delivered on the executor.
+     * With no keys the listener receives every change. Each save produces at most one event.
+     */
+    public static void subscribe(SettingsListener listener, Executor executor, Collection<String> keys) {
+        events.subscribe(listener, executor, keys);
+    }
+
+    /**
+     * Removes every subscription of a listener.
+     */
+    public static void unsubscribe(SettingsListener listener) {
+        events.unsubscribe(listener);
+    }
+
+    /**
+     * Retrieves the number of key writes skipped because the saved value was unchanged.
+     */
+    public static long getWritesAvoided() {
+        return writesAvoided.sum();
+    }
+
+    /**
+     * Retrieves the number of asynchronous saves replaced by a newer save before they started.
+     */
+    public static long getSavesSuperseded() {
+        return savesSuperseded.sum();
+    }
+
+    /**
+     * Retrieves the number of typed values parsed from raw text by get.
+     */
+    public static long getValuesParsed() {
+        return valuesParsed.sum();
+    }
+
+    /**
+     * Retrieves the number of key writes staged because the saved value changed.
+     */
+    public static long getWritesPerformed() {
+        return writesPerformed.sum();
+    }
+
+    /**
+     * Retrieves the number of reads served from the published snapshot.
+     */
+    public static long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+    /**
+     * Retrieves the number of reads that had to go to the backing store.
+     */
+    public static long getCacheMisses() {
+        return cacheMisses.sum();
+    }
+
+    /**
+     * Retrieves the number of times a settings group was dropped because it changed.
+     */
+    public static long getCacheInvalidations() {
+        return cacheInvalidations.sum();
+    }
+
+    /**
+     * Opens the settings backend named by the spentwise.settings.store property,
+     * falling back to Java Preferences if it is unset or cannot be opened.
+     * Key-value backends are wrapped in the compact binary encoding unless
+     * spentwise.settings.encoding is set to text. Compact settings that cannot be
+     * decoded are reported and start from defaults, and the next save replaces them.
+     */
+    private static SettingsStore openStore() {
+        String type = System.getProperty(STORE_PROPERTY, "preferences");
+        boolean compact = !"text".equalsIgnoreCase(System.getProperty(ENCODING_PROPERTY, "compact"));
+        try {
+            if ("mapped".equalsIgnoreCase(type)) {
+                //The mapped file already has a fixed binary layout with one slot per key
+                Path file = Paths.get(System.getProperty(FILE_PROPERTY,
+                        DEFAULT_DIRECTORY.resolve("settings.dat").toString()));
+                return new MappedFileSettingsStore(file, ALL_KEYS);
+            } else if ("journal".equalsIgnoreCase(type)) {
+                Path file = Paths.get(System.getProperty(FILE_PROPERTY,
+                        DEFAULT_DIRECTORY.resolve("settings.journal").toString()));
+                SettingsStore journal = new JournalSettingsStore(file);
+                return compact ? CompactSettingsStore.openOrReset(journal) : journal;
+            } else if (!"preferences".equalsIgnoreCase(type)) {
+                System.out.println("Unknown settings store '" + type + "', using preferences");
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        SettingsStore preferences = new PreferencesSettingsStore(Preferences.userNodeForPackage(SettingsManager.class));
+        if (compact) {
+            try {
+                return CompactSettingsStore.openOrReset(preferences);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        return preferences;
+    }
+
+    /**
+     * Opens the startup store and starts watching it for outside changes.
+     */
+    private static SettingsStore openInitialStore() {
+        SettingsStore opened = openStore();
+        opened.addChangeListener(SettingsManager::invalidate);
+        return opened;
+    }
+
+    /**
+     * Retrieves the current store, waiting for the startup store to finish opening if needed.
+     */
+    private static SettingsStore store() {
+        SettingsStore current = store;
+        return current != null ? current : initialStore.join();
+    }
+
+    /**
+     * Names the startup store so that a warm-start copy is only used with the store it came from.
+     */
+    private static String storeSource() {
+        return System.getProperty(STORE_PROPERTY, "preferences").toLowerCase() + ":" + System.getProperty(FILE_PROPERTY, "");
+    }
+
+    /**
+     * Resolves the warm-start file from the spentwise.settings.snapshot property,
+     * or returns null if it is set to none.
+     */
+    private static Path snapshotFile() {
+        String file = System.getProperty(SNAPSHOT_PROPERTY, DEFAULT_DIRECTORY.resolve("settings.snapshot").toString());
+        return "none".equalsIgnoreCase(file) ? null : Paths.get(file);
+    }
+
+    /**
+     * Captures the settings to write to the warm-start file, or null while a profile is active.
+     * Must be called holding the pending lock.
+     */
+    private static SettingsSnapshot snapshotForFile() {
+        return SNAPSHOT_FILE != null && activeProfile == null ? getSnapshot() : null;
+    }
+
+    /**
+     * Writes the current settings to the warm-start file.
+     */
+    private static void rewriteSnapshotFile() {
+        SettingsSnapshot saved;
+        synchronized (pending) {
+            saved = snapshotForFile();
+        }
+        writeSnapshotFile(saved);
+    }
+
+    /**
+     * Writes settings to the warm-start file unless a newer version has already been written.
+     */
+    private static void writeSnapshotFile(SettingsSnapshot saved) {
+        if (saved == null) {
+            return;
+        }
+
+        synchronized (snapshotFileLock) {
+            if (saved.version() <= snapshotFileVersion) {
+                return;
+            }
+            try {
+                SettingsSnapshotFile.write(SNAPSHOT_FILE, storeSource(), values(saved));
+                snapshotFileVersion = saved.version();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Opens the shared profile engine on first use.
+     */
+    private static synchronized ProfileSettingsEngine profileEngine() {
+        if (profileEngine == null) {
+            Path directory = Paths.get(System.getProperty(PROFILES_PROPERTY,
+                    DEFAULT_DIRECTORY.resolve("profiles").toString()));
+            try {
+                profileEngine = new ProfileSettingsEngine(directory);
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not open profile store in " + directory, e);
+            }
+        }
+        return profileEngine;
+    }
+
+    /**
+     * Applies staged writes to the current store and returns it for flushing.
+     * If the store refuses them they stay staged for the next flush and the error is thrown.
+     * Must be called holding the pending lock.
+     */
+    private static SettingsStore drainPending() {
+        cancelScheduledFlush();
+        //Apply under the lock so readers never miss a value between stages
+        SettingsStore target = store();
+        target.putAll(pending);
+        pending.clear();
+        return target;
+    }
+
+    /**
+     * Stages a string value for the next group commit.
+     */
+    private static void stage(String key, String value) {
+        synchronized (pending) {
+            pending.put(key, value);
+        }
+    }
+
+    /**
+     * Stages the removal of a key for the next group commit.
+     */
+    private static void stageRemove(String key) {
+        synchronized (pending) {
+            pending.put(key, null);
+        }
+    }
+
+    /**
+     * Marks the end of a save group and schedules its commit.
+     */
+    private static void commitGroup() {
+        long window = flushWindowMs;
+        if (window == 0) {
+            flush();
+            return;
+        }
+
+        synchronized (pending) {
+            if (scheduledFlush == null && !pending.isEmpty()) {
+                scheduledFlush = flusher.schedule(SettingsManager::flush, window, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * Queues an asynchronous save behind earlier saves to the same groups.
+     * If a save to exactly these groups from the same owner is still waiting, its
+     * work is swapped for the newer work instead. Whole-group saves have a null owner
+     * and replace each other; they never replace a draft's save, whose work also marks
+     * the draft saved, so they queue behind it.
+     */
+    private static CompletableFuture<Boolean> submit(List<Set<String>> groups, Object owner, Supplier<Boolean> work) {
+        if (groups.isEmpty()) {
+            return CompletableFuture.supplyAsync(work, saver);
+        }
+
+        synchronized (queuedSaves) {
+            AsyncSave waiting = queuedSaves.get(groups.get(0));
+            if (waiting != null && waiting.groups.equals(groups) && owner == waiting.owner) {
+                waiting.work = work;
+                savesSuperseded.increment();
+                return waiting.result;
+            }
+
+            AsyncSave save = new AsyncSave(groups, owner, work);
+            List<CompletableFuture<Boolean>> earlier = new ArrayList<>();
+            for (Set<String> group : groups) {
+                CompletableFuture<Boolean> last = lastSaves.put(group, save.result);
+                if (last != null) {
+                    earlier.add(last);
+                }
+                queuedSaves.put(group, save);
+            }
+            CompletableFuture.allOf(earlier.toArray(new CompletableFuture<?>[0]))
+                    .whenComplete((ignored, error) -> saver.execute(() -> runSave(save)));
+            return save.result;
+        }
+    }
+
+    /**
+     * Runs a queued asynchronous save once every earlier save to its groups has finished.
+     */
+    private static void runSave(AsyncSave save) {
+        Supplier<Boolean> work;
+        synchronized (queuedSaves) {
+            for (Set<String> group : save.groups) {
+                queuedSaves.remove(group, save);
+            }
+            work = save.work;
+        }
+
+        try {
+            save.result.complete(work.get());
+        } catch (RuntimeException e) {
+            save.result.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Retrieves the settings groups containing any of the given keys, in a fixed order.
+     */
+    private static List<Set<String>> groupsOf(Set<String> keys) {
+        List<Set<String>> groups = new ArrayList<>();
+        for (Set<String> group : List.of(ACCOUNT_KEYS, APP_KEYS, NOTIFICATION_KEYS)) {
+            if (!Collections.disjoint(group, keys)) {
+                groups.add(group);
+            }
+        }
+        return groups;
+    }
+
+    /**
+     * Waits for outstanding asynchronous saves, then commits everything staged.
+     */
+    private static void shutdown() {
+        CompletableFuture<?>[] outstanding;
+        synchronized (queuedSaves) {
+            outstanding = lastSaves.values().toArray(new CompletableFuture<?>[0]);
+        }
+
+        try {
+            CompletableFuture.allOf(outstanding).get(5, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        flush();
+    }
+
+    /**
+     * Cancels any pending scheduled flush. Must be called holding the pending lock.
+     */
+    private static void cancelScheduledFlush() {
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+    }
+
+    /**
+     * Publishes a new snapshot and stages only the keys whose values changed.
+     * A save that changes nothing is short-circuited and publishes nothing, and one with a
+     * changed value its SettingKey rejects, or that the store would refuse, throws
+     * IllegalArgumentException before anything is published.
+     * Returns true if anything was staged. Must be called holding the pending lock.
+     */
+    private static boolean commit(SettingsSnapshot current, SettingsSnapshot next,
+                                  Map<String, String> before, Map<String, String> after) {
+        Set<String> changed = changedKeys(before, after);
+        writesAvoided.add(after.size() - changed.size());
+        if (changed.isEmpty()) {
+            return false;
+        }
+        //Check together with what is already staged, as a compact store encodes it all as one blob
+        Map<String, String> writes = new HashMap<>(pending);
+        for (String key : changed) {
+            SettingKey<?> field = SettingsSchema.forKey(key);
+            if (field != null) {
+                field.validate(after.get(key));
+            }
+            writes.put(key, after.get(key));
+        }
+        store().check(writes);
+        if (!snapshot.compareAndSet(current, next)) {
+            return false;
+        }
+
+        for (String key : changed) {
+            stage(key, after.get(key));
+        }
+        writesPerformed.add(changed.size());
+        publish(changed, next.version());
+        return true;
+    }
+
+    /**
+     * Checks whether a snapshot matches the version a writer expects.
+     */
+    private static boolean isExpected(SettingsSnapshot current, long expectedVersion) {
+        return expectedVersion == ANY_VERSION || current.version() == expectedVersion;
+    }
+
+    /**
+     * Reloads the group holding a key after it changed in the backing store.
+     * Notifications of our own flushes find nothing new and are ignored, so they
+     * neither bump the version nor fail concurrent writers.
+     */
+    private static void invalidate(String key) {
+        if (key == null) {
+            return;
+        }
+
+        synchronized (pending) {
+            SettingsSnapshot current = snapshot.get();
+            SettingsSnapshot next = current;
+            Map<String, String> before = values(current);
+            Map<String, String> after = before;
+            if (ACCOUNT_KEYS.contains(key) && current.account() != null) {
+                AccountSettings account = loadAccount();
+                next = current.withAccount(account, current.version() + 1);
+                after = values(account);
+            } else if (APP_KEYS.contains(key) && current.appPreferences() != null) {
+                AppPreferences appPreferences = loadAppPreferences();
+                next = current.withAppPreferences(appPreferences, current.version() + 1);
+                after = values(appPreferences);
+            } else if (NOTIFICATION_KEYS.contains(key) && current.notifications() != null) {
+                NotificationSettings notifications = loadNotifications();
+                next = current.withNotifications(notifications, current.version() + 1);
+                after = values(notifications);
+            }
+
+            Set<String> changed = changedKeys(before, after);
+            if (!changed.isEmpty() && snapshot.compareAndSet(current, next)) {
+                cacheInvalidations.increment();
+                publish(changed, next.version());
+            }
+        }
+        deliverEvents();
+    }
+
+    /**
+     * Reloads every group from the store after it was replaced or cleared, and
+     * notifies subscribers of whatever differs from the previous snapshot.
+     * Must be called holding the pending lock.
+     */
+    private static void republish(SettingsSnapshot previous) {
+        SettingsSnapshot current = snapshot.get();
+        SettingsSnapshot next = new SettingsSnapshot(current.version() + 1, loadAccount(),
+                loadAppPreferences(), loadNotifications());
+        snapshot.set(next);
+        cacheInvalidations.increment();
+        publishChanges(values(previous), values(next), next.version());
+    }
+
+    /**
+     * Notifies subscribers of the keys whose values differ between two value maps.
+     * Must be called holding the pending lock.
+     */
+    private static void publishChanges(Map<String, String> before, Map<String, String> after, long version) {
+        publish(changedKeys(before, after), version);
+    }
+
+    /**
+     * Queues a change for subscribers until the pending lock is released.
+     * Must be called holding the pending lock.
+     */
+    private static void publish(Set<String> changed, long version) {
+        if (!changed.isEmpty()) {
+            unpublished.add(new SettingsChangeEvent(changed, version));
+        }
+    }
+
+    /**
+     * Hands queued changes to subscribers, unless called while still holding the pending lock.
+     * Listeners run outside the lock, so they may take their own locks and call back in here.
+     * Changes queued by two threads may reach the bus in either order; subscribers see the
+     * latest version either way, as events are merged and values read from the newest snapshot.
+     */
+    private static void deliverEvents() {
+        if (Thread.holdsLock(pending)) {
+            return;
+        }
+
+        List<SettingsChangeEvent> changes;
+        synchronized (pending) {
+            if (unpublished.isEmpty()) {
+                return;
+            }
+            changes = new ArrayList<>(unpublished);
+            unpublished.clear();
+        }
+        for (SettingsChangeEvent change : changes) {
+            events.publish(change.keys(), change.version());
+        }
+    }
+
+    /**
+     * Lists the keys whose values differ between two value maps.
+     */
+    private static Set<String> changedKeys(Map<String, String> before, Map<String, String> after) {
+        Set<String> changed = new HashSet<>();
+        for (Map.Entry<String, String> entry : after.entrySet()) {
+            if (!entry.getValue().equals(before.get(entry.getKey()))) {
+                changed.add(entry.getKey());
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Flattens every loaded group of a snapshot into values keyed by setting name.
+     */
+    private static Map<String, String> values(SettingsSnapshot snapshot) {
+        Map<String, String> values = new HashMap<>();
+        if (snapshot.account() != null) {
+            values.putAll(values(snapshot.account()));
+        }
+        if (snapshot.appPreferences() != null) {
+            values.putAll(values(snapshot.appPreferences()));
+        }
+        if (snapshot.notifications() != null) {
+            values.putAll(values(snapshot.notifications()));
+        }
+        return values;
+    }
+
+    /**
+     * Flattens the account group into values keyed by setting name.
+     */
+    private static Map<String, String> values(AccountSettings settings) {
+        Map<String, String> values = new HashMap<>();
+        values.put(KEY_FULLNAME, settings.fullName());
+        values.put(KEY_DOB, settings.dateOfBirth());
+        values.put(KEY_USERNAME, settings.username());
+        values.put(KEY_EMAIL, settings.email());
+        values.put(KEY_PHONE, settings.phone());
+        values.put(KEY_ADDRESS, settings.address());
+        values.put(KEY_ACCOUNT_CREATED, settings.accountCreated());
+        values.put(KEY_CURRENCY, settings.currency());
+        values.put(KEY_TWO_FACTOR, String.valueOf(settings.twoFactorAuth()));
+        return values;
+    }
+
+    /**
+     * Flattens the app preferences group into values keyed by setting name.
+     */
+    private static Map<String, String> values(AppPreferences settings) {
+        Map<String, String> values = new HashMap<>();
+        values.put(KEY_DARK_MODE, String.valueOf(settings.darkMode()));
+        values.put(KEY_FONT_SIZE, settings.fontSize());
+        values.put(KEY_LANGUAGE, settings.language());
+        values.put(KEY_DATE_FORMAT, settings.dateFormat());
+        values.put(KEY_TIME_FORMAT, settings.timeFormat());
+        values.put(KEY_STARTUP, String.valueOf(settings.startOnBoot()));
+        values.put(KEY_START_MINIMIZED, String.valueOf(settings.startMinimized()));
+        values.put(KEY_AUTO_BACKUP, String.valueOf(settings.autoBackup()));
+        values.put(KEY_DEFAULT_VIEW, settings.defaultView());
+        values.put(KEY_CHART_TYPE, settings.chartType());
+        values.put(KEY_ANIMATIONS, String.valueOf(settings.animationsLevel()));
+        return values;
+    }
+
+    /**
+     * Flattens the notifications group into values keyed by setting name.
+     */
+    private static Map<String, String> values(NotificationSettings settings) {
+        Map<String, String> values = new HashMap<>();
+        values.put(KEY_NOTIFY_BILLS, String.valueOf(settings.notifyBills()));
+        values.put(KEY_NOTIFY_SUBSCRIPTIONS, String.valueOf(settings.notifySubscriptions()));
+        values.put(KEY_NOTIFY_WEEKLY, String.valueOf(settings.notifyWeekly()));
+        values.put(KEY_NOTIFY_OVERSPEND, String.valueOf(settings.notifyOverspend()));
+        values.put(KEY_NOTIFY_MOTIVATION, String.valueOf(settings.notifyMotivation()));
+        values.put(KEY_NOTIFY_FREQUENCY, settings.frequency());
+        values.put(KEY_NOTIFY_TIME, settings.notifyTime());
+        values.put(KEY_NOTIFY_EMAIL, String.valueOf(settings.notifyEmail()));
+        values.put(KEY_NOTIFY_DESKTOP, String.valueOf(settings.notifyDesktop()));
+        values.put(KEY_NOTIFY_PUSH, String.valueOf(settings.notifyPush()));
+        values.put(KEY_QUIET_HOURS, String.valueOf(settings.quietHours()));
+        values.put(KEY_QUIET_FROM, settings.quietFrom());
+        values.put(KEY_QUIET_TO, settings.quietTo());
+        return values;
+    }
+
+    /**
+     * Returns the published account group, loading it on a miss.
+     */
+    private static AccountSettings account() {
+        AccountSettings account = snapshot.get().account();
+        if (account != null) {
+            cacheHits.increment();
+            return account;
+        }
+
+        cacheMisses.increment();
+        synchronized (pending) {
+            SettingsSnapshot current = snapshot.get();
+            if (current.account() != null) {
+                return current.account();
+            }
+            account = loadAccount();
+            snapshot.compareAndSet(current, current.withAccount(account, current.version()));
+            return account;
+        }
+    }
+
+    /**
+     * Returns the published app preferences group, loading it on a miss.
+     */
+    private static AppPreferences appPreferences() {
+        AppPreferences appPreferences = snapshot.get().appPreferences();
+        if (appPreferences != null) {
+            cacheHits.increment();
+            return appPreferences;
+        }
+
+        cacheMisses.increment();
+        synchronized (pending) {
+            SettingsSnapshot current = snapshot.get();
+            if (current.appPreferences() != null) {
+                return current.appPreferences();
+            }
+            appPreferences = loadAppPreferences();
+            snapshot.compareAndSet(current, current.withAppPreferences(appPreferences, current.version()));
+            return appPreferences;
+        }
+    }
+
+    /**
+     * Returns the published notifications group, loading it on a miss.
+     */
+    private static NotificationSettings notifications() {
+        NotificationSettings notifications = snapshot.get().notifications();
+        if (notifications != null) {
+            cacheHits.increment();
+            return notifications;
+        }
+
+        cacheMisses.increment();
+        synchronized (pending) {
+            SettingsSnapshot current = snapshot.get();
+            if (current.notifications() != null) {
+                return current.notifications();
+            }
+            notifications = loadNotifications();
+            snapshot.compareAndSet(current, current.withNotifications(notifications, current.version()));
+            return notifications;
+        }
+    }
+
+    /**
+     * Builds the account group from staged writes and the backing store.
+     */
+    private static AccountSettings loadAccount() {
+        return toAccount(SettingsManager::readStaged);
+    }
+
+    /**
+     * Builds the app preferences group from staged writes and the backing store.
+     */
+    private static AppPreferences loadAppPreferences() {
+        return toAppPreferences(SettingsManager::readStaged);
+    }
+
+    /**
+     * Builds the notifications group from staged writes and the backing store.
+     */
+    private static NotificationSettings loadNotifications() {
+        return toNotifications(SettingsManager::readStaged);
+    }
+
+    /**
+     * Builds the account group from raw values, using defaults for missing or malformed ones.
+     */
+    private static AccountSettings toAccount(Function<String, String> source) {
+        AccountSettings def = AccountSettings.DEFAULTS;
+        return new AccountSettings(
+                text(source, KEY_FULLNAME, def.fullName()),
+                text(source, KEY_DOB, def.dateOfBirth()),
+                text(source, KEY_USERNAME, def.username()),
+                text(source, KEY_EMAIL, def.email()),
+                text(source, KEY_PHONE, def.phone()),
+                text(source, KEY_ADDRESS, def.address()),
+                text(source, KEY_ACCOUNT_CREATED, def.accountCreated()),
+                text(source, KEY_CURRENCY, def.currency()),
+                flag(source, KEY_TWO_FACTOR, def.twoFactorAuth()));
+    }
+
+    /**
+     * Builds the app preferences group from raw values, using defaults for missing or malformed ones.
+     */
+    private static AppPreferences toAppPreferences(Function<String, String> source) {
+        AppPreferences def = AppPreferences.DEFAULTS;
+        return new AppPreferences(
+                flag(source, KEY_DARK_MODE, def.darkMode()),
+                text(source, KEY_FONT_SIZE, def.fontSize()),
+                text(source, KEY_LANGUAGE, def.language()),
+                text(source, KEY_DATE_FORMAT, def.dateFormat()),
+                text(source, KEY_TIME_FORMAT, def.timeFormat()),
+                flag(source, KEY_STARTUP, def.startOnBoot()),
+                flag(source, KEY_START_MINIMIZED, def.startMinimized()),
+                flag(source, KEY_AUTO_BACKUP, def.autoBackup()),
+                text(source, KEY_DEFAULT_VIEW, def.defaultView()),
+                text(source, KEY_CHART_TYPE, def.chartType()),
+                number(source, KEY_ANIMATIONS, def.animationsLevel()));
+    }
+
+    /**
+     * Builds the notifications group from raw values, using defaults for missing or malformed ones.
+     */
+    private static NotificationSettings toNotifications(Function<String, String> source) {
+        NotificationSettings def = NotificationSettings.DEFAULTS;
+        return new NotificationSettings(
+                flag(source, KEY_NOTIFY_BILLS, def.notifyBills()),
+                flag(source, KEY_NOTIFY_SUBSCRIPTIONS, def.notifySubscriptions()),
+                flag(source, KEY_NOTIFY_WEEKLY, def.notifyWeekly()),
+                flag(source, KEY_NOTIFY_OVERSPEND, def.notifyOverspend()),
+                flag(source, KEY_NOTIFY_MOTIVATION, def.notifyMotivation()),
+                text(source, KEY_NOTIFY_FREQUENCY, def.frequency()),
+                text(source, KEY_NOTIFY_TIME, def.notifyTime()),
+                flag(source, KEY_NOTIFY_EMAIL, def.notifyEmail()),
+                flag(source, KEY_NOTIFY_DESKTOP, def.notifyDesktop()),
+                flag(source, KEY_NOTIFY_PUSH, def.notifyPush()),
+                flag(source, KEY_QUIET_HOURS, def.quietHours()),
+                text(source, KEY_QUIET_FROM, def.quietFrom()),
+                text(source, KEY_QUIET_TO, def.quietTo()));
+    }
+
+    /**
+     * Reads a raw value, preferring writes that are still staged. Returns null if absent.
+     * Must be called holding the pending lock.
+     */
+    private static String readStaged(String key) {
+        if (pending.containsKey(key)) {
+            return pending.get(key);
+        }
+        return store().get(key);
+    }
+
+    /**
+     * Reads a string value from a source.
+     */
+    private static String text(Function<String, String> source, String key, String def) {
+        String value = source.apply(key);
+        return value == null ? def : value;
+    }
+
+    /**
+     * Reads a boolean value from a source.
+     */
+    private static boolean flag(Function<String, String> source, String key, boolean def) {
+        String value = source.apply(key);
+        if ("true".equalsIgnoreCase(value)) {
+            return true;
+        } else if ("false".equalsIgnoreCase(value)) {
+            return false;
+        }
+        return def;
+    }
+
+    /**
+     * Reads an integer value from a source.
+     */
+    private static int number(Function<String, String> source, String key, int def) {
+        String value = source.apply(key);
+        if (value == null) {
+            return def;
+        }
+
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return def;
+        }
+    }
+
+    /**
+     * Typed values parsed from one published snapshot, keyed by setting.
+     */
+    private record ParsedValues(SettingsSnapshot source, Map<String, String> raw, Map<SettingKey<?>, Object> values) {
+    }
+
+    /**
+     * An asynchronous save waiting for earlier saves to the same groups.
+     * Its work may be replaced by a newer save from the same owner until it starts.
+     */
+    private static final class AsyncSave {
+        private final List<Set<String>> groups;
+        private final CompletableFuture<Boolean> result = new CompletableFuture<>();
+        private final Object owner;
+        private Supplier<Boolean> work;
+
+        private AsyncSave(List<Set<String>> groups, Object owner, Supplier<Boolean> work) {
+            this.groups = groups;
+            this.owner = owner;
+            this.work = work;
+        }
+    }
+}
@@ -14,15 +14,23 @@ import java.awt.GridLayout;
 import java.awt.Image;
 import java.awt.Insets;
 import java.awt.RenderingHints;
+import java.awt.event.ActionListener;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.lang.management.ManagementFactory;
 import java.awt.geom.RoundRectangle2D;
 import java.awt.image.BufferedImage;
 import java.awt.image.ImageObserver;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.prefs.Preferences;
 import javax.swing.Box;
+import javax.swing.AbstractButton;
 import javax.swing.BoxLayout;
 import javax.swing.ButtonGroup;
 import javax.swing.Icon;
@@ -33,6 +41,7 @@ import javax.swing.JComboBox;
 import javax.swing.JComponent;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
+import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JRadioButton;
 import javax.swing.JScrollPane;
@@ -45,6 +54,9 @@ import javax.swing.border.Border;
 import javax.swing.border.CompoundBorder;
 import javax.swing.border.EmptyBorder;
 import javax.swing.border.MatteBorder;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.JTextComponent;
 
 /**
  * Settings panel for the SpentWise budgeting application.
@@ -68,6 +80,14 @@ public class SettingsPanel extends JPanel {
     //User preferences storage
     private Preferences prefs = Preferences.userNodeForPackage(SettingsPanel.class);
 
+    //Form state for each settings section, saved through SettingsManager
+    private final transient SettingsDraft accountDraft = SettingsManager.newDraft();
+    private final transient SettingsDraft preferencesDraft = SettingsManager.newDraft();
+    private final transient SettingsDraft notificationsDraft = SettingsManager.newDraft();
+
+    //Reloads the fields showing each setting from its draft, by key
+    private final transient Map<String, Runnable> fieldReloaders = new HashMap<>();
+
     //UI Components
     private JPanel contentPanel;
     private CardLayout cardLayout;
@@ -77,11 +97,11 @@ public class SettingsPanel extends JPanel {
     private JButton helpBtn;
     private JButton aboutBtn;
 
-    //Setting options
-    private static final String[] FONT_SIZES = new String[]{"Small", "Medium", "Large"};
-    private static final String[] DATE_FORMATS = new String[]{"MM/DD/YYYY", "DD/MM/YYYY", "YYYY-MM-DD"};
-    private static final String[] TIME_FORMATS = new String[]{"12-hour (AM/PM)", "24-hour"};
-    private static final String[] LANGUAGES = new String[]{"English", "Spanish", "French", "German", "Chinese", "Japanese"};
+    //Setting options, shared with the compact settings encoding
+    private static final String[] FONT_SIZES = SettingsSchema.FONT_SIZES;
+    private static final String[] DATE_FORMATS = SettingsSchema.DATE_FORMATS;
+    private static final String[] TIME_FORMATS = SettingsSchema.TIME_FORMATS;
+    private static final String[] LANGUAGES = SettingsSchema.LANGUAGES;
 
     /**
      * Creates a new settings panel with default configuration.
@@ -295,6 +315,7 @@ public class SettingsPanel extends JPanel {
         }
 
         JComboBox<String> yearCombo = new JComboBox(years);
+        this.bindDateOfBirth(dayCombo, monthCombo, yearCombo);
         dobPanel.add(dayCombo);
         dobPanel.add(new JLabel(" / "));
         dobPanel.add(monthCombo);
@@ -309,6 +330,11 @@ public class SettingsPanel extends JPanel {
         addressArea.setWrapStyleWord(true);
         JScrollPane addressScrollPane = new JScrollPane(addressArea);
         fields[5] = addressScrollPane;
+        this.bindText((JTextField)fields[0], this.accountDraft, SettingsManager.KEY_FULLNAME);
+        this.bindText((JTextField)fields[2], this.accountDraft, SettingsManager.KEY_USERNAME);
+        this.bindText((JTextField)fields[3], this.accountDraft, SettingsManager.KEY_EMAIL);
+        this.bindText((JTextField)fields[4], this.accountDraft, SettingsManager.KEY_PHONE);
+        this.bindText(addressArea, this.accountDraft, SettingsManager.KEY_ADDRESS);
         int gridy = 1;
 
         for(int i = 0; i < labels.length; ++i) {
@@ -357,9 +383,9 @@ public class SettingsPanel extends JPanel {
         formPanel.add(currencyFieldLabel, gbc);
         gbc.gridx = 1;
         gbc.weightx = 0.7;
-        String[] currencies = new String[]{"USD ($)", "EUR (€)", "GBP (£)", "JPY (¥)", "CAD ($)", "AUD ($)", "INR (₹)"};
-        JComboBox<String> currencyCombo = new JComboBox(currencies);
+        JComboBox<String> currencyCombo = new JComboBox(SettingsSchema.CURRENCIES);
         currencyCombo.setFont(REGULAR_FONT);
+        this.bindChoice(currencyCombo, this.accountDraft, SettingsManager.KEY_CURRENCY);
         formPanel.add(currencyCombo, gbc);
         ++gridy;
         gbc.gridx = 0;
@@ -400,12 +426,14 @@ public class SettingsPanel extends JPanel {
             }
 
         });
+        this.bindFlag(twoFactorToggle, this.accountDraft, SettingsManager.KEY_TWO_FACTOR);
         twoFactorPanel.add(twoFactorToggle);
         formPanel.add(twoFactorPanel, gbc);
         JPanel buttonPanel = new JPanel(new FlowLayout(2));
         buttonPanel.setBackground(LIGHT_BLUE);
         JButton cancelButton = this.createSecondaryButton("Cancel");
         JButton saveButton = this.createPrimaryButton("Save Changes");
+        saveButton.addActionListener((e) -> this.saveDraft(saveButton, this.accountDraft));
         buttonPanel.add(cancelButton);
         buttonPanel.add(saveButton);
         formPanelContainer.add(formPanel, "North");
@@ -455,6 +483,7 @@ public class SettingsPanel extends JPanel {
             }
 
         });
+        this.bindFlag(darkModeToggle, this.preferencesDraft, SettingsManager.KEY_DARK_MODE);
         darkModePanel.add(darkModeToggle);
         prefsPanel.add(darkModePanel, gbc);
         gbc.gridx = 0;
@@ -466,6 +495,7 @@ public class SettingsPanel extends JPanel {
         JComboBox<String> fontSizeCombo = new JComboBox(FONT_SIZES);
         fontSizeCombo.setFont(REGULAR_FONT);
         fontSizeCombo.setSelectedItem("Medium");
+        this.bindChoice(fontSizeCombo, this.preferencesDraft, SettingsManager.KEY_FONT_SIZE);
         prefsPanel.add(fontSizeCombo, gbc);
         gbc.gridx = 0;
         gbc.gridy = 3;
@@ -475,6 +505,7 @@ public class SettingsPanel extends JPanel {
         gbc.gridx = 1;
         JComboBox<String> langCombo = new JComboBox(LANGUAGES);
         langCombo.setFont(REGULAR_FONT);
+        this.bindChoice(langCombo, this.preferencesDraft, SettingsManager.KEY_LANGUAGE);
         prefsPanel.add(langCombo, gbc);
         gbc.gridx = 0;
         gbc.gridy = 4;
@@ -484,6 +515,7 @@ public class SettingsPanel extends JPanel {
         gbc.gridx = 1;
         JComboBox<String> dateCombo = new JComboBox(DATE_FORMATS);
         dateCombo.setFont(REGULAR_FONT);
+        this.bindChoice(dateCombo, this.preferencesDraft, SettingsManager.KEY_DATE_FORMAT);
         prefsPanel.add(dateCombo, gbc);
         gbc.gridx = 0;
         gbc.gridy = 5;
@@ -493,6 +525,7 @@ public class SettingsPanel extends JPanel {
         gbc.gridx = 1;
         JComboBox<String> timeCombo = new JComboBox(TIME_FORMATS);
         timeCombo.setFont(REGULAR_FONT);
+        this.bindChoice(timeCombo, this.preferencesDraft, SettingsManager.KEY_TIME_FORMAT);
         prefsPanel.add(timeCombo, gbc);
         gbc.gridx = 0;
         gbc.gridy = 6;
@@ -507,17 +540,20 @@ public class SettingsPanel extends JPanel {
         JCheckBox startupCheckbox = new JCheckBox("Start application when system boots");
         startupCheckbox.setFont(REGULAR_FONT);
         startupCheckbox.setBackground(LIGHT_BLUE);
+        this.bindFlag(startupCheckbox, this.preferencesDraft, SettingsManager.KEY_STARTUP);
         prefsPanel.add(startupCheckbox, gbc);
         gbc.gridy = 8;
         JCheckBox minimizedCheckbox = new JCheckBox("Start minimized in system tray");
         minimizedCheckbox.setFont(REGULAR_FONT);
         minimizedCheckbox.setBackground(LIGHT_BLUE);
+        this.bindFlag(minimizedCheckbox, this.preferencesDraft, SettingsManager.KEY_START_MINIMIZED);
         prefsPanel.add(minimizedCheckbox, gbc);
         gbc.gridy = 9;
         JCheckBox backupCheckbox = new JCheckBox("Auto-backup data weekly");
         backupCheckbox.setFont(REGULAR_FONT);
         backupCheckbox.setBackground(LIGHT_BLUE);
         backupCheckbox.setSelected(true);
+        this.bindFlag(backupCheckbox, this.preferencesDraft, SettingsManager.KEY_AUTO_BACKUP);
         prefsPanel.add(backupCheckbox, gbc);
         gbc.gridx = 0;
         gbc.gridy = 10;
@@ -534,14 +570,15 @@ public class SettingsPanel extends JPanel {
         defaultViewLabel.setFont(REGULAR_FONT);
         prefsPanel.add(defaultViewLabel, gbc);
         gbc.gridx = 1;
-        String[] views = new String[]{"Monthly", "Weekly", "Yearly", "Custom"};
-        JComboBox<String> viewCombo = new JComboBox(views);
+        JComboBox<String> viewCombo = new JComboBox(SettingsSchema.VIEWS);
         viewCombo.setFont(REGULAR_FONT);
+        this.bindChoice(viewCombo, this.preferencesDraft, SettingsManager.KEY_DEFAULT_VIEW);
         prefsPanel.add(viewCombo, gbc);
         JPanel buttonPanel = new JPanel(new FlowLayout(2));
         buttonPanel.setBackground(LIGHT_BLUE);
         JButton resetButton = this.createSecondaryButton("Reset to Defaults");
         JButton saveButton = this.createPrimaryButton("Save Preferences");
+        saveButton.addActionListener((e) -> this.saveDraft(saveButton, this.preferencesDraft));
         buttonPanel.add(resetButton);
         buttonPanel.add(saveButton);
         JScrollPane scrollPane = new JScrollPane(prefsPanel);
@@ -570,10 +607,12 @@ public class SettingsPanel extends JPanel {
         gbc.gridy = 0;
         gbc.gridwidth = 3;
         notifPanel.add(typesLabel, gbc);
+        String[] notificationKeys = new String[]{SettingsManager.KEY_NOTIFY_BILLS, SettingsManager.KEY_NOTIFY_SUBSCRIPTIONS, SettingsManager.KEY_NOTIFY_WEEKLY, SettingsManager.KEY_NOTIFY_OVERSPEND, SettingsManager.KEY_NOTIFY_MOTIVATION};
         String[][] notificationTypes = new String[][]{{"Bill Due Reminder", "Get reminded when your bills are coming due"}, {"Subscription Tracking", "Track your recurring subscriptions and payments"}, {"Weekly Summaries", "Receive summaries of your spending habits each week"}, {"Overspending Nudges", "Be alerted when you're nearing your budget limits"}, {"Motivational Boosts", "Get positive reinforcement when you meet your goals"}};
         int gridy = 1;
 
-        for(String[] type : notificationTypes) {
+        for(int t = 0; t < notificationTypes.length; ++t) {
+            String[] type = notificationTypes[t];
             gbc.gridx = 0;
             gbc.gridy = gridy;
             gbc.gridwidth = 1;
@@ -590,6 +629,7 @@ public class SettingsPanel extends JPanel {
                 }
 
             });
+            this.bindFlag(toggle, this.notificationsDraft, notificationKeys[t]);
             notifPanel.add(toggle, gbc);
             gbc.gridx = 1;
             gbc.weightx = 0.3;
@@ -632,6 +672,9 @@ public class SettingsPanel extends JPanel {
         frequencyPanel.add(dailyRadio);
         frequencyPanel.add(weeklyRadio);
         frequencyPanel.add(monthlyRadio);
+        this.bindFrequency(dailyRadio, "Daily");
+        this.bindFrequency(weeklyRadio, "Weekly");
+        this.bindFrequency(monthlyRadio, "Monthly");
         gbc.gridx = 0;
         gbc.gridy = gridy++;
         gbc.gridwidth = 3;
@@ -668,6 +711,7 @@ public class SettingsPanel extends JPanel {
         JComboBox<String> hourCombo = new JComboBox(hours);
         JComboBox<String> minuteCombo = new JComboBox(minutes);
         JComboBox<String> ampmCombo = new JComboBox(new String[]{"AM", "PM"});
+        this.bindNotifyTime(hourCombo, minuteCombo, ampmCombo);
         timeSelectionPanel.add(hourCombo);
         timeSelectionPanel.add(new JLabel(":"));
         timeSelectionPanel.add(minuteCombo);
@@ -689,6 +733,7 @@ public class SettingsPanel extends JPanel {
         JCheckBox emailCheckbox = new JCheckBox();
         emailCheckbox.setBackground(LIGHT_BLUE);
         emailCheckbox.setSelected(true);
+        this.bindFlag(emailCheckbox, this.notificationsDraft, SettingsManager.KEY_NOTIFY_EMAIL);
         notifPanel.add(emailCheckbox, gbc);
         gbc.gridx = 1;
         gbc.gridwidth = 2;
@@ -704,6 +749,7 @@ public class SettingsPanel extends JPanel {
         JCheckBox desktopCheckbox = new JCheckBox();
         desktopCheckbox.setBackground(LIGHT_BLUE);
         desktopCheckbox.setSelected(true);
+        this.bindFlag(desktopCheckbox, this.notificationsDraft, SettingsManager.KEY_NOTIFY_DESKTOP);
         notifPanel.add(desktopCheckbox, gbc);
         gbc.gridx = 1;
         gbc.gridwidth = 2;
@@ -719,6 +765,7 @@ public class SettingsPanel extends JPanel {
         JCheckBox pushCheckbox = new JCheckBox();
         pushCheckbox.setBackground(LIGHT_BLUE);
         pushCheckbox.setSelected(false);
+        this.bindFlag(pushCheckbox, this.notificationsDraft, SettingsManager.KEY_NOTIFY_PUSH);
         notifPanel.add(pushCheckbox, gbc);
         gbc.gridx = 1;
         gbc.gridwidth = 2;
@@ -741,6 +788,7 @@ public class SettingsPanel extends JPanel {
         gbc.weightx = 0.1;
         JCheckBox quietHoursCheckbox = new JCheckBox();
         quietHoursCheckbox.setBackground(LIGHT_BLUE);
+        this.bindFlag(quietHoursCheckbox, this.notificationsDraft, SettingsManager.KEY_QUIET_HOURS);
         notifPanel.add(quietHoursCheckbox, gbc);
         gbc.gridx = 1;
         gbc.gridwidth = 2;
@@ -765,6 +813,8 @@ public class SettingsPanel extends JPanel {
         toLabel.setFont(REGULAR_FONT);
         JComboBox<String> toCombo = new JComboBox(fullHours);
         toCombo.setSelectedItem("07:00");
+        this.bindChoice(fromCombo, this.notificationsDraft, SettingsManager.KEY_QUIET_FROM);
+        this.bindChoice(toCombo, this.notificationsDraft, SettingsManager.KEY_QUIET_TO);
         timePanel.add(fromLabel);
         timePanel.add(fromCombo);
         timePanel.add(toLabel);
@@ -779,6 +829,7 @@ public class SettingsPanel extends JPanel {
         buttonPanel.setBackground(LIGHT_BLUE);
         JButton cancelButton = this.createSecondaryButton("Cancel");
         JButton saveButton = this.createPrimaryButton("Save Notifications");
+        saveButton.addActionListener((e) -> this.saveDraft(saveButton, this.notificationsDraft));
         buttonPanel.add(cancelButton);
         buttonPanel.add(saveButton);
         JScrollPane scrollPane = new JScrollPane(notifPanelContainer);
@@ -992,6 +1043,158 @@ public class SettingsPanel extends JPanel {
         return panel;
     }
 
+    /**
+     * Saves the changed fields of a form draft in the background, showing the button as
+     * pending until the latest save finishes and warning if the fields were changed elsewhere.
+     */
+    private void saveDraft(JButton saveButton, SettingsDraft draft) {
+        String label = (String)saveButton.getClientProperty("saveLabel");
+        if (label == null) {
+            label = saveButton.getText();
+            saveButton.putClientProperty("saveLabel", label);
+        }
+        saveButton.setText("Saving...");
+
+        CompletableFuture<Boolean> result = SettingsManager.saveAsync(draft);
+        saveButton.putClientProperty("pendingSave", result);
+        String idleLabel = label;
+        result.whenCompleteAsync((saved, error) -> {
+            //Repeated clicks may share one superseding save, report it only once
+            if (saveButton.getClientProperty("reportedSave") == result) {
+                return;
+            }
+            saveButton.putClientProperty("reportedSave", result);
+
+            if (saveButton.getClientProperty("pendingSave") == result) {
+                saveButton.putClientProperty("pendingSave", null);
+                saveButton.setText(idleLabel);
+            }
+
+            if (error != null) {
+                error.printStackTrace();
+                JOptionPane.showMessageDialog(this, "Your settings could not be saved.", "Save Failed", 0);
+            } else if (!saved) {
+                //Show what was saved elsewhere in the conflicting fields, so saving again can succeed
+                SettingsDraft latest = SettingsManager.newDraft();
+                for (String key : draft.rebase(latest::getOriginal)) {
+                    this.reloadField(key);
+                }
+                JOptionPane.showMessageDialog(this, "Some of these settings were changed elsewhere and now show the saved values. Please review them and save again.", "Settings Changed", 2);
+            }
+        }, SwingUtilities::invokeLater);
+    }
+
+    /**
+     * Reloads the fields showing a setting from its draft.
+     */
+    private void reloadField(String key) {
+        Runnable reload = this.fieldReloaders.get(key);
+        if (reload != null) {
+            reload.run();
+        }
+    }
+
+    /**
+     * Registers how to reload a field showing a setting, after any already registered for it, and runs it once.
+     */
+    private void onReload(String key, Runnable reload) {
+        this.fieldReloaders.merge(key, reload, (first, second) -> () -> {
+            first.run();
+            second.run();
+        });
+        reload.run();
+    }
+
+    /**
+     * Loads a text field from a draft and records edits back into it.
+     */
+    private void bindText(JTextComponent field, SettingsDraft draft, String key) {
+        this.onReload(key, () -> field.setText(draft.get(key)));
+        field.getDocument().addDocumentListener(new DocumentListener() {
+            public void insertUpdate(DocumentEvent e) {
+                draft.set(key, field.getText());
+            }
+
+            public void removeUpdate(DocumentEvent e) {
+                draft.set(key, field.getText());
+            }
+
+            public void changedUpdate(DocumentEvent e) {
+                draft.set(key, field.getText());
+            }
+        });
+    }
+
+    /**
+     * Loads a combo box selection from a draft and records changes back into it.
+     */
+    private void bindChoice(JComboBox<String> combo, SettingsDraft draft, String key) {
+        this.onReload(key, () -> combo.setSelectedItem(draft.get(key)));
+        combo.addActionListener((e) -> draft.set(key, (String)combo.getSelectedItem()));
+    }
+
+    /**
+     * Loads a toggle, checkbox or radio button from a draft and records changes back into it.
+     */
+    private void bindFlag(AbstractButton button, SettingsDraft draft, String key) {
+        this.onReload(key, () -> {
+            button.setSelected(Boolean.parseBoolean(draft.get(key)));
+            if (button instanceof JToggleButton && !(button instanceof JCheckBox) && !(button instanceof JRadioButton)) {
+                button.setBackground(button.isSelected() ? ACCENT_BLUE : LIGHT_GRAY);
+            }
+        });
+        button.addItemListener((e) -> draft.set(key, button.isSelected()));
+    }
+
+    /**
+     * Selects a frequency radio button from the notifications draft and records its choice.
+     */
+    private void bindFrequency(JRadioButton radio, String frequency) {
+        this.onReload(SettingsManager.KEY_NOTIFY_FREQUENCY,
+                () -> radio.setSelected(frequency.equals(this.notificationsDraft.get(SettingsManager.KEY_NOTIFY_FREQUENCY))));
+        radio.addActionListener((e) -> this.notificationsDraft.set(SettingsManager.KEY_NOTIFY_FREQUENCY, frequency));
+    }
+
+    /**
+     * Loads the date of birth combos from the account draft, stored as "DD Mon YYYY".
+     */
+    private void bindDateOfBirth(JComboBox<String> dayCombo, JComboBox<String> monthCombo, JComboBox<String> yearCombo) {
+        this.onReload(SettingsManager.KEY_DOB, () -> {
+            String[] parts = this.accountDraft.get(SettingsManager.KEY_DOB).split(" ");
+            if (parts.length == 3) {
+                dayCombo.setSelectedItem(parts[0]);
+                monthCombo.setSelectedItem(parts[1]);
+                yearCombo.setSelectedItem(parts[2]);
+            }
+        });
+
+        ActionListener update = (e) -> this.accountDraft.set(SettingsManager.KEY_DOB,
+                dayCombo.getSelectedItem() + " " + monthCombo.getSelectedItem() + " " + yearCombo.getSelectedItem());
+        dayCombo.addActionListener(update);
+        monthCombo.addActionListener(update);
+        yearCombo.addActionListener(update);
+    }
+
+    /**
+     * Loads the delivery time combos from the notifications draft, stored as "h:mm AM".
+     */
+    private void bindNotifyTime(JComboBox<String> hourCombo, JComboBox<String> minuteCombo, JComboBox<String> ampmCombo) {
+        this.onReload(SettingsManager.KEY_NOTIFY_TIME, () -> {
+            String[] parts = this.notificationsDraft.get(SettingsManager.KEY_NOTIFY_TIME).split("[: ]");
+            if (parts.length == 3) {
+                hourCombo.setSelectedItem(parts[0]);
+                minuteCombo.setSelectedItem(parts[1]);
+                ampmCombo.setSelectedItem(parts[2]);
+            }
+        });
+
+        ActionListener update = (e) -> this.notificationsDraft.set(SettingsManager.KEY_NOTIFY_TIME,
+                hourCombo.getSelectedItem() + ":" + minuteCombo.getSelectedItem() + " " + ampmCombo.getSelectedItem());
+        hourCombo.addActionListener(update);
+        minuteCombo.addActionListener(update);
+        ampmCombo.addActionListener(update);
+    }
+
     /**
      * Creates a collapsible panel with a title and content.
      */
@@ -1118,6 +1321,15 @@ public class SettingsPanel extends JPanel {
             frame.getContentPane().add(new SettingsPanel());
             frame.setSize(900, 600);
             frame.setLocationRelativeTo((Component)null);
+            if (Boolean.getBoolean("spentwise.startup.timing")) {
+                //Startup benchmark, compare runs with and without -Dspentwise.settings.snapshot=none
+                frame.addWindowListener(new WindowAdapter() {
+                    public void windowOpened(WindowEvent e) {
+                        long elapsed = System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime();
+                        System.out.println("Time to first frame: " + elapsed + " ms");
+                    }
+                });
+            }
             frame.setVisible(true);
         });
     }
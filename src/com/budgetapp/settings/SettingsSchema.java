@@ -0,0 +1,143 @@
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Currency;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Registry of every persisted setting, with its type, default and validation.
+ * Fields and choice options may only ever be appended, never reordered or removed,
+ * because their positions are the ordinals written to disk by the compact binary encoding.
+ */
+public final class SettingsSchema {
+    //Current schema version written by SettingsCodec
+    public static final int VERSION = 1;
+
+    //Choice options, in ordinal order
+    public static final String[] FONT_SIZES = new String[]{"Small", "Medium", "Large"};
+    public static final String[] DATE_FORMATS = new String[]{"MM/DD/YYYY", "DD/MM/YYYY", "YYYY-MM-DD"};
+    public static final String[] TIME_FORMATS = new String[]{"12-hour (AM/PM)", "24-hour"};
+    public static final String[] LANGUAGES = new String[]{"English", "Spanish", "French", "German", "Chinese", "Japanese"};
+    public static final String[] CURRENCIES = new String[]{"USD ($)", "EUR (€)", "GBP (£)", "JPY (¥)", "CAD ($)", "AUD ($)", "INR (₹)"};
+    public static final String[] VIEWS = new String[]{"Monthly", "Weekly", "Yearly", "Custom"};
+    public static final String[] CHART_TYPES = new String[]{"Pie Chart", "Bar Chart", "Line Chart"};
+    public static final String[] FREQUENCIES = new String[]{"Daily", "Weekly", "Monthly"};
+
+    //Reverse lookup tables from option text to ordinal
+    private static final Map<String[], Map<String, Integer>> ORDINALS = new IdentityHashMap<>();
+
+    static {
+        for (String[] options : List.of(FONT_SIZES, DATE_FORMATS, TIME_FORMATS, LANGUAGES,
+                CURRENCIES, VIEWS, CHART_TYPES, FREQUENCIES)) {
+            Map<String, Integer> ordinals = new HashMap<>();
+            for (int i = 0; i < options.length; ++i) {
+                ordinals.put(options[i], i);
+            }
+            ORDINALS.put(options, ordinals);
+        }
+    }
+
+    /**
+     * How a field's raw text is encoded.
+     */
+    public enum Kind {
+        TEXT,
+        FLAG,
+        NUMBER,
+        CHOICE,
+        CLOCK_12H,
+        CLOCK_24H
+    }
+
+    //Parsed forms of the date and time format options, at the same positions
+    public static final DateTimeFormatter[] DATE_FORMATTERS = new DateTimeFormatter[]{
+            DateTimeFormatter.ofPattern("MM/dd/yyyy", Locale.US),
+            DateTimeFormatter.ofPattern("dd/MM/yyyy", Locale.US),
+            DateTimeFormatter.ofPattern("yyyy-MM-dd", Locale.US)};
+    public static final DateTimeFormatter CLOCK_12H_FORMAT = DateTimeFormatter.ofPattern("h:mm a", Locale.US);
+    public static final DateTimeFormatter CLOCK_24H_FORMAT = DateTimeFormatter.ofPattern("HH:mm", Locale.US);
+    public static final DateTimeFormatter[] TIME_FORMATTERS = new DateTimeFormatter[]{CLOCK_12H_FORMAT, CLOCK_24H_FORMAT};
+    public static final Currency[] CURRENCY_VALUES = new Currency[]{Currency.getInstance("USD"), Currency.getInstance("EUR"),
+            Currency.getInstance("GBP"), Currency.getInstance("JPY"), Currency.getInstance("CAD"),
+            Currency.getInstance("AUD"), Currency.getInstance("INR")};
+
+    //Account settings
+    public static final SettingKey<String> FULL_NAME = SettingKey.text("fullName", "");
+    public static final SettingKey<String> DATE_OF_BIRTH = SettingKey.text("dateOfBirth", "");
+    public static final SettingKey<String> USERNAME = SettingKey.text("username", "");
+    public static final SettingKey<String> EMAIL = SettingKey.text("email", "");
+    public static final SettingKey<String> PHONE = SettingKey.text("phone", "");
+    public static final SettingKey<String> ADDRESS = SettingKey.text("address", "");
+    public static final SettingKey<String> ACCOUNT_CREATED = SettingKey.text("accountCreated", "");
+    public static final SettingKey<Currency> CURRENCY = SettingKey.choice("currency", CURRENCIES, CURRENCY_VALUES,
+            Currency.class, CURRENCY_VALUES[0]);
+    public static final SettingKey<Boolean> TWO_FACTOR_AUTH = SettingKey.flag("twoFactorAuth", false);
+
+    //Application preferences
+    public static final SettingKey<Boolean> DARK_MODE = SettingKey.flag("darkMode", false);
+    public static final SettingKey<String> FONT_SIZE = SettingKey.choice("fontSize", FONT_SIZES, "Medium");
+    public static final SettingKey<String> LANGUAGE = SettingKey.choice("language", LANGUAGES, "English");
+    public static final SettingKey<DateTimeFormatter> DATE_FORMAT = SettingKey.choice("dateFormat", DATE_FORMATS,
+            DATE_FORMATTERS, DateTimeFormatter.class, DATE_FORMATTERS[0]);
+    public static final SettingKey<DateTimeFormatter> TIME_FORMAT = SettingKey.choice("timeFormat", TIME_FORMATS,
+            TIME_FORMATTERS, DateTimeFormatter.class, TIME_FORMATTERS[0]);
+    public static final SettingKey<Boolean> START_ON_BOOT = SettingKey.flag("startOnBoot", false);
+    public static final SettingKey<Boolean> START_MINIMIZED = SettingKey.flag("startMinimized", false);
+    public static final SettingKey<Boolean> AUTO_BACKUP = SettingKey.flag("autoBackup", true);
+    public static final SettingKey<String> DEFAULT_VIEW = SettingKey.choice("defaultView", VIEWS, "Monthly");
+    public static final SettingKey<String> CHART_TYPE = SettingKey.choice("chartType", CHART_TYPES, "Pie Chart");
+    public static final SettingKey<Integer> ANIMATIONS_LEVEL = SettingKey.number("animationsLevel", 50, 0, 100);
+
+    //Notification settings
+    public static final SettingKey<Boolean> NOTIFY_BILLS = SettingKey.flag("notifyBills", true);
+    public static final SettingKey<Boolean> NOTIFY_SUBSCRIPTIONS = SettingKey.flag("notifySubscriptions", true);
+    public static final SettingKey<Boolean> NOTIFY_WEEKLY = SettingKey.flag("notifyWeekly", true);
+    public static final SettingKey<Boolean> NOTIFY_OVERSPEND = SettingKey.flag("notifyOverspend", true);
+    public static final SettingKey<Boolean> NOTIFY_MOTIVATION = SettingKey.flag("notifyMotivation", true);
+    public static final SettingKey<String> NOTIFY_FREQUENCY = SettingKey.choice("notifyFrequency", FREQUENCIES, "Weekly");
+    public static final SettingKey<LocalTime> NOTIFY_TIME = SettingKey.clock("notifyTime", Kind.CLOCK_12H, LocalTime.of(9, 0));
+    public static final SettingKey<Boolean> NOTIFY_EMAIL = SettingKey.flag("notifyEmail", true);
+    public static final SettingKey<Boolean> NOTIFY_DESKTOP = SettingKey.flag("notifyDesktop", true);
+    public static final SettingKey<Boolean> NOTIFY_PUSH = SettingKey.flag("notifyPush", false);
+    public static final SettingKey<Boolean> QUIET_HOURS = SettingKey.flag("quietHours", false);
+    public static final SettingKey<LocalTime> QUIET_FROM = SettingKey.clock("quietFrom", Kind.CLOCK_24H, LocalTime.of(22, 0));
+    public static final SettingKey<LocalTime> QUIET_TO = SettingKey.clock("quietTo", Kind.CLOCK_24H, LocalTime.of(7, 0));
+
+    //All fields in encoding order
+    public static final List<SettingKey<?>> FIELDS = List.of(
+            FULL_NAME, DATE_OF_BIRTH, USERNAME, EMAIL, PHONE, ADDRESS, ACCOUNT_CREATED, CURRENCY, TWO_FACTOR_AUTH,
+            DARK_MODE, FONT_SIZE, LANGUAGE, DATE_FORMAT, TIME_FORMAT, START_ON_BOOT, START_MINIMIZED, AUTO_BACKUP,
+            DEFAULT_VIEW, CHART_TYPE, ANIMATIONS_LEVEL,
+            NOTIFY_BILLS, NOTIFY_SUBSCRIPTIONS, NOTIFY_WEEKLY, NOTIFY_OVERSPEND, NOTIFY_MOTIVATION, NOTIFY_FREQUENCY,
+            NOTIFY_TIME, NOTIFY_EMAIL, NOTIFY_DESKTOP, NOTIFY_PUSH, QUIET_HOURS, QUIET_FROM, QUIET_TO);
+
+    //Fields by persisted name
+    private static final Map<String, SettingKey<?>> BY_KEY = new HashMap<>();
+
+    static {
+        for (SettingKey<?> field : FIELDS) {
+            BY_KEY.put(field.key(), field);
+        }
+    }
+
+    private SettingsSchema() {
+    }
+
+    /**
+     * Retrieves the field persisted under a name, or null if there is none.
+     */
+    public static SettingKey<?> forKey(String key) {
+        return BY_KEY.get(key);
+    }
+
+    /**
+     * Retrieves the ordinal of a value within one of the option tables, or -1 if it is not listed.
+     */
+    public static int ordinal(String[] options, String value) {
+        Integer ordinal = ORDINALS.get(options).get(value);
+        return ordinal == null ? -1 : ordinal;
+    }
+}
@@ -0,0 +1,27 @@
+/**
+ * Immutable, versioned set of all settings groups.
+ * A null group has been invalidated and will be reloaded from the store on next read.
+ */
+public record SettingsSnapshot(long version, AccountSettings account,
+                               AppPreferences appPreferences, NotificationSettings notifications) {
+    /**
+     * Returns a copy with the account group replaced.
+     */
+    public SettingsSnapshot withAccount(AccountSettings account, long version) {
+        return new SettingsSnapshot(version, account, this.appPreferences, this.notifications);
+    }
+
+    /**
+     * Returns a copy with the app preferences group replaced.
+     */
+    public SettingsSnapshot withAppPreferences(AppPreferences appPreferences, long version) {
+        return new SettingsSnapshot(version, this.account, appPreferences, this.notifications);
+    }
+
+    /**
+     * Returns a copy with the notifications group replaced.
+     */
+    public SettingsSnapshot withNotifications(NotificationSettings notifications, long version) {
+        return new SettingsSnapshot(version, this.account, this.appPreferences, notifications);
+    }
+}
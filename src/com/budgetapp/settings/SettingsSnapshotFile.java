@@ -0,0 +1,89 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Warm-start copy of the whole settings set, read at boot before the backing store is open.
+ *
+ * Layout: magic "SWWS", the length-prefixed name of the store the values came from,
+ * the length-prefixed SettingsCodec blob, then a CRC32 of everything before it. The
+ * file is replaced atomically, and a copy that is damaged or was written for a
+ * different store is ignored so that settings are loaded from the store instead.
+ */
+public final class SettingsSnapshotFile {
+    //Format constants
+    private static final int MAGIC = 0x53575753;
+    private static final int TRAILER_BYTES = 4;
+
+    private SettingsSnapshotFile() {
+    }
+
+    /**
+     * Reads the values saved for the given store with one sequential read.
+     * Returns null if there is no usable snapshot.
+     */
+    public static Map<String, String> read(Path file, String source) {
+        byte[] data;
+        try {
+            data = Files.readAllBytes(file);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            CRC32 crc = new CRC32();
+            crc.update(data, 0, data.length - TRAILER_BYTES);
+            if (buffer.getInt() != MAGIC || buffer.getInt(data.length - TRAILER_BYTES) != (int)crc.getValue()) {
+                System.out.println("Settings snapshot " + file + " is damaged, loading settings from the store");
+                return null;
+            }
+
+            byte[] name = new byte[buffer.getShort() & 0xFFFF];
+            buffer.get(name);
+            if (!source.equals(new String(name, StandardCharsets.UTF_8))) {
+                return null;
+            }
+            byte[] blob = new byte[buffer.getInt()];
+            buffer.get(blob);
+            return SettingsCodec.decode(blob);
+        } catch (RuntimeException | IOException e) {
+            System.out.println("Settings snapshot " + file + " is damaged, loading settings from the store");
+            return null;
+        }
+    }
+
+    /**
+     * Replaces the snapshot with the given values saved for a store.
+     */
+    public static void write(Path file, String source, Map<String, String> values) throws IOException {
+        byte[] name = source.getBytes(StandardCharsets.UTF_8);
+        byte[] blob = SettingsCodec.encode(values);
+        ByteBuffer buffer = ByteBuffer.allocate(4 + 2 + name.length + 4 + blob.length + TRAILER_BYTES);
+        buffer.putInt(MAGIC);
+        buffer.putShort((short)name.length);
+        buffer.put(name);
+        buffer.putInt(blob.length);
+        buffer.put(blob);
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 0, buffer.position());
+        buffer.putInt((int)crc.getValue());
+
+        Path directory = file.toAbsolutePath().getParent();
+        if (directory != null) {
+            Files.createDirectories(directory);
+        }
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(temp, buffer.array());
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
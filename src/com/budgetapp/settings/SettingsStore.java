@@ -0,0 +1,43 @@
+import java.io.IOException;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Backing store for persisted settings.
+ * SettingsManager stages writes in memory and hands each coalesced group to the
+ * store through putAll, followed by a single flush.
+ */
+public interface SettingsStore {
+    /**
+     * Retrieves the stored value for a key, or null if it has never been saved.
+     */
+    String get(String key);
+
+    /**
+     * Applies a group of writes. A null value removes the key.
+     * A group the store cannot hold is refused as a whole, before any of it is written.
+     */
+    void putAll(Map<String, String> entries);
+
+    /**
+     * Throws IllegalArgumentException if putAll would refuse a group of writes.
+     */
+    default void check(Map<String, String> entries) {
+    }
+
+    /**
+     * Removes every stored value.
+     */
+    void clear() throws IOException;
+
+    /**
+     * Makes all applied writes durable.
+     */
+    void flush() throws IOException;
+
+    /**
+     * Registers a callback for keys changed outside this process, where the backend supports it.
+     */
+    default void addChangeListener(Consumer<String> listener) {
+    }
+}
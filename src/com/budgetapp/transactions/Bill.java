@@ -0,0 +1,34 @@
+import java.time.LocalDate;
+
+/**
+ * A bill that falls due once or on a recurrence, from its first due day up to an optional last day.
+ * A null recurrence makes a one-off bill.
+ */
+public record Bill(long id, String name, long amountCents, String category, int firstEpochDay,
+                   Recurrence recurrence, int lastEpochDay) {
+    //Last day of a series with no end
+    public static final int NO_END = Integer.MAX_VALUE;
+
+    /**
+     * Creates an open-ended bill first due on the given date.
+     */
+    public Bill(long id, String name, long amountCents, String category, LocalDate firstDue, Recurrence recurrence) {
+        this(id, name, amountCents, category, (int)firstDue.toEpochDay(), recurrence, NO_END);
+    }
+
+    /**
+     * Retrieves the due day of an occurrence, counting from 0, or NO_END if the series has no such occurrence.
+     */
+    public int dueDay(long occurrence) {
+        if (occurrence == 0) {
+            //A series ended before its first due day, as updateFrom leaves it, has no occurrences
+            return this.firstEpochDay > this.lastEpochDay ? NO_END : this.firstEpochDay;
+        }
+        if (this.recurrence == null) {
+            return NO_END;
+        }
+        long day = this.recurrence == Recurrence.WEEKLY ? this.firstEpochDay + 7 * occurrence
+                : this.recurrence.after(LocalDate.ofEpochDay(this.firstEpochDay), occurrence).toEpochDay();
+        return day > this.lastEpochDay ? NO_END : (int)day;
+    }
+}
@@ -0,0 +1,7 @@
+import java.time.LocalDate;
+
+/**
+ * One due date of a bill.
+ */
+public record BillOccurrence(Bill bill, LocalDate dueDate) {
+}
@@ -0,0 +1,249 @@
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Holds the user's bills, indexed by when each one is next due.
+ *
+ * Only one occurrence of each series is known at a time: the index is ordered by that next
+ * due day, and a series is moved on to its following occurrence only once the day it waits
+ * on has passed. Years of a weekly bill are therefore never laid out up front, and looking
+ * up the bills due in the next days costs a walk from the front of the index over just the
+ * series falling in that window. Editing, skipping or removing a bill only re-places that
+ * one series in the index.
+ */
+public class BillStore {
+    //Index order: next due day, then bill id
+    private static final Comparator<Series> BY_NEXT_DUE = Comparator.<Series>comparingInt((series) -> series.nextDay)
+            .thenComparingLong((series) -> series.bill.id());
+
+    private final Map<Long, Series> series = new HashMap<>();
+    private final TreeSet<Series> index = new TreeSet<>(BY_NEXT_DUE);
+
+    //Day the index is current for: every indexed series is next due on or after it
+    private int cursor = Integer.MIN_VALUE;
+
+    /**
+     * A bill with its next occurrence and the occurrences the user skipped.
+     */
+    private static final class Series {
+        private Bill bill;
+        private long occurrence;
+        private int nextDay = Bill.NO_END;
+        private Set<Integer> skipped;
+
+        private Series(Bill bill) {
+            this.bill = bill;
+        }
+    }
+
+    /**
+     * Adds a bill. Throws IllegalArgumentException if one with the same id is already stored.
+     */
+    public synchronized void add(Bill bill) {
+        if (this.series.containsKey(bill.id())) {
+            throw new IllegalArgumentException("Bill " + bill.id() + " already exists");
+        }
+        Series series = new Series(bill);
+        this.series.put(bill.id(), series);
+        this.place(series, this.cursor);
+    }
+
+    /**
+     * Replaces a bill with a changed version of itself, keeping its skipped occurrences.
+     * Returns false if no bill has its id.
+     */
+    public synchronized boolean update(Bill bill) {
+        Series series = this.series.get(bill.id());
+        if (series == null) {
+            return false;
+        }
+        this.unindex(series);
+        series.bill = bill;
+        this.place(series, this.cursor);
+        return true;
+    }
+
+    /**
+     * Changes a bill from a date onwards: the existing series ends the day before and the changed
+     * bill, with its own id and first due date, carries on from there.
+     * Returns false if no bill has the given id. Throws IllegalArgumentException, changing
+     * nothing, if the changed bill reuses that id or the id of another stored bill.
+     */
+    public synchronized boolean updateFrom(long id, LocalDate from, Bill changed) {
+        Series series = this.series.get(id);
+        if (series == null || changed.firstEpochDay() < from.toEpochDay()) {
+            return false;
+        }
+        //Refuse the new id before the old series is cut short, so a failed change leaves both untouched
+        if (this.series.containsKey(changed.id())) {
+            throw new IllegalArgumentException("Bill " + changed.id() + " already exists");
+        }
+        Bill old = series.bill;
+        this.update(new Bill(old.id(), old.name(), old.amountCents(), old.category(), old.firstEpochDay(),
+                old.recurrence(), Math.min(old.lastEpochDay(), (int)from.toEpochDay() - 1)));
+        this.add(changed);
+        return true;
+    }
+
+    /**
+     * Skips a single occurrence of a bill. Returns false if no bill has the given id.
+     */
+    public synchronized boolean skip(long id, LocalDate dueDate) {
+        Series series = this.series.get(id);
+        if (series == null) {
+            return false;
+        }
+        if (series.skipped == null) {
+            series.skipped = new HashSet<>();
+        }
+        series.skipped.add((int)dueDate.toEpochDay());
+        if (series.nextDay == dueDate.toEpochDay()) {
+            this.unindex(series);
+            this.place(series, this.cursor);
+        }
+        return true;
+    }
+
+    /**
+     * Removes a bill. Returns false if no bill has the given id.
+     */
+    public synchronized boolean remove(long id) {
+        Series series = this.series.remove(id);
+        if (series == null) {
+            return false;
+        }
+        this.unindex(series);
+        return true;
+    }
+
+    /**
+     * Retrieves a bill by id, or null if there is none.
+     */
+    public synchronized Bill get(long id) {
+        Series series = this.series.get(id);
+        return series == null ? null : series.bill;
+    }
+
+    /**
+     * Retrieves the number of bills.
+     */
+    public synchronized int size() {
+        return this.series.size();
+    }
+
+    /**
+     * Retrieves every occurrence due from a date over the given number of days, in due order.
+     * Looking ahead moves the index on and costs O(log n + k) for k occurrences; looking at
+     * days the index has already passed falls back to checking every bill.
+     */
+    public synchronized List<BillOccurrence> getDue(LocalDate from, int days) {
+        int start = (int)from.toEpochDay();
+        int end = start + days - 1;
+        List<BillOccurrence> due = new ArrayList<>();
+
+        if (start >= this.cursor) {
+            this.advanceTo(start);
+            for (Series series : this.index) {
+                if (series.nextDay > end) {
+                    break;
+                }
+                expand(series, series.occurrence, end, due);
+            }
+        } else {
+            for (Series series : this.series.values()) {
+                expand(series, firstOccurrence(series, start, estimate(series.bill, start)), end, due);
+            }
+        }
+
+        due.sort(Comparator.comparing(BillOccurrence::dueDate).thenComparingLong((occurrence) -> occurrence.bill().id()));
+        return due;
+    }
+
+    /**
+     * Retrieves the next due date of a bill on or after the day the index is current for, or null if it has none.
+     */
+    public synchronized LocalDate getNextDue(long id) {
+        Series series = this.series.get(id);
+        return series == null || series.nextDay == Bill.NO_END ? null : LocalDate.ofEpochDay(series.nextDay);
+    }
+
+    /**
+     * Moves every series due before a day on to its first occurrence on or after it.
+     */
+    private void advanceTo(int day) {
+        if (day <= this.cursor) {
+            return;
+        }
+        this.cursor = day;
+        while (!this.index.isEmpty() && this.index.first().nextDay < day) {
+            Series series = this.index.pollFirst();
+            //Usually just the following occurrence, unless the index jumped far ahead
+            series.occurrence = firstOccurrence(series, day, Math.max(series.occurrence + 1, estimate(series.bill, day)));
+            series.nextDay = series.bill.dueDay(series.occurrence);
+            if (series.nextDay != Bill.NO_END) {
+                this.index.add(series);
+            }
+        }
+    }
+
+    /**
+     * Works out a series' first occurrence on or after a day and puts it in the index, unless it has ended.
+     */
+    private void place(Series series, int day) {
+        series.occurrence = firstOccurrence(series, day, estimate(series.bill, day));
+        series.nextDay = series.bill.dueDay(series.occurrence);
+        if (series.nextDay != Bill.NO_END) {
+            this.index.add(series);
+        }
+    }
+
+    /**
+     * Takes a series out of the index before it is changed.
+     */
+    private void unindex(Series series) {
+        if (series.nextDay != Bill.NO_END) {
+            this.index.remove(series);
+            series.nextDay = Bill.NO_END;
+        }
+    }
+
+    /**
+     * Estimates an occurrence of a bill due no later than a day from its average gap.
+     */
+    private static long estimate(Bill bill, int day) {
+        if (day <= bill.firstEpochDay() || bill.recurrence() == null) {
+            return 0;
+        }
+        return Math.max(0, (long)((day - bill.firstEpochDay()) / bill.recurrence().getDays()) - 1);
+    }
+
+    /**
+     * Steps from an occurrence no later than a day to the first one due on or after it that was not skipped.
+     */
+    private static long firstOccurrence(Series series, int day, long occurrence) {
+        Bill bill = series.bill;
+        int due = bill.dueDay(occurrence);
+        while (due != Bill.NO_END && (due < day || (series.skipped != null && series.skipped.contains(due)))) {
+            due = bill.dueDay(++occurrence);
+        }
+        return occurrence;
+    }
+
+    /**
+     * Adds a series' occurrences from the given one up to an end day, one at a time.
+     */
+    private static void expand(Series series, long occurrence, int end, List<BillOccurrence> due) {
+        for (int day = series.bill.dueDay(occurrence); day <= end; day = series.bill.dueDay(++occurrence)) {
+            if (series.skipped == null || !series.skipped.contains(day)) {
+                due.add(new BillOccurrence(series.bill, LocalDate.ofEpochDay(day)));
+            }
+        }
+    }
+}
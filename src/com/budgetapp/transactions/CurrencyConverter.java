@@ -0,0 +1,206 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.Currency;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Converts amounts in minor units between the app's currencies with exact integer arithmetic.
+ *
+ * Rates are held as an immutable RateTable swapped in whole when the rate feed changes, so a
+ * conversion, or a whole column of them, always uses one consistent set of rates. Each amount
+ * is multiplied by the numerator of the pair's exact ratio and divided by its denominator,
+ * rounding half to even, the usual choice for money, so the result is the feed's decimal rate
+ * applied exactly; only amounts large enough to overflow a long take a slower path.
+ */
+public class CurrencyConverter implements AutoCloseable {
+    //Rate feed file, overridable through a system property
+    private static final String FEED_PROPERTY = "spentwise.rates";
+    private static final Path DEFAULT_FEED = Paths.get(System.getProperty("user.home"), ".spentwise", "rates.properties");
+
+    //How often the feed file is checked for changes
+    private static final long POLL_SECONDS = 60;
+
+    private final Currency[] currencies;
+    private volatile RateTable rates;
+    private ScheduledExecutorService poller;
+    private FileTime feedModified;
+
+    /**
+     * Creates a converter for the currencies the settings offer, converting each only to itself until rates are loaded.
+     */
+    public CurrencyConverter() {
+        this(SettingsSchema.CURRENCY_VALUES);
+    }
+
+    /**
+     * Creates a converter for the given currencies.
+     */
+    public CurrencyConverter(Currency[] currencies) {
+        this.currencies = currencies.clone();
+        this.rates = RateTable.identity(this.currencies);
+    }
+
+    /**
+     * Retrieves the currency chosen in the active settings, parsed once by the settings cache.
+     */
+    public static Currency getDisplayCurrency() {
+        return SettingsManager.get(SettingsSchema.CURRENCY);
+    }
+
+    /**
+     * Retrieves the rates in use.
+     */
+    public RateTable getRates() {
+        return this.rates;
+    }
+
+    /**
+     * Replaces the rates with those read from a feed.
+     */
+    public void load(Reader feed) throws IOException {
+        this.rates = RateTable.read(feed, this.currencies);
+    }
+
+    /**
+     * Loads the rate feed file named by the spentwise.rates property, and reloads it whenever it changes.
+     */
+    public synchronized void watchFeed() {
+        this.watchFeed(Paths.get(System.getProperty(FEED_PROPERTY, DEFAULT_FEED.toString())));
+    }
+
+    /**
+     * Loads a rate feed file, and reloads it whenever it changes.
+     * A missing or unreadable file leaves the current rates in place.
+     */
+    public synchronized void watchFeed(Path file) {
+        if (this.poller != null) {
+            this.poller.shutdownNow();
+        }
+        this.feedModified = null;
+        this.poller = Executors.newSingleThreadScheduledExecutor((task) -> {
+            Thread thread = new Thread(task, "currency-rates");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.poller.scheduleWithFixedDelay(() -> this.reload(file), 0, POLL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stops watching the rate feed.
+     */
+    public synchronized void close() {
+        if (this.poller != null) {
+            this.poller.shutdownNow();
+        }
+    }
+
+    /**
+     * Converts an amount in minor units of one currency to the other.
+     * Throws IllegalArgumentException if either currency is unknown or there is no rate between them.
+     */
+    public long convert(long amount, Currency from, Currency to) {
+        RateTable rates = this.rates;
+        int fromIndex = index(rates, from);
+        int toIndex = index(rates, to);
+        return convert(amount, rates.numerator(fromIndex, toIndex), rates.denominator(fromIndex, toIndex));
+    }
+
+    /**
+     * Converts count amounts from source into target, starting at the given offsets, with one set of rates.
+     * The arrays may be the same to convert in place.
+     */
+    public void convert(long[] source, int sourceOffset, long[] target, int targetOffset, int count, Currency from, Currency to) {
+        RateTable rates = this.rates;
+        int fromIndex = index(rates, from);
+        int toIndex = index(rates, to);
+        long numerator = rates.numerator(fromIndex, toIndex);
+        long denominator = rates.denominator(fromIndex, toIndex);
+        if (numerator == denominator) {
+            System.arraycopy(source, sourceOffset, target, targetOffset, count);
+            return;
+        }
+        //Amounts within this bound cannot overflow, so the loop needs no 128 bit check
+        long limit = Long.MAX_VALUE / numerator;
+        for (int i = 0; i < count; ++i) {
+            long amount = source[sourceOffset + i];
+            target[targetOffset + i] = amount <= limit && amount >= -limit ? round(amount * numerator, denominator)
+                    : convert(amount, numerator, denominator);
+        }
+    }
+
+    /**
+     * Multiplies an amount by a ratio, rounding half to even.
+     */
+    private static long convert(long amount, long numerator, long denominator) {
+        long high = Math.multiplyHigh(amount, numerator);
+        long product = amount * numerator;
+        if (high != (product >> 63)) {
+            //Product does not fit in a long
+            BigInteger[] division = BigInteger.valueOf(amount).multiply(BigInteger.valueOf(numerator))
+                    .divideAndRemainder(BigInteger.valueOf(denominator));
+            //The remainder takes the product's sign, so compare twice its size with the denominator
+            int half = division[1].abs().shiftLeft(1).compareTo(BigInteger.valueOf(denominator));
+            BigInteger quotient = division[0];
+            if (half > 0 || (half == 0 && quotient.testBit(0))) {
+                quotient = quotient.add(BigInteger.valueOf(division[1].signum()));
+            }
+            return quotient.longValueExact();
+        }
+
+        return round(product, denominator);
+    }
+
+    /**
+     * Divides a product by a positive denominator, rounding half to even.
+     */
+    private static long round(long product, long denominator) {
+        //Floor and a remainder in [0, denominator), which holds for negative products too
+        long floor = Math.floorDiv(product, denominator);
+        long remainder = product - floor * denominator;
+        //The remainder is below 2^62, so doubling it cannot overflow
+        long twice = remainder << 1;
+        //Round up past the half, and at exactly the half only if the floor is odd
+        return twice > denominator || (twice == denominator && (floor & 1) != 0) ? floor + 1 : floor;
+    }
+
+    /**
+     * Finds a currency in a rate table, throwing IllegalArgumentException if it is not there.
+     */
+    private static int index(RateTable rates, Currency currency) {
+        int index = rates.indexOf(currency);
+        if (index < 0) {
+            throw new IllegalArgumentException("Unsupported currency " + currency);
+        }
+        return index;
+    }
+
+    /**
+     * Reloads the feed file if it changed since it was last read.
+     */
+    private void reload(Path file) {
+        try {
+            FileTime modified = Files.getLastModifiedTime(file);
+            if (modified.equals(this.feedModified)) {
+                return;
+            }
+            //Remember the version even if it fails to load, so a bad feed is reported once per change
+            this.feedModified = modified;
+            try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                this.load(reader);
+            }
+        } catch (NoSuchFileException e) {
+            //No feed yet, keep the current rates
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Could not load currency rates from " + file + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,30 @@
+/**
+ * File formats transactions can be exported to.
+ */
+public enum ExportFormat {
+    CSV("CSV", "csv"),
+    EXCEL("Excel", "xlsx"),
+    PDF("PDF", "pdf");
+
+    private final String label;
+    private final String extension;
+
+    ExportFormat(String label, String extension) {
+        this.label = label;
+        this.extension = extension;
+    }
+
+    /**
+     * Retrieves the name shown to the user.
+     */
+    public String getLabel() {
+        return this.label;
+    }
+
+    /**
+     * Retrieves the file name extension, without the dot.
+     */
+    public String getExtension() {
+        return this.extension;
+    }
+}
@@ -0,0 +1,6 @@
+/**
+ * Outcome of importing a statement: how many records were read, how many became transactions,
+ * how many matched transactions already stored, and how many could not be parsed.
+ */
+public record ImportResult(int read, int imported, int duplicates, int rejected) {
+}
@@ -0,0 +1,222 @@
+import java.time.Clock;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps running spending totals per budget category and period, and reports when a limit is neared.
+ *
+ * Each transaction adds its amount to its category's weekly, monthly and yearly totals, so
+ * switching the default view needs no recount. Totals are keyed by the period the transaction
+ * is dated in, so back-dated transactions and refunds land in the right period. Only the
+ * current period of the active view raises crossings, and each threshold fires at most once
+ * per category and period: a refund that drops spending back below a threshold does not make
+ * it fire again.
+ */
+public class OverspendDetector implements TransactionListener {
+    //Percentages of a limit that raise a crossing
+    public static final int[] DEFAULT_THRESHOLDS = new int[]{80, 100, 120};
+
+    //Total slots: amount in cents and a mask of the thresholds already fired
+    private static final int TOTAL = 0;
+    private static final int FIRED = 1;
+
+    private final int[] thresholds;
+    private final Clock clock;
+    private final OverspendListener listener;
+    private final Map<String, Integer> categoryIds = new HashMap<>();
+    private final List<String> categories = new ArrayList<>();
+    private final Map<Long, long[]> totals = new HashMap<>();
+    private long[] limits = new long[0];
+    private int granularity = Periods.MONTH;
+
+    /**
+     * A crossing collected under the lock, to be passed to the listener after it.
+     */
+    private record Crossing(String category, int percent, long spentCents, long limitCents, LocalDate periodStart) {
+    }
+
+    /**
+     * Creates a detector with the default thresholds and the system clock.
+     */
+    public OverspendDetector(OverspendListener listener) {
+        this(listener, DEFAULT_THRESHOLDS, Clock.systemDefaultZone());
+    }
+
+    /**
+     * Creates a detector with the given thresholds, as percentages of each limit.
+     */
+    public OverspendDetector(OverspendListener listener, int[] thresholds, Clock clock) {
+        if (thresholds.length > Long.SIZE) {
+            throw new IllegalArgumentException("Too many thresholds");
+        }
+        this.listener = listener;
+        this.thresholds = thresholds.clone();
+        Arrays.sort(this.thresholds);
+        this.clock = clock;
+    }
+
+    /**
+     * Sets the period totals are compared over from a default view name. Custom falls back to monthly.
+     */
+    public synchronized void setView(String view) {
+        int ordinal = SettingsSchema.ordinal(SettingsSchema.VIEWS, view);
+        this.granularity = ordinal == Periods.WEEK || ordinal == Periods.YEAR ? ordinal : Periods.MONTH;
+    }
+
+    /**
+     * Keeps the period in line with the default view in the active settings.
+     */
+    public void followActiveSettings() {
+        this.setView(SettingsManager.getDefaultView());
+        SettingsManager.subscribe((event) -> this.setView(SettingsManager.getDefaultView()), SettingsManager.KEY_DEFAULT_VIEW);
+    }
+
+    /**
+     * Sets a category's limit per period in cents, or 0 to remove it.
+     * Spending already over a new, lower limit fires its crossings straight away.
+     */
+    public void setLimit(String category, long limitCents) {
+        List<Crossing> crossings = new ArrayList<>();
+        synchronized (this) {
+            int id = this.categoryId(category);
+            this.limits[id] = limitCents;
+            int period = Periods.of(this.granularity, this.today());
+            long[] total = this.totals.get(key(this.granularity, id, period));
+            if (total != null) {
+                this.check(id, period, total, crossings);
+            }
+        }
+        this.fire(crossings);
+    }
+
+    /**
+     * Retrieves a category's limit per period in cents, or 0 if it has none.
+     */
+    public synchronized long getLimit(String category) {
+        Integer id = this.categoryIds.get(category);
+        return id == null ? 0 : this.limits[id];
+    }
+
+    /**
+     * Adds a transaction to its category's totals, firing any threshold it takes the current period past.
+     */
+    public void record(Transaction transaction) {
+        this.apply(transaction, transaction.amountCents());
+    }
+
+    /**
+     * Takes a deleted transaction back out of its category's totals.
+     */
+    public void remove(Transaction transaction) {
+        this.apply(transaction, -transaction.amountCents());
+    }
+
+    /**
+     * Records a transaction added to a store.
+     */
+    public void transactionAdded(Transaction transaction) {
+        this.record(transaction);
+    }
+
+    /**
+     * Takes a transaction removed from a store back out.
+     */
+    public void transactionRemoved(Transaction transaction) {
+        this.remove(transaction);
+    }
+
+    /**
+     * Retrieves the amount spent in a category over the active view's period holding the given date.
+     */
+    public synchronized long getSpent(String category, LocalDate date) {
+        Integer id = this.categoryIds.get(category);
+        if (id == null) {
+            return 0;
+        }
+        long[] total = this.totals.get(key(this.granularity, id, Periods.of(this.granularity, (int)date.toEpochDay())));
+        return total == null ? 0 : total[TOTAL];
+    }
+
+    /**
+     * Adds an amount to every period total of a transaction's category.
+     */
+    private void apply(Transaction transaction, long amountCents) {
+        List<Crossing> crossings = new ArrayList<>(0);
+        synchronized (this) {
+            int id = this.categoryId(transaction.category());
+            int current = Periods.of(this.granularity, this.today());
+            for (int granularity = Periods.MONTH; granularity <= Periods.YEAR; ++granularity) {
+                int period = Periods.of(granularity, transaction.epochDay());
+                long[] total = this.totals.computeIfAbsent(key(granularity, id, period), (k) -> new long[2]);
+                total[TOTAL] += amountCents;
+                if (granularity == this.granularity && period == current && amountCents > 0) {
+                    this.check(id, period, total, crossings);
+                }
+            }
+        }
+        this.fire(crossings);
+    }
+
+    /**
+     * Marks and collects every threshold a period total has reached for the first time.
+     */
+    private void check(int id, int period, long[] total, List<Crossing> crossings) {
+        long limit = this.limits[id];
+        if (limit <= 0) {
+            return;
+        }
+        for (int i = 0; i < this.thresholds.length; ++i) {
+            long bit = 1L << i;
+            //Compare spent / limit >= threshold / 100 without dividing
+            if ((total[FIRED] & bit) == 0 && total[TOTAL] * 100 >= limit * this.thresholds[i]) {
+                total[FIRED] |= bit;
+                crossings.add(new Crossing(this.categories.get(id), this.thresholds[i], total[TOTAL], limit,
+                        Periods.startDate(this.granularity, period)));
+            }
+        }
+    }
+
+    /**
+     * Passes collected crossings to the listener outside the lock.
+     */
+    private void fire(List<Crossing> crossings) {
+        for (Crossing crossing : crossings) {
+            this.listener.thresholdCrossed(crossing.category(), crossing.percent(), crossing.spentCents(),
+                    crossing.limitCents(), crossing.periodStart());
+        }
+    }
+
+    /**
+     * Retrieves the dense id of a category, assigning one on first use.
+     */
+    private int categoryId(String category) {
+        Integer id = this.categoryIds.get(category);
+        if (id == null) {
+            id = this.categories.size();
+            this.categoryIds.put(category, id);
+            this.categories.add(category);
+            if (id >= this.limits.length) {
+                this.limits = Arrays.copyOf(this.limits, Math.max(8, this.limits.length * 2));
+            }
+        }
+        return id;
+    }
+
+    /**
+     * Retrieves today's date as an epoch day.
+     */
+    private int today() {
+        return (int)LocalDate.now(this.clock).toEpochDay();
+    }
+
+    /**
+     * Packs a granularity, category id and period number into a map key.
+     */
+    private static long key(int granularity, int id, int period) {
+        return ((long)id << 34) | ((long)granularity << 32) | (period & 0xffffffffL);
+    }
+}
@@ -0,0 +1,12 @@
+import java.time.LocalDate;
+import java.util.EventListener;
+
+/**
+ * Receives budget threshold crossings from the OverspendDetector.
+ */
+public interface OverspendListener extends EventListener {
+    /**
+     * Called once per category, period and threshold when spending first reaches the given percentage of the limit.
+     */
+    void thresholdCrossed(String category, int percent, long spentCents, long limitCents, LocalDate periodStart);
+}
@@ -0,0 +1,106 @@
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+
+/**
+ * Maps epoch days to week, month and year numbers and back without allocating.
+ * Weeks start on Monday and are numbered from the week holding 1970-01-01; months are
+ * numbered as year * 12 + month - 1; days are their own epoch day.
+ */
+public final class Periods {
+    //Period granularities, numbered like the first three entries of SettingsSchema.VIEWS
+    public static final int MONTH = 0;
+    public static final int WEEK = 1;
+    public static final int YEAR = 2;
+    public static final int DAY = 3;
+
+    //1970-01-01 was a Thursday, three days after the Monday starting week 0
+    private static final int EPOCH_WEEKDAY_OFFSET = DayOfWeek.THURSDAY.getValue() - DayOfWeek.MONDAY.getValue();
+
+    private Periods() {
+    }
+
+    /**
+     * Retrieves the number of the period holding a day.
+     */
+    public static int of(int granularity, int epochDay) {
+        return switch (granularity) {
+            case MONTH -> month(epochDay);
+            case WEEK -> week(epochDay);
+            case YEAR -> year(epochDay);
+            case DAY -> epochDay;
+            default -> throw new IllegalArgumentException("Unknown granularity " + granularity);
+        };
+    }
+
+    /**
+     * Retrieves the first day of a period.
+     */
+    public static int start(int granularity, int period) {
+        return switch (granularity) {
+            case MONTH -> monthStart(period);
+            case WEEK -> weekStart(period);
+            case YEAR -> monthStart(period * 12);
+            case DAY -> period;
+            default -> throw new IllegalArgumentException("Unknown granularity " + granularity);
+        };
+    }
+
+    /**
+     * Retrieves the week holding a day.
+     */
+    public static int week(int epochDay) {
+        return Math.floorDiv(epochDay + EPOCH_WEEKDAY_OFFSET, 7);
+    }
+
+    /**
+     * Retrieves the first day of a week.
+     */
+    public static int weekStart(int week) {
+        return week * 7 - EPOCH_WEEKDAY_OFFSET;
+    }
+
+    /**
+     * Retrieves the month holding a day.
+     */
+    public static int month(int epochDay) {
+        //Civil calendar from days, counting years from March so leap days fall at the end
+        int days = epochDay + 719468;
+        int era = Math.floorDiv(days, 146097);
+        int dayOfEra = days - era * 146097;
+        int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        int shiftedMonth = (5 * dayOfYear + 2) / 153;
+        int month = shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9;
+        int year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+        return year * 12 + month - 1;
+    }
+
+    /**
+     * Retrieves the first day of a month.
+     */
+    public static int monthStart(int month) {
+        int year = Math.floorDiv(month, 12);
+        int monthOfYear = month - year * 12 + 1;
+        //Days from civil, the inverse of month()
+        year -= monthOfYear <= 2 ? 1 : 0;
+        int era = Math.floorDiv(year, 400);
+        int yearOfEra = year - era * 400;
+        int dayOfYear = (153 * (monthOfYear > 2 ? monthOfYear - 3 : monthOfYear + 9) + 2) / 5;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    /**
+     * Retrieves the year holding a day.
+     */
+    public static int year(int epochDay) {
+        return Math.floorDiv(month(epochDay), 12);
+    }
+
+    /**
+     * Retrieves the first day of a period as a date.
+     */
+    public static LocalDate startDate(int granularity, int period) {
+        return LocalDate.ofEpochDay(start(granularity, period));
+    }
+}
@@ -0,0 +1,165 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Currency;
+import java.util.Properties;
+
+/**
+ * Immutable exchange rates between the currencies the app offers, as one dense table of pair ratios.
+ *
+ * The ratio for a pair turns minor units of one currency into minor units of the other. It is
+ * the exact quotient of the feed's decimal rates, kept as a reduced numerator and denominator,
+ * so converting cents to yen or back is one multiplication and one division with nothing lost
+ * to a binary scale.
+ */
+public final class RateTable {
+    //Largest numerator or denominator a ratio may have
+    private static final int MAX_BITS = 62;
+
+    //Denominator of a pair without a known rate
+    private static final long UNKNOWN = 0;
+
+    private final Currency[] currencies;
+    private final long[] numerators;
+    private final long[] denominators;
+    private final Instant asOf;
+
+    /**
+     * Creates a table from pair ratios laid out as from * currencies + to.
+     */
+    private RateTable(Currency[] currencies, long[] numerators, long[] denominators, Instant asOf) {
+        this.currencies = currencies;
+        this.numerators = numerators;
+        this.denominators = denominators;
+        this.asOf = asOf;
+    }
+
+    /**
+     * Creates a table that only converts each currency to itself.
+     */
+    public static RateTable identity(Currency[] currencies) {
+        long[] numerators = new long[currencies.length * currencies.length];
+        long[] denominators = new long[currencies.length * currencies.length];
+        for (int i = 0; i < currencies.length; ++i) {
+            numerators[i * currencies.length + i] = 1;
+            denominators[i * currencies.length + i] = 1;
+        }
+        return new RateTable(currencies.clone(), numerators, denominators, Instant.EPOCH);
+    }
+
+    /**
+     * Reads a rate feed: a properties file naming a base currency, an optional asOf instant, and
+     * how much of each other currency one unit of the base buys, e.g. base=USD, EUR=0.92.
+     * Currencies the feed does not mention can only be converted to themselves.
+     */
+    public static RateTable read(Reader feed, Currency[] currencies) throws IOException {
+        Properties properties = new Properties();
+        properties.load(feed);
+        String base = properties.getProperty("base");
+        if (base == null) {
+            throw new IOException("Rate feed has no base currency");
+        }
+
+        BigDecimal[] perBase = new BigDecimal[currencies.length];
+        for (int i = 0; i < currencies.length; ++i) {
+            String code = currencies[i].getCurrencyCode();
+            String rate = code.equals(base) ? "1" : properties.getProperty(code);
+            if (rate == null) {
+                continue;
+            }
+            try {
+                perBase[i] = new BigDecimal(rate.trim());
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid rate for " + code + ": " + rate);
+            }
+            if (perBase[i].signum() <= 0) {
+                throw new IOException("Invalid rate for " + code + ": " + rate);
+            }
+        }
+
+        Instant asOf;
+        try {
+            String time = properties.getProperty("asOf");
+            asOf = time == null ? Instant.now() : Instant.parse(time.trim());
+        } catch (DateTimeParseException e) {
+            throw new IOException("Invalid asOf time in rate feed", e);
+        }
+
+        //Cross every pair through the base as an exact fraction of the two decimal rates
+        int n = currencies.length;
+        long[] numerators = new long[n * n];
+        long[] denominators = new long[n * n];
+        for (int from = 0; from < n; ++from) {
+            for (int to = 0; to < n; ++to) {
+                if (from == to) {
+                    numerators[from * n + to] = 1;
+                    denominators[from * n + to] = 1;
+                } else if (perBase[from] != null && perBase[to] != null) {
+                    //to / from in minor units is (to.unscaled / from.unscaled) * 10^exponent
+                    int exponent = perBase[from].scale() - perBase[to].scale()
+                            + currencies[to].getDefaultFractionDigits() - currencies[from].getDefaultFractionDigits();
+                    BigInteger numerator = perBase[to].unscaledValue();
+                    BigInteger denominator = perBase[from].unscaledValue();
+                    if (exponent >= 0) {
+                        numerator = numerator.multiply(BigInteger.TEN.pow(exponent));
+                    } else {
+                        denominator = denominator.multiply(BigInteger.TEN.pow(-exponent));
+                    }
+                    BigInteger gcd = numerator.gcd(denominator);
+                    numerator = numerator.divide(gcd);
+                    denominator = denominator.divide(gcd);
+                    if (numerator.bitLength() > MAX_BITS || denominator.bitLength() > MAX_BITS) {
+                        throw new IOException("Rate between " + currencies[from] + " and " + currencies[to]
+                                + " has too many digits");
+                    }
+                    numerators[from * n + to] = numerator.longValue();
+                    denominators[from * n + to] = denominator.longValue();
+                }
+            }
+        }
+        return new RateTable(currencies.clone(), numerators, denominators, asOf);
+    }
+
+    /**
+     * Retrieves the index of a currency in the table, or -1 if the table does not hold it.
+     */
+    public int indexOf(Currency currency) {
+        for (int i = 0; i < this.currencies.length; ++i) {
+            if (this.currencies[i].equals(currency)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Retrieves the numerator of the ratio from one currency index to another.
+     * Throws IllegalArgumentException if the table has no rate for the pair.
+     */
+    public long numerator(int from, int to) {
+        this.denominator(from, to);
+        return this.numerators[from * this.currencies.length + to];
+    }
+
+    /**
+     * Retrieves the denominator of the ratio from one currency index to another, always positive.
+     * Throws IllegalArgumentException if the table has no rate for the pair.
+     */
+    public long denominator(int from, int to) {
+        long denominator = this.denominators[from * this.currencies.length + to];
+        if (denominator == UNKNOWN) {
+            throw new IllegalArgumentException("No rate from " + this.currencies[from] + " to " + this.currencies[to]);
+        }
+        return denominator;
+    }
+
+    /**
+     * Retrieves when the rates were published.
+     */
+    public Instant getAsOf() {
+        return this.asOf;
+    }
+}
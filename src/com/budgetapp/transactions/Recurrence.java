@@ -0,0 +1,72 @@
+import java.time.LocalDate;
+
+/**
+ * How often a charge or bill repeats, with the typical gap between occurrences.
+ */
+public enum Recurrence {
+    WEEKLY("Weekly", 7, 1),
+    MONTHLY("Monthly", 30.44, 3),
+    ANNUAL("Annual", 365.25, 10);
+
+    private final String label;
+    private final double days;
+    private final double tolerance;
+
+    Recurrence(String label, double days, double tolerance) {
+        this.label = label;
+        this.days = days;
+        this.tolerance = tolerance;
+    }
+
+    /**
+     * Retrieves the name shown to the user.
+     */
+    public String getLabel() {
+        return this.label;
+    }
+
+    /**
+     * Retrieves the average number of days between occurrences.
+     */
+    public double getDays() {
+        return this.days;
+    }
+
+    /**
+     * Retrieves how many days an occurrence may drift from the average and still count as on time.
+     */
+    public double getTolerance() {
+        return this.tolerance;
+    }
+
+    /**
+     * Retrieves the occurrence after the given one, keeping the day of the month where the calendar allows.
+     */
+    public LocalDate next(LocalDate date) {
+        return this.after(date, 1);
+    }
+
+    /**
+     * Retrieves the occurrence the given number of steps after an anchor date.
+     * Stepping from the anchor rather than the previous occurrence keeps a charge on the 31st from drifting to the 28th.
+     */
+    public LocalDate after(LocalDate anchor, long steps) {
+        return switch (this) {
+            case WEEKLY -> anchor.plusWeeks(steps);
+            case MONTHLY -> anchor.plusMonths(steps);
+            case ANNUAL -> anchor.plusYears(steps);
+        };
+    }
+
+    /**
+     * Finds the recurrence whose typical gap is within tolerance of an average gap in days, or null if none is.
+     */
+    public static Recurrence nearest(double averageDays) {
+        for (Recurrence recurrence : values()) {
+            if (Math.abs(averageDays - recurrence.days) <= recurrence.tolerance) {
+                return recurrence;
+            }
+        }
+        return null;
+    }
+}
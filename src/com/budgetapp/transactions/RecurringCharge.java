@@ -0,0 +1,9 @@
+import java.time.LocalDate;
+
+/**
+ * A charge that appears to repeat, as inferred by the RecurringChargeDetector.
+ * Confidence runs from 0 to 1 and grows with the number and regularity of past charges.
+ */
+public record RecurringCharge(String merchant, long amountCents, Recurrence recurrence, double confidence,
+                              int occurrences, LocalDate lastDate, LocalDate nextDate) {
+}
@@ -0,0 +1,453 @@
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Finds subscriptions and other repeating charges as transactions arrive.
+ *
+ * Charges are grouped into series by normalized merchant name and an amount bucket about 5%
+ * wide, neighbouring buckets included, so small price changes and taxes stay in one series.
+ * Each series keeps its first and last dates, its sorted charge dates and running sums of the
+ * gaps between charges, from which the recurrence, its regularity and the next expected date
+ * follow without looking at past transactions again. A charge from an older statement that
+ * lands between known charges splits the gap around it, so statements imported out of order
+ * give the same sums as in order, and a removed charge joins the gaps either side back up.
+ * Series live in open addressed primitive
+ * arrays keyed by a 64 bit hash, so each transaction is a name hash and a few array probes.
+ */
+public class RecurringChargeDetector implements TransactionListener {
+    //Amount buckets per factor of e, about 5% each
+    private static final double BUCKETS_PER_E = 20.5;
+
+    //Words in merchant names that say nothing about the merchant
+    private static final String[] NOISE = new String[]{"inc", "ltd", "llc", "pty", "co", "com", "www", "pos",
+            "purchase", "payment", "debit", "card", "recurring"};
+
+    private static final int LONGEST_NOISE = 9;
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    //Series table: one stride of longs per series, 64 bytes so the sums of a record share a cache line.
+    //Charge days are kept apart in one sorted array per series, read only when a charge is added or removed
+    private static final int STRIDE = 8;
+    private static final int KEY = 0;
+    private static final int COUNTS = 1;
+    private static final int DAYS = 2;
+    private static final int GAP_SUM = 3;
+    private static final int GAP_SQUARES = 4;
+    private static final int AMOUNT_SUM = 5;
+    private static final int DAY_COUNT = 6;
+
+    //A key of 0 marks an empty slot; counts hold charges and gaps, days the first and last epoch day
+    private long[] table = new long[1024 * STRIDE];
+    private String[] merchants = new String[1024];
+    private int[][] days = new int[1024][];
+    private int capacity = 1024;
+    private int size;
+
+    /**
+     * Adds a transaction to its series. Refunds and merchants without a name are ignored.
+     */
+    public synchronized void record(Transaction transaction) {
+        long amount = transaction.amountCents();
+        long merchant = merchantHash(transaction.merchant());
+        if (amount <= 0 || merchant == 0) {
+            return;
+        }
+
+        int bucket = bucket(amount);
+        int slot = this.find(key(merchant, bucket));
+        if (slot < 0) {
+            slot = this.find(key(merchant, bucket - 1));
+        }
+        if (slot < 0) {
+            slot = this.find(key(merchant, bucket + 1));
+        }
+        if (slot < 0) {
+            slot = this.insert(key(merchant, bucket), normalize(transaction.merchant()));
+        }
+
+        int base = slot * STRIDE;
+        int day = transaction.epochDay();
+        if (count(this.table, base) == 0) {
+            this.table[base + DAYS] = ((long)day << 32) | (day & 0xffffffffL);
+        } else {
+            this.addDay(slot, day);
+        }
+        this.table[base + COUNTS] += 1L << 32;
+        this.table[base + AMOUNT_SUM] += amount;
+    }
+
+    /**
+     * Records a transaction added to a store.
+     */
+    public void transactionAdded(Transaction transaction) {
+        this.record(transaction);
+    }
+
+    /**
+     * Takes a transaction back out of its series, as if it had never been recorded.
+     * A transaction that no series holds, such as a refund, is ignored.
+     */
+    public synchronized void transactionRemoved(Transaction transaction) {
+        long amount = transaction.amountCents();
+        long merchant = merchantHash(transaction.merchant());
+        if (amount <= 0 || merchant == 0) {
+            return;
+        }
+
+        //Any of the three neighbouring buckets may hold it, so look for the one with a charge on its day
+        int bucket = bucket(amount);
+        int day = transaction.epochDay();
+        for (int offset : new int[]{0, -1, 1}) {
+            int slot = this.find(key(merchant, bucket + offset));
+            if (slot >= 0 && this.removeDay(slot, day)) {
+                int base = slot * STRIDE;
+                this.table[base + COUNTS] -= 1L << 32;
+                this.table[base + AMOUNT_SUM] -= amount;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Retrieves every series that looks recurring as of a date, with at least the given confidence.
+     */
+    public synchronized List<RecurringCharge> getRecurringCharges(LocalDate asOf, double minConfidence) {
+        List<RecurringCharge> charges = new ArrayList<>();
+        for (int slot = 0; slot < this.capacity; ++slot) {
+            if (this.table[slot * STRIDE + KEY] != 0 && gaps(this.table, slot * STRIDE) > 0) {
+                RecurringCharge charge = this.charge(slot, asOf);
+                if (charge != null && charge.confidence() >= minConfidence) {
+                    charges.add(charge);
+                }
+            }
+        }
+        charges.sort((a, b) -> a.nextDate().compareTo(b.nextDate()));
+        return charges;
+    }
+
+    /**
+     * Retrieves the recurring charges expected between two dates inclusive, for reminders.
+     */
+    public List<RecurringCharge> getChargesDue(LocalDate from, LocalDate to, double minConfidence) {
+        List<RecurringCharge> due = new ArrayList<>();
+        for (RecurringCharge charge : this.getRecurringCharges(from, minConfidence)) {
+            if (!charge.nextDate().isAfter(to)) {
+                due.add(charge);
+            }
+        }
+        return due;
+    }
+
+    /**
+     * Retrieves the number of series being tracked.
+     */
+    public synchronized int size() {
+        return this.size;
+    }
+
+    /**
+     * Infers the recurrence of a series, or returns null if its gaps match none.
+     */
+    private RecurringCharge charge(int slot, LocalDate asOf) {
+        int base = slot * STRIDE;
+        int gaps = gaps(this.table, base);
+        double mean = (double)this.table[base + GAP_SUM] / gaps;
+        Recurrence recurrence = Recurrence.nearest(mean);
+        if (recurrence == null) {
+            return null;
+        }
+
+        //Regular gaps and more of them make for higher confidence
+        double deviation = Math.sqrt(Math.max(0, (double)this.table[base + GAP_SQUARES] / gaps - mean * mean));
+        double regularity = Math.max(0, 1 - deviation / (2 * recurrence.getTolerance()));
+        double support = gaps / (gaps + 1.0);
+        double confidence = regularity * support;
+
+        //Halve it for each expected charge that has not turned up
+        LocalDate last = LocalDate.ofEpochDay((int)this.table[base + DAYS]);
+        long overdue = (long)((asOf.toEpochDay() - last.toEpochDay() - recurrence.getTolerance()) / recurrence.getDays());
+        if (overdue > 0) {
+            confidence = Math.scalb(confidence, (int)-Math.min(overdue, 64));
+        }
+
+        LocalDate next = recurrence.next(last);
+        for (long steps = 2; next.isBefore(asOf); ++steps) {
+            next = recurrence.after(last, steps);
+        }
+        return new RecurringCharge(this.merchants[slot], Math.round((double)this.table[base + AMOUNT_SUM] / count(this.table, base)),
+                recurrence, confidence, count(this.table, base), last, next);
+    }
+
+    /**
+     * Adds the gaps a new charge day makes in a series that already has a charge.
+     * A day matching a known charge adds no gap, but is still kept so that removing either leaves the other.
+     */
+    private void addDay(int slot, int day) {
+        int base = slot * STRIDE;
+        int[] days = this.days[slot];
+        if (days == null) {
+            //Charge days are kept from the second charge on, starting with the first
+            days = new int[4];
+            days[0] = (int)(this.table[base + DAYS] >> 32);
+            this.days[slot] = days;
+            this.table[base + DAY_COUNT] = 1;
+        }
+        int size = (int)this.table[base + DAY_COUNT];
+        int at = Arrays.binarySearch(days, 0, size, day);
+        if (at < 0) {
+            at = -at - 1;
+            if (at == size) {
+                this.addGap(base, day - days[size - 1]);
+            } else if (at == 0) {
+                this.addGap(base, days[0] - day);
+            } else {
+                //Split the gap between the charges either side into two
+                long before = day - days[at - 1];
+                long after = days[at] - day;
+                long whole = before + after;
+                this.table[base + COUNTS]++;
+                this.table[base + GAP_SQUARES] += before * before + after * after - whole * whole;
+            }
+        }
+
+        if (size == days.length) {
+            days = Arrays.copyOf(days, size * 2);
+            this.days[slot] = days;
+        }
+        System.arraycopy(days, at, days, at + 1, size - at);
+        days[at] = day;
+        this.table[base + DAY_COUNT] = size + 1;
+        this.table[base + DAYS] = ((long)days[0] << 32) | (days[size] & 0xffffffffL);
+    }
+
+    /**
+     * Removes a charge day from a series, taking out the gaps it made, or returns false if the series
+     * has no charge on that day. The caller takes the charge out of the count and amount.
+     */
+    private boolean removeDay(int slot, int day) {
+        int base = slot * STRIDE;
+        int[] days = this.days[slot];
+        if (days == null) {
+            //A lone charge has no gaps and only its day in the table
+            return count(this.table, base) == 1 && (int)this.table[base + DAYS] == day;
+        }
+        int size = (int)this.table[base + DAY_COUNT];
+        int at = Arrays.binarySearch(days, 0, size, day);
+        if (at < 0) {
+            return false;
+        }
+
+        //Another charge on the same day keeps the gaps as they are, and the last charge left has none
+        boolean shared = (at > 0 && days[at - 1] == day) || (at < size - 1 && days[at + 1] == day);
+        if (!shared && size > 1) {
+            if (at == 0) {
+                this.removeGap(base, days[1] - day);
+            } else if (at == size - 1) {
+                this.removeGap(base, day - days[at - 1]);
+            } else {
+                //Join the two gaps either side back into one
+                long before = day - days[at - 1];
+                long after = days[at + 1] - day;
+                long whole = before + after;
+                this.table[base + COUNTS]--;
+                this.table[base + GAP_SQUARES] += whole * whole - before * before - after * after;
+            }
+        }
+
+        if (size == 1) {
+            //Start over as an empty series, so the next charge sets its days afresh
+            this.days[slot] = null;
+            this.table[base + DAY_COUNT] = 0;
+            return true;
+        }
+        System.arraycopy(days, at + 1, days, at, size - at - 1);
+        this.table[base + DAY_COUNT] = size - 1;
+        this.table[base + DAYS] = ((long)days[0] << 32) | (days[size - 2] & 0xffffffffL);
+        return true;
+    }
+
+    /**
+     * Adds a gap in days between two charges of a series.
+     */
+    private void addGap(int base, long gap) {
+        this.table[base + COUNTS]++;
+        this.table[base + GAP_SUM] += gap;
+        this.table[base + GAP_SQUARES] += gap * gap;
+    }
+
+    /**
+     * Takes a gap in days between two charges back out of a series.
+     */
+    private void removeGap(int base, long gap) {
+        this.table[base + COUNTS]--;
+        this.table[base + GAP_SUM] -= gap;
+        this.table[base + GAP_SQUARES] -= gap * gap;
+    }
+
+    /**
+     * Retrieves the number of charges in the series at a table offset.
+     */
+    private static int count(long[] table, int base) {
+        return (int)(table[base + COUNTS] >>> 32);
+    }
+
+    /**
+     * Retrieves the number of gaps recorded for the series at a table offset.
+     */
+    private static int gaps(long[] table, int base) {
+        return (int)table[base + COUNTS];
+    }
+
+    /**
+     * Finds the slot of a key, or returns -1 if it is not in the table.
+     */
+    private int find(long key) {
+        int mask = this.capacity - 1;
+        for (int slot = (int)key & mask; this.table[slot * STRIDE + KEY] != 0; slot = (slot + 1) & mask) {
+            if (this.table[slot * STRIDE + KEY] == key) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Adds an empty series for a key, growing the table to keep it at most half full.
+     */
+    private int insert(long key, String merchant) {
+        if ((this.size + 1) * 2 > this.capacity) {
+            this.grow();
+        }
+        int mask = this.capacity - 1;
+        int slot = (int)key & mask;
+        while (this.table[slot * STRIDE + KEY] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        this.table[slot * STRIDE + KEY] = key;
+        this.merchants[slot] = merchant;
+        this.size++;
+        return slot;
+    }
+
+    /**
+     * Doubles the table and rehashes every series into it.
+     */
+    private void grow() {
+        long[] oldTable = this.table;
+        String[] oldMerchants = this.merchants;
+        int[][] oldDays = this.days;
+        int oldCapacity = this.capacity;
+
+        this.capacity = oldCapacity * 2;
+        this.table = new long[this.capacity * STRIDE];
+        this.merchants = new String[this.capacity];
+        this.days = new int[this.capacity][];
+
+        int mask = this.capacity - 1;
+        for (int old = 0; old < oldCapacity; ++old) {
+            long key = oldTable[old * STRIDE + KEY];
+            if (key == 0) {
+                continue;
+            }
+            int slot = (int)key & mask;
+            while (this.table[slot * STRIDE + KEY] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            System.arraycopy(oldTable, old * STRIDE, this.table, slot * STRIDE, STRIDE);
+            this.merchants[slot] = oldMerchants[old];
+            this.days[slot] = oldDays[old];
+        }
+    }
+
+    /**
+     * Retrieves the amount bucket of a positive amount in cents.
+     */
+    private static int bucket(long amount) {
+        return (int)Math.round(Math.log(amount) * BUCKETS_PER_E);
+    }
+
+    /**
+     * Combines a merchant hash and amount bucket into a non-zero, well spread key.
+     */
+    private static long key(long merchant, int bucket) {
+        long key = merchant + bucket * 0x9e3779b97f4a7c15L;
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        return key == 0 ? 1 : key;
+    }
+
+    /**
+     * Hashes the words of a merchant name, ignoring case, digits, punctuation and noise words,
+     * so "NETFLIX.COM 0042" and "Netflix" hash alike. Returns 0 for a name with no words.
+     */
+    private static long merchantHash(String merchant) {
+        if (merchant == null) {
+            return 0;
+        }
+        long hash = FNV_OFFSET;
+        boolean any = false;
+        int i = 0;
+        while (i < merchant.length()) {
+            while (i < merchant.length() && !Character.isLetter(merchant.charAt(i))) {
+                ++i;
+            }
+            int start = i;
+            while (i < merchant.length() && Character.isLetter(merchant.charAt(i))) {
+                ++i;
+            }
+            if (i > start && !isNoise(merchant, start, i)) {
+                for (int j = start; j < i; ++j) {
+                    hash = (hash ^ Character.toLowerCase(merchant.charAt(j))) * FNV_PRIME;
+                }
+                hash = (hash ^ ' ') * FNV_PRIME;
+                any = true;
+            }
+        }
+        return any ? hash : 0;
+    }
+
+    /**
+     * Builds the display form of a merchant name from the same words the hash uses.
+     */
+    private static String normalize(String merchant) {
+        StringBuilder name = new StringBuilder();
+        int i = 0;
+        while (i < merchant.length()) {
+            while (i < merchant.length() && !Character.isLetter(merchant.charAt(i))) {
+                ++i;
+            }
+            int start = i;
+            while (i < merchant.length() && Character.isLetter(merchant.charAt(i))) {
+                ++i;
+            }
+            if (i > start && !isNoise(merchant, start, i)) {
+                if (!name.isEmpty()) {
+                    name.append(' ');
+                }
+                name.append(Character.toUpperCase(merchant.charAt(start)));
+                name.append(merchant.substring(start + 1, i).toLowerCase());
+            }
+        }
+        return name.toString();
+    }
+
+    /**
+     * Checks whether a word of a merchant name is a noise word.
+     */
+    private static boolean isNoise(String merchant, int start, int end) {
+        if (end - start > LONGEST_NOISE) {
+            return false;
+        }
+        for (String noise : NOISE) {
+            if (noise.length() == end - start && merchant.regionMatches(true, start, noise, 0, noise.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,209 @@
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Spending totals per category, rolled up by day, week, month and year as transactions change.
+ *
+ * Each category keeps totals for every granularity in pages of consecutive periods, made only
+ * where there are transactions, so a Monthly, Weekly or Yearly view reads one bucket per category
+ * and an outlier date far from the rest costs a page, not the years in between. A Custom range
+ * is split into the whole years it covers, then the whole months in what is left at either edge,
+ * then whole weeks, then single days, so even a range of many years takes a few dozen bucket
+ * reads per category.
+ */
+public class RollupCube implements TransactionListener {
+    //Granularities from coarsest to finest, as used to split a custom range
+    private static final int[] LEVELS = new int[]{Periods.YEAR, Periods.MONTH, Periods.WEEK, Periods.DAY};
+
+    //Granularities are Periods constants, so a category's totals are indexed by them directly
+    private static final int GRANULARITIES = 4;
+
+    private final Map<String, Integer> categoryIds = new HashMap<>();
+    private final List<String> categories = new ArrayList<>();
+    private final List<Totals[]> totals = new ArrayList<>();
+
+    /**
+     * Totals of periods, stored in pages of consecutive periods that are only made once a period in them
+     * has an amount, so a stray far off date costs one page rather than every period up to it.
+     */
+    private static final class Totals {
+        //Periods per page, a power of two so a period splits into page and offset with shifts
+        private static final int PAGE_BITS = 6;
+        private static final int PAGE_SIZE = 1 << PAGE_BITS;
+
+        private final TreeMap<Integer, long[]> pages = new TreeMap<>();
+
+        //Page last added to, as transactions tend to arrive in runs of nearby dates
+        private int lastPage;
+        private long[] last;
+
+        /**
+         * Adds an amount to a period.
+         */
+        private void add(int period, long amount) {
+            int page = period >> PAGE_BITS;
+            if (this.last == null || this.lastPage != page) {
+                this.last = this.pages.computeIfAbsent(page, (key) -> new long[PAGE_SIZE]);
+                this.lastPage = page;
+            }
+            this.last[period & (PAGE_SIZE - 1)] += amount;
+        }
+
+        /**
+         * Sums the periods between two inclusive.
+         */
+        private long sum(int from, int to) {
+            if (from > to) {
+                return 0;
+            }
+            int firstPage = from >> PAGE_BITS;
+            int lastPage = to >> PAGE_BITS;
+            long total = 0;
+            for (Map.Entry<Integer, long[]> entry : this.pages.subMap(firstPage, true, lastPage, true).entrySet()) {
+                int page = entry.getKey();
+                long[] values = entry.getValue();
+                int start = page == firstPage ? from & (PAGE_SIZE - 1) : 0;
+                int end = page == lastPage ? to & (PAGE_SIZE - 1) : PAGE_SIZE - 1;
+                for (int i = start; i <= end; ++i) {
+                    total += values[i];
+                }
+            }
+            return total;
+        }
+    }
+
+    /**
+     * Creates a cube holding the transactions already in a store, and keeps it in step with the store.
+     * Call it while the store is being loaded, before other threads start writing to it.
+     */
+    public static RollupCube follow(TransactionStore store) {
+        RollupCube cube = new RollupCube();
+        int[] days = new int[4096];
+        long[] amounts = new long[4096];
+        int[] categories = new int[4096];
+        int[] merchants = new int[4096];
+        int[] filled = new int[1];
+        for (long id = 0; id >= 0; ) {
+            id = store.read(id, days, amounts, categories, merchants, days.length, filled);
+            synchronized (cube) {
+                for (int i = 0; i < filled[0]; ++i) {
+                    cube.add(store.getCategories().value(categories[i]), days[i], amounts[i]);
+                }
+            }
+        }
+        store.addListener(cube);
+        return cube;
+    }
+
+    /**
+     * Adds a transaction to its category's totals.
+     */
+    public synchronized void transactionAdded(Transaction transaction) {
+        this.add(transaction.category(), transaction.epochDay(), transaction.amountCents());
+    }
+
+    /**
+     * Takes a removed transaction back out of its category's totals.
+     */
+    public synchronized void transactionRemoved(Transaction transaction) {
+        this.add(transaction.category(), transaction.epochDay(), -transaction.amountCents());
+    }
+
+    /**
+     * Retrieves the totals per category for the day, week, month or year holding a date, as a Periods granularity.
+     */
+    public synchronized Map<String, Long> getTotals(int granularity, LocalDate date) {
+        int period = Periods.of(granularity, (int)date.toEpochDay());
+        Map<String, Long> totals = new LinkedHashMap<>();
+        for (int id = 0; id < this.categories.size(); ++id) {
+            totals.put(this.categories.get(id), this.totals.get(id)[granularity].sum(period, period));
+        }
+        return totals;
+    }
+
+    /**
+     * Retrieves the totals per category between two dates inclusive.
+     */
+    public synchronized Map<String, Long> getTotals(LocalDate from, LocalDate to) {
+        Map<String, Long> totals = new LinkedHashMap<>();
+        for (int id = 0; id < this.categories.size(); ++id) {
+            totals.put(this.categories.get(id), rangeTotal(this.totals.get(id), (int)from.toEpochDay(), (int)to.toEpochDay(), 0));
+        }
+        return totals;
+    }
+
+    /**
+     * Retrieves the totals per category for a default view: the period holding a date for Monthly,
+     * Weekly and Yearly, or the given range for Custom.
+     */
+    public Map<String, Long> getViewTotals(String view, LocalDate date, LocalDate customFrom, LocalDate customTo) {
+        int ordinal = SettingsSchema.ordinal(SettingsSchema.VIEWS, view);
+        if (ordinal == Periods.MONTH || ordinal == Periods.WEEK || ordinal == Periods.YEAR) {
+            return this.getTotals(ordinal, date);
+        }
+        return this.getTotals(customFrom, customTo);
+    }
+
+    /**
+     * Retrieves one category's total between two dates inclusive.
+     */
+    public synchronized long getTotal(String category, LocalDate from, LocalDate to) {
+        Integer id = this.categoryIds.get(category);
+        return id == null ? 0 : rangeTotal(this.totals.get(id), (int)from.toEpochDay(), (int)to.toEpochDay(), 0);
+    }
+
+    /**
+     * Adds an amount to a category's totals at every granularity.
+     */
+    private void add(String category, int epochDay, long amount) {
+        Integer id = this.categoryIds.get(category);
+        if (id == null) {
+            id = this.categories.size();
+            this.categoryIds.put(category, id);
+            this.categories.add(category);
+            Totals[] levels = new Totals[GRANULARITIES];
+            for (int granularity = 0; granularity < GRANULARITIES; ++granularity) {
+                levels[granularity] = new Totals();
+            }
+            this.totals.add(levels);
+        }
+        Totals[] levels = this.totals.get(id);
+        for (int granularity = 0; granularity < GRANULARITIES; ++granularity) {
+            levels[granularity].add(Periods.of(granularity, epochDay), amount);
+        }
+    }
+
+    /**
+     * Sums the days between two inclusive from whole periods of the level given and finer ones at the edges.
+     */
+    private static long rangeTotal(Totals[] levels, int from, int to, int level) {
+        if (from > to) {
+            return 0;
+        }
+        int granularity = LEVELS[level];
+        if (granularity == Periods.DAY) {
+            return levels[Periods.DAY].sum(from, to);
+        }
+
+        //Whole periods inside the range
+        int first = Periods.of(granularity, from);
+        if (Periods.start(granularity, first) < from) {
+            ++first;
+        }
+        int last = Periods.of(granularity, to);
+        if (Periods.start(granularity, last + 1) - 1 > to) {
+            --last;
+        }
+        if (first > last) {
+            return rangeTotal(levels, from, to, level + 1);
+        }
+        return levels[granularity].sum(first, last)
+                + rangeTotal(levels, from, Periods.start(granularity, first) - 1, level + 1)
+                + rangeTotal(levels, Periods.start(granularity, last + 1), to, level + 1);
+    }
+}
@@ -0,0 +1,35 @@
+import java.time.LocalDate;
+import java.util.Map;
+
+/**
+ * Spending over one period: the total, the number of transactions, totals per category and the
+ * top merchants, both largest first. Merchant totals are estimates that may run slightly high.
+ */
+public record SpendingSummary(LocalDate start, LocalDate end, long totalCents, int transactions,
+                              Map<String, Long> categories, Map<String, Long> topMerchants) {
+    /**
+     * Formats the summary as the text of a notification.
+     */
+    public String toMessage() {
+        StringBuilder message = new StringBuilder();
+        message.append("You spent ").append(amount(this.totalCents)).append(" across ").append(this.transactions)
+                .append(this.transactions == 1 ? " transaction" : " transactions").append(" from ").append(this.start)
+                .append(" to ").append(this.end).append(".");
+        if (!this.categories.isEmpty()) {
+            message.append("\nBy category:");
+            this.categories.forEach((category, cents) -> message.append("\n  ").append(category).append(": ").append(amount(cents)));
+        }
+        if (!this.topMerchants.isEmpty()) {
+            message.append("\nTop merchants:");
+            this.topMerchants.forEach((merchant, cents) -> message.append("\n  ").append(merchant).append(": ").append(amount(cents)));
+        }
+        return message.toString();
+    }
+
+    /**
+     * Formats cents as a plain decimal amount.
+     */
+    private static String amount(long cents) {
+        return (cents < 0 ? "-" : "") + Math.abs(cents) / 100 + "." + String.format("%02d", Math.abs(cents) % 100);
+    }
+}
@@ -0,0 +1,1035 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.Year;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Currency;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.IntFunction;
+
+/**
+ * Imports bank statements in CSV or OFX form into a transaction store.
+ *
+ * The file is memory-mapped and cut into chunks at record boundaries, which are parsed in
+ * parallel on a fork/join pool into columns of days, amounts and names. Dates are read in the
+ * user's date format and amounts in minor units of their currency. Statements count money out
+ * as negative, so amounts are negated into spending. Records already in the store, matched by
+ * a hash of day, amount and merchant, are skipped; repeats are counted, so two identical
+ * charges on one day are only dropped if the store holds both. The rest are appended in
+ * batches, in file order.
+ */
+public class StatementImporter {
+    //Category given to records that have none
+    public static final String UNCATEGORIZED = "Uncategorized";
+
+    //Bounds on the size of the chunks a file is cut into
+    private static final long MIN_CHUNK = 1L << 20;
+    private static final long MAX_CHUNK = 16L << 20;
+
+    //Rows appended to the store at a time, and read from it when looking for duplicates
+    private static final int BATCH = 1 << 16;
+
+    //Longest field kept; the rest of a longer one is dropped
+    private static final int MAX_FIELD = 1024;
+
+    //Markers for a date or amount that could not be parsed
+    private static final int NO_DATE = Integer.MIN_VALUE;
+    private static final long NO_AMOUNT = Long.MIN_VALUE;
+
+    //Roles a CSV column can play
+    private static final int DATE = 0;
+    private static final int AMOUNT = 1;
+    private static final int DEBIT = 2;
+    private static final int CREDIT = 3;
+    private static final int DESCRIPTION = 4;
+    private static final int CATEGORY = 5;
+    private static final int ROLES = 6;
+
+    //Header names recognized for each role, in lower case
+    private static final String[][] HEADER_NAMES = new String[][]{
+            {"date", "transaction date", "posted date", "posting date", "booking date", "trans date"},
+            {"amount", "transaction amount"},
+            {"debit", "debit amount", "withdrawal", "withdrawals", "money out", "paid out"},
+            {"credit", "credit amount", "deposit", "deposits", "money in", "paid in"},
+            {"description", "merchant", "payee", "name", "details", "narrative", "transaction description", "memo"},
+            {"category"}};
+
+    //Columns of a CSV statement without a header
+    private static final int[] DEFAULT_ROLES = new int[]{DATE, DESCRIPTION, AMOUNT};
+
+    private static final byte[] UNCATEGORIZED_BYTES = UNCATEGORIZED.getBytes(StandardCharsets.UTF_8);
+    private static final byte[] OFX_TRANSACTION = ascii("<STMTTRN>");
+    private static final byte[] OFX_TRANSACTION_TAG = ascii("STMTTRN");
+    private static final byte[] OFX_TRANSACTION_END = ascii("/STMTTRN");
+    private static final byte[] OFX_DATE = ascii("DTPOSTED");
+    private static final byte[] OFX_AMOUNT = ascii("TRNAMT");
+    private static final byte[] OFX_NAME = ascii("NAME");
+    private static final byte[] OFX_MEMO = ascii("MEMO");
+
+    private final TransactionStore store;
+    private final DateTimeFormatter dateFormat;
+    private final int dateOrdinal;
+    private final Currency currency;
+    private final CurrencyConverter converter;
+    private final ForkJoinPool pool;
+
+    /**
+     * Creates an importer that reads dates and amounts in the format and currency of the active settings,
+     * converting OFX statements in other currencies with the given converter.
+     */
+    public StatementImporter(TransactionStore store, CurrencyConverter converter) {
+        this(store, SettingsManager.get(SettingsSchema.DATE_FORMAT), SettingsManager.get(SettingsSchema.CURRENCY),
+                converter, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates an importer that reads dates in the given format and amounts in the given currency, parsing on a pool.
+     */
+    public StatementImporter(TransactionStore store, DateTimeFormatter dateFormat, Currency currency,
+                             CurrencyConverter converter, ForkJoinPool pool) {
+        this.store = store;
+        this.dateFormat = dateFormat;
+        this.dateOrdinal = Arrays.asList(SettingsSchema.DATE_FORMATTERS).indexOf(dateFormat);
+        this.currency = currency;
+        this.converter = converter;
+        this.pool = pool;
+    }
+
+    /**
+     * Imports a CSV or OFX statement, telling them apart by content.
+     */
+    public ImportResult importFile(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            ByteBuffer head = ByteBuffer.allocate((int)Math.min(size, 4096));
+            channel.read(head, 0);
+            String start = new String(head.array(), 0, head.position(), StandardCharsets.ISO_8859_1);
+            boolean ofx = start.contains("OFXHEADER") || start.contains("<OFX>");
+            return this.append(ofx ? this.parseOfx(channel, size) : this.parseCsv(channel, size));
+        }
+    }
+
+    /**
+     * Parses a CSV statement: its header line, if it has one, then the records in parallel chunks.
+     */
+    private List<Chunk> parseCsv(FileChannel channel, long size) throws IOException {
+        ByteBuffer data = map(channel, 0, Math.min(size, MAX_CHUNK));
+        long start = 0;
+        if (data.limit() >= 3 && data.get(0) == (byte)0xef && data.get(1) == (byte)0xbb && data.get(2) == (byte)0xbf) {
+            //Byte order mark
+            start = 3;
+        }
+        long lineEnd = nextRecord(channel, start, size, false);
+        int[] roles = headerRoles(new String(bytes(data, (int)start, (int)Math.min(lineEnd, data.limit())), StandardCharsets.UTF_8));
+        if (roles == null) {
+            roles = DEFAULT_ROLES;
+        } else {
+            start = lineEnd;
+        }
+        int[] columns = roles;
+        int fractionDigits = this.currency.getDefaultFractionDigits();
+        long[] bounds = this.splitCsv(channel, start, size);
+        return this.parallel(bounds.length - 1, (k) -> this.parseCsvChunk(load(channel, bounds[k], bounds[k + 1] - bounds[k]),
+                columns, fractionDigits));
+    }
+
+    /**
+     * Cuts the records of a CSV file into chunks, returning their bounds.
+     * A cut may only fall on a line break outside quotes, so the quotes in each raw piece are
+     * counted in parallel first, telling where every piece starts relative to a quoted field.
+     */
+    private long[] splitCsv(FileChannel channel, long start, long size) throws IOException {
+        long piece = this.chunkSize(size - start);
+        int count = (int)Math.max(1, (size - start + piece - 1) / piece);
+        List<Integer> parities = this.parallel(count, (k) -> {
+            byte[] data = load(channel, start + k * piece, Math.min(piece, size - start - k * piece));
+            int quotes = 0;
+            for (byte b : data) {
+                quotes += b == '"' ? 1 : 0;
+            }
+            return quotes & 1;
+        });
+
+        long[] bounds = new long[count + 1];
+        bounds[0] = start;
+        bounds[count] = size;
+        int parity = 0;
+        for (int k = 1; k < count; ++k) {
+            parity ^= parities.get(k - 1);
+            bounds[k] = Math.max(bounds[k - 1], nextRecord(channel, start + k * piece, size, parity != 0));
+        }
+        return bounds;
+    }
+
+    /**
+     * Parses the CSV records of one chunk.
+     */
+    private Chunk parseCsvChunk(byte[] data, int[] roles, int fractionDigits) {
+        Chunk chunk = new Chunk(data.length / 48 + 16, StandardCharsets.UTF_8);
+        byte[][] fields = new byte[ROLES][MAX_FIELD];
+        int[] lengths = new int[ROLES];
+        boolean amountColumn = false;
+        for (int role : roles) {
+            amountColumn |= role == AMOUNT;
+        }
+
+        int end = data.length;
+        int pos = 0;
+        while (pos < end) {
+            Arrays.fill(lengths, 0);
+            for (int column = 0; ; ++column) {
+                int role = column < roles.length ? roles[column] : -1;
+                byte[] field = role < 0 ? null : fields[role];
+                int length = 0;
+                if (pos < end && data[pos] == '"') {
+                    //Quoted field, where a doubled quote stands for one
+                    for (++pos; pos < end; ) {
+                        byte b = data[pos++];
+                        if (b == '"') {
+                            if (pos >= end || data[pos] != '"') {
+                                break;
+                            }
+                            ++pos;
+                        }
+                        if (field != null && length < MAX_FIELD) {
+                            field[length++] = b;
+                        }
+                    }
+                }
+                //Unquoted text, or whatever follows a closing quote
+                for (; pos < end; ++pos) {
+                    byte b = data[pos];
+                    if (b == ',' || b == '\n') {
+                        break;
+                    }
+                    if (field != null && length < MAX_FIELD && b != '\r') {
+                        field[length++] = b;
+                    }
+                }
+                if (role >= 0) {
+                    lengths[role] = length;
+                }
+                if (pos >= end || data[pos++] == '\n') {
+                    break;
+                }
+            }
+            this.addCsvRecord(chunk, fields, lengths, amountColumn, fractionDigits);
+        }
+        return chunk;
+    }
+
+    /**
+     * Adds a parsed CSV record to a chunk, or counts it as rejected. Blank lines are ignored.
+     */
+    private void addCsvRecord(Chunk chunk, byte[][] fields, int[] lengths, boolean amountColumn, int fractionDigits) {
+        int filled = 0;
+        for (int length : lengths) {
+            filled |= length;
+        }
+        if (filled == 0) {
+            return;
+        }
+
+        int day = this.parseDate(fields[DATE], lengths[DATE]);
+        long spent;
+        if (amountColumn) {
+            long amount = parseAmount(fields[AMOUNT], lengths[AMOUNT], fractionDigits);
+            spent = amount == NO_AMOUNT ? NO_AMOUNT : -amount;
+        } else {
+            long debit = lengths[DEBIT] == 0 ? 0 : parseAmount(fields[DEBIT], lengths[DEBIT], fractionDigits);
+            long credit = lengths[CREDIT] == 0 ? 0 : parseAmount(fields[CREDIT], lengths[CREDIT], fractionDigits);
+            spent = debit == NO_AMOUNT || credit == NO_AMOUNT || lengths[DEBIT] + lengths[CREDIT] == 0
+                    ? NO_AMOUNT : Math.abs(debit) - Math.abs(credit);
+        }
+        if (day == NO_DATE || spent == NO_AMOUNT) {
+            ++chunk.rejected;
+            return;
+        }
+        int category = lengths[CATEGORY] == 0 ? -1 : chunk.categories.intern(fields[CATEGORY], lengths[CATEGORY]);
+        if (category < 0) {
+            category = chunk.categories.intern(UNCATEGORIZED_BYTES, UNCATEGORIZED_BYTES.length);
+        }
+        chunk.add(day, spent, category, chunk.merchants.intern(fields[DESCRIPTION], lengths[DESCRIPTION]));
+    }
+
+    /**
+     * Parses an OFX statement: the currency and character set from its header, then the transactions in parallel chunks.
+     * Only the first statement's currency is used if a file holds several.
+     */
+    private List<Chunk> parseOfx(FileChannel channel, long size) throws IOException {
+        long first = find(channel, OFX_TRANSACTION, 0, size);
+        if (first < 0) {
+            return List.of();
+        }
+        ByteBuffer headerData = map(channel, 0, Math.min(first, MAX_CHUNK));
+        String header = new String(bytes(headerData, 0, headerData.limit()), StandardCharsets.ISO_8859_1);
+        Charset charset = header.contains("CHARSET:1252") ? Charset.forName("windows-1252") : StandardCharsets.UTF_8;
+        Currency currency = this.currency;
+        int currencyAt = header.indexOf("<CURDEF>");
+        if (currencyAt >= 0) {
+            String code = header.substring(currencyAt + 8).split("[<\\s]", 2)[0];
+            try {
+                currency = Currency.getInstance(code.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Unknown statement currency " + code);
+            }
+        }
+
+        long piece = this.chunkSize(size - first);
+        int count = (int)Math.max(1, (size - first + piece - 1) / piece);
+        long[] bounds = new long[count + 1];
+        bounds[0] = first;
+        bounds[count] = size;
+        for (int k = 1; k < count; ++k) {
+            long next = find(channel, OFX_TRANSACTION, first + k * piece, size);
+            bounds[k] = Math.max(bounds[k - 1], next < 0 ? size : next);
+        }
+        int fractionDigits = currency.getDefaultFractionDigits();
+        List<Chunk> chunks = this.parallel(count, (k) -> parseOfxChunk(load(channel, bounds[k], bounds[k + 1] - bounds[k]),
+                fractionDigits, charset));
+
+        if (!currency.equals(this.currency)) {
+            try {
+                for (Chunk chunk : chunks) {
+                    this.converter.convert(chunk.amounts, 0, chunk.amounts, 0, chunk.size, currency, this.currency);
+                }
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Cannot convert statement from " + currency + ": " + e.getMessage());
+            }
+        }
+        return chunks;
+    }
+
+    /**
+     * Parses the OFX transactions of one chunk, reading tags the same way whether or not leaf elements are closed.
+     */
+    private static Chunk parseOfxChunk(byte[] data, int fractionDigits, Charset charset) {
+        Chunk chunk = new Chunk(data.length / 160 + 16, charset);
+        byte[] tag = new byte[16];
+        byte[] value = new byte[MAX_FIELD];
+        byte[] name = new byte[MAX_FIELD];
+        byte[] memo = new byte[MAX_FIELD];
+        int nameLength = 0;
+        int memoLength = 0;
+        int day = NO_DATE;
+        long amount = NO_AMOUNT;
+        boolean open = false;
+
+        int end = data.length;
+        int pos = 0;
+        while (pos < end) {
+            if (data[pos++] != '<') {
+                continue;
+            }
+            int tagLength = 0;
+            for (; pos < end && data[pos] != '>'; ++pos) {
+                if (tagLength < tag.length) {
+                    tag[tagLength++] = data[pos];
+                }
+            }
+            ++pos;
+            int valueLength = 0;
+            for (; pos < end && data[pos] != '<'; ++pos) {
+                if (valueLength < MAX_FIELD) {
+                    value[valueLength++] = data[pos];
+                }
+            }
+
+            if (is(tag, tagLength, OFX_TRANSACTION_TAG)) {
+                if (open) {
+                    addOfxRecord(chunk, day, amount, name, nameLength, memo, memoLength);
+                }
+                open = true;
+                day = NO_DATE;
+                amount = NO_AMOUNT;
+                nameLength = 0;
+                memoLength = 0;
+            } else if (open && is(tag, tagLength, OFX_TRANSACTION_END)) {
+                addOfxRecord(chunk, day, amount, name, nameLength, memo, memoLength);
+                open = false;
+            } else if (open && is(tag, tagLength, OFX_DATE)) {
+                day = parseOfxDate(value, valueLength);
+            } else if (open && is(tag, tagLength, OFX_AMOUNT)) {
+                amount = parseAmount(value, valueLength, fractionDigits);
+            } else if (open && is(tag, tagLength, OFX_NAME)) {
+                nameLength = unescape(value, valueLength, name);
+            } else if (open && is(tag, tagLength, OFX_MEMO)) {
+                memoLength = unescape(value, valueLength, memo);
+            }
+        }
+        if (open) {
+            addOfxRecord(chunk, day, amount, name, nameLength, memo, memoLength);
+        }
+        return chunk;
+    }
+
+    /**
+     * Adds a parsed OFX transaction to a chunk, named by its payee or else its memo, or counts it as rejected.
+     */
+    private static void addOfxRecord(Chunk chunk, int day, long amount, byte[] name, int nameLength, byte[] memo, int memoLength) {
+        if (day == NO_DATE || amount == NO_AMOUNT) {
+            ++chunk.rejected;
+            return;
+        }
+        int merchant = chunk.merchants.intern(name, nameLength);
+        if (merchant < 0) {
+            merchant = chunk.merchants.intern(memo, memoLength);
+        }
+        chunk.add(day, -amount, chunk.categories.intern(UNCATEGORIZED_BYTES, UNCATEGORIZED_BYTES.length), merchant);
+    }
+
+    /**
+     * Appends the parsed records to the store in file order, skipping those it already holds.
+     */
+    private ImportResult append(List<Chunk> chunks) {
+        int read = 0;
+        int rejected = 0;
+        int firstDay = Integer.MAX_VALUE;
+        int lastDay = Integer.MIN_VALUE;
+        for (Chunk chunk : chunks) {
+            read += chunk.size + chunk.rejected;
+            rejected += chunk.rejected;
+            for (int i = 0; i < chunk.size; ++i) {
+                firstDay = Math.min(firstDay, chunk.days[i]);
+                lastDay = Math.max(lastDay, chunk.days[i]);
+            }
+        }
+        KeyCounts existing = this.existing(firstDay, lastDay, read - rejected);
+
+        StringDictionary categoryNames = this.store.getCategories();
+        StringDictionary merchantNames = this.store.getMerchants();
+        int[] days = new int[BATCH];
+        long[] amounts = new long[BATCH];
+        int[] categories = new int[BATCH];
+        int[] merchants = new int[BATCH];
+        int pending = 0;
+        int imported = 0;
+        int duplicates = 0;
+        for (int c = 0; c < chunks.size(); ++c) {
+            Chunk chunk = chunks.get(c);
+            int[] categoryCodes = chunk.categories.codes(categoryNames);
+            int[] merchantCodes = chunk.merchants.codes(merchantNames);
+            for (int i = 0; i < chunk.size; ++i) {
+                int merchant = chunk.merchantIds[i];
+                long key = key(chunk.days[i], chunk.amounts[i], merchant < 0 ? 0 : chunk.merchants.hashes[merchant]);
+                if (existing.take(key)) {
+                    ++duplicates;
+                    continue;
+                }
+                days[pending] = chunk.days[i];
+                amounts[pending] = chunk.amounts[i];
+                categories[pending] = categoryCodes[chunk.categoryIds[i]];
+                merchants[pending] = merchant < 0 ? -1 : merchantCodes[merchant];
+                if (++pending == BATCH) {
+                    this.store.addAll(days, amounts, categories, merchants, pending);
+                    imported += pending;
+                    pending = 0;
+                }
+            }
+            //Let the chunk go as soon as it is appended
+            chunks.set(c, null);
+        }
+        if (pending > 0) {
+            this.store.addAll(days, amounts, categories, merchants, pending);
+            imported += pending;
+        }
+        return new ImportResult(read, imported, duplicates, rejected);
+    }
+
+    /**
+     * Counts the keys of the stored transactions between two days inclusive, sizing the
+     * table for about as many as the statement has records.
+     */
+    private KeyCounts existing(int firstDay, int lastDay, int records) {
+        if (firstDay > lastDay) {
+            return new KeyCounts(0);
+        }
+        //A statement usually overlaps about its own size of stored rows; the table grows if there are more,
+        //so a short statement against a large store does not allocate for the whole store
+        KeyCounts counts = new KeyCounts(Math.min(this.store.size(), records));
+        StringDictionary merchantNames = this.store.getMerchants();
+        long[] hashes = new long[merchantNames.size()];
+        for (int code = 0; code < hashes.length; ++code) {
+            hashes[code] = nameHash(merchantNames.value(code));
+        }
+
+        int[] days = new int[BATCH];
+        long[] amounts = new long[BATCH];
+        int[] categories = new int[BATCH];
+        int[] merchants = new int[BATCH];
+        int[] filled = new int[1];
+        for (long id = 0; id >= 0; ) {
+            id = this.store.read(id, days, amounts, categories, merchants, BATCH, filled);
+            for (int i = 0; i < filled[0]; ++i) {
+                if (days[i] < firstDay || days[i] > lastDay) {
+                    continue;
+                }
+                int merchant = merchants[i];
+                long hash = merchant < 0 ? 0 : merchant < hashes.length ? hashes[merchant] : nameHash(merchantNames.value(merchant));
+                counts.add(key(days[i], amounts[i], hash));
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Runs a piece of work for every index on the pool, returning the results in index order.
+     */
+    private <T> List<T> parallel(int count, IntFunction<T> work) throws IOException {
+        List<ForkJoinTask<T>> tasks = new ArrayList<>(count);
+        for (int i = 0; i < count; ++i) {
+            int index = i;
+            tasks.add(ForkJoinTask.adapt(() -> work.apply(index)));
+        }
+        try {
+            this.pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+        } catch (RuntimeException e) {
+            for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+                if (cause instanceof IOException io) {
+                    throw io;
+                }
+            }
+            throw e;
+        }
+        List<T> results = new ArrayList<>(count);
+        for (ForkJoinTask<T> task : tasks) {
+            results.add(task.join());
+        }
+        return results;
+    }
+
+    /**
+     * Chooses the chunk size for a file: a few chunks per worker, within bounds.
+     */
+    private long chunkSize(long length) {
+        return Math.max(MIN_CHUNK, Math.min(MAX_CHUNK, length / (this.pool.getParallelism() * 4L)));
+    }
+
+    /**
+     * Parses a date in the user's format. Day, month and year may have one or two digits, a date
+     * starting with a four-digit year is read year first whatever the format, and a time after the
+     * date is ignored.
+     */
+    private int parseDate(byte[] text, int length) {
+        if (this.dateOrdinal < 0) {
+            try {
+                return (int)LocalDate.parse(new String(text, 0, length, StandardCharsets.UTF_8).trim(), this.dateFormat).toEpochDay();
+            } catch (DateTimeParseException e) {
+                return NO_DATE;
+            }
+        }
+
+        int[] parts = new int[3];
+        int[] digits = new int[3];
+        int groups = 0;
+        for (int i = 0; i < length && groups < 3; ++i) {
+            int digit = text[i] - '0';
+            if (digit >= 0 && digit <= 9) {
+                if (++digits[groups] > 4) {
+                    return NO_DATE;
+                }
+                parts[groups] = parts[groups] * 10 + digit;
+            } else if (digits[groups] > 0) {
+                ++groups;
+            }
+        }
+        if (groups < 3 && digits[groups] > 0) {
+            ++groups;
+        }
+        if (groups != 3) {
+            return NO_DATE;
+        }
+
+        //Positions of the year, month and day for MM/DD/YYYY, DD/MM/YYYY and YYYY-MM-DD
+        int order = digits[0] == 4 ? 2 : this.dateOrdinal;
+        int year = parts[order == 2 ? 0 : 2];
+        int month = parts[order == 0 ? 0 : 1];
+        int day = parts[order == 0 ? 1 : order == 1 ? 0 : 2];
+        if (digits[order == 2 ? 0 : 2] <= 2) {
+            year += 2000;
+        }
+        return epochDay(year, month, day);
+    }
+
+    /**
+     * Parses an OFX date, which starts with YYYYMMDD whatever follows.
+     */
+    private static int parseOfxDate(byte[] text, int length) {
+        int start = 0;
+        while (start < length && (text[start] == ' ' || text[start] == '\r' || text[start] == '\n')) {
+            ++start;
+        }
+        if (length - start < 8) {
+            return NO_DATE;
+        }
+        int value = 0;
+        for (int i = start; i < start + 8; ++i) {
+            int digit = text[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return NO_DATE;
+            }
+            value = value * 10 + digit;
+        }
+        return epochDay(value / 10000, value / 100 % 100, value % 100);
+    }
+
+    /**
+     * Retrieves the epoch day of a date, or NO_DATE if there is no such date.
+     */
+    private static int epochDay(int year, int month, int day) {
+        if (month < 1 || month > 12 || day < 1) {
+            return NO_DATE;
+        }
+        int monthLength = month == 2 ? (Year.isLeap(year) ? 29 : 28) : 30 + ((month + (month >> 3)) & 1);
+        if (day > monthLength) {
+            return NO_DATE;
+        }
+        //Days since 0000-03-01, counting years from March so the leap day comes last
+        int y = month <= 2 ? year - 1 : year;
+        int era = Math.floorDiv(y, 400);
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    /**
+     * Parses an amount into minor units, or NO_AMOUNT if it has no digits or too many.
+     * The last '.' or ',' is the decimal separator unless three digits follow it, which marks
+     * thousands; currency symbols and spaces are ignored, and a minus sign or parentheses make
+     * it negative. Digits beyond the currency's fraction are rounded half away from zero.
+     */
+    private static long parseAmount(byte[] text, int length, int fractionDigits) {
+        int separator = -1;
+        for (int i = length - 1; i >= 0 && separator < 0; --i) {
+            if (text[i] == '.' || text[i] == ',') {
+                separator = i;
+            }
+        }
+        if (separator >= 0 && fractionDigits < 3) {
+            int after = 0;
+            for (int i = separator + 1; i < length; ++i) {
+                after += text[i] >= '0' && text[i] <= '9' ? 1 : 0;
+            }
+            if (after == 3) {
+                separator = -1;
+            }
+        }
+
+        long value = 0;
+        int digits = 0;
+        int fraction = 0;
+        boolean roundUp = false;
+        boolean negative = false;
+        for (int i = 0; i < length; ++i) {
+            byte b = text[i];
+            if (b >= '0' && b <= '9') {
+                if (++digits > 15) {
+                    return NO_AMOUNT;
+                }
+                if (separator < 0 || i < separator) {
+                    value = value * 10 + (b - '0');
+                } else if (fraction < fractionDigits) {
+                    value = value * 10 + (b - '0');
+                    ++fraction;
+                } else if (fraction++ == fractionDigits) {
+                    roundUp = b >= '5';
+                }
+            } else if (b == '-' || b == '(') {
+                negative = true;
+            }
+        }
+        if (digits == 0) {
+            return NO_AMOUNT;
+        }
+        for (; fraction < fractionDigits; ++fraction) {
+            value *= 10;
+        }
+        if (roundUp) {
+            ++value;
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Works out the role of each column from a CSV header line, or returns null if it is not a
+     * header naming a date and an amount.
+     */
+    private static int[] headerRoles(String line) {
+        String[] names = line.split(",", -1);
+        int[] roles = new int[names.length];
+        boolean[] found = new boolean[ROLES];
+        for (int column = 0; column < names.length; ++column) {
+            String name = names[column].replace("\"", "").trim().toLowerCase(Locale.ROOT);
+            roles[column] = -1;
+            for (int role = 0; role < ROLES && roles[column] < 0; ++role) {
+                if (!found[role] && Arrays.asList(HEADER_NAMES[role]).contains(name)) {
+                    roles[column] = role;
+                    found[role] = true;
+                }
+            }
+        }
+        return found[DATE] && (found[AMOUNT] || found[DEBIT] || found[CREDIT]) ? roles : null;
+    }
+
+    /**
+     * Finds the start of the record after a position in a CSV file: just past the first line
+     * break outside quotes, or the end of the file.
+     */
+    private static long nextRecord(FileChannel channel, long from, long size, boolean quoted) throws IOException {
+        for (long start = from; start < size; start += Integer.MAX_VALUE) {
+            ByteBuffer data = map(channel, start, Math.min(size - start, Integer.MAX_VALUE));
+            for (int i = 0; i < data.limit(); ++i) {
+                byte b = data.get(i);
+                if (b == '"') {
+                    quoted = !quoted;
+                } else if (b == '\n' && !quoted) {
+                    return start + i + 1;
+                }
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Finds the next occurrence of a byte pattern at or after a position, or -1.
+     */
+    private static long find(FileChannel channel, byte[] pattern, long from, long size) throws IOException {
+        for (long start = from; start < size; start += Integer.MAX_VALUE - pattern.length) {
+            ByteBuffer data = map(channel, start, Math.min(size - start, Integer.MAX_VALUE));
+            for (int i = 0; i + pattern.length <= data.limit(); ++i) {
+                int matched = 0;
+                while (matched < pattern.length && data.get(i + matched) == pattern[matched]) {
+                    ++matched;
+                }
+                if (matched == pattern.length) {
+                    return start + i;
+                }
+            }
+            if (start + data.limit() >= size) {
+                break;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Maps part of a file for reading, reporting failure unchecked so it can cross the pool.
+     */
+    private static ByteBuffer map(FileChannel channel, long position, long length) {
+        try {
+            return channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Maps part of a file and copies it into an array in one go, which scans much faster than
+     * reading the mapped buffer a byte at a time.
+     */
+    private static byte[] load(FileChannel channel, long position, long length) {
+        ByteBuffer data = map(channel, position, length);
+        return bytes(data, 0, data.limit());
+    }
+
+    /**
+     * Copies part of a buffer into an array.
+     */
+    private static byte[] bytes(ByteBuffer data, int from, int to) {
+        byte[] bytes = new byte[Math.max(0, to - from)];
+        data.get(from, bytes);
+        return bytes;
+    }
+
+    /**
+     * Checks whether a tag read from an OFX file is the given one.
+     */
+    private static boolean is(byte[] tag, int length, byte[] name) {
+        return length == name.length && Arrays.equals(tag, 0, length, name, 0, length);
+    }
+
+    /**
+     * Copies OFX text, decoding the predefined entities, and returns its length.
+     */
+    private static int unescape(byte[] text, int length, byte[] target) {
+        int out = 0;
+        for (int i = 0; i < length; ++i) {
+            byte b = text[i];
+            if (b == '&') {
+                int semicolon = i + 1;
+                while (semicolon < length && semicolon < i + 6 && text[semicolon] != ';') {
+                    ++semicolon;
+                }
+                String entity = semicolon < length ? new String(text, i + 1, semicolon - i - 1, StandardCharsets.US_ASCII) : "";
+                byte decoded = switch (entity) {
+                    case "amp" -> '&';
+                    case "lt" -> '<';
+                    case "gt" -> '>';
+                    case "quot" -> '"';
+                    case "apos" -> '\'';
+                    default -> 0;
+                };
+                if (decoded != 0) {
+                    target[out++] = decoded;
+                    i = semicolon;
+                    continue;
+                }
+            }
+            target[out++] = b;
+        }
+        return out;
+    }
+
+    /**
+     * Hashes a record's day, amount and merchant name hash into a key that is never 0.
+     */
+    private static long key(int day, long amount, long nameHash) {
+        long h = nameHash ^ (day * 0x9e3779b97f4a7c15L) ^ (amount * 0xc2b2ae3d27d4eb4fL);
+        h = (h ^ (h >>> 31)) * 0xbf58476d1ce4e5b9L;
+        h ^= h >>> 29;
+        return h == 0 ? 1 : h;
+    }
+
+    /**
+     * Hashes a name by its UTF-8 bytes, the same way whether it comes from a file or the store. Null hashes to 0.
+     */
+    private static long nameHash(String name) {
+        if (name == null) {
+            return 0;
+        }
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        return fnv(bytes, 0, bytes.length);
+    }
+
+    /**
+     * FNV-1a hash of part of an array.
+     */
+    private static long fnv(byte[] bytes, int from, int to) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = from; i < to; ++i) {
+            hash = (hash ^ (bytes[i] & 0xff)) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * Encodes ASCII text.
+     */
+    private static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Records parsed from one chunk of a file, as columns, with names numbered within the chunk.
+     */
+    private static final class Chunk {
+        private final NameTable categories;
+        private final NameTable merchants;
+        private int[] days;
+        private long[] amounts;
+        private int[] categoryIds;
+        private int[] merchantIds;
+        private int size;
+        private int rejected;
+
+        private Chunk(int capacity, Charset charset) {
+            this.categories = new NameTable(charset);
+            this.merchants = new NameTable(charset);
+            this.days = new int[capacity];
+            this.amounts = new long[capacity];
+            this.categoryIds = new int[capacity];
+            this.merchantIds = new int[capacity];
+        }
+
+        /**
+         * Adds a record.
+         */
+        private void add(int day, long amount, int category, int merchant) {
+            if (this.size == this.days.length) {
+                int capacity = this.size * 2;
+                this.days = Arrays.copyOf(this.days, capacity);
+                this.amounts = Arrays.copyOf(this.amounts, capacity);
+                this.categoryIds = Arrays.copyOf(this.categoryIds, capacity);
+                this.merchantIds = Arrays.copyOf(this.merchantIds, capacity);
+            }
+            this.days[this.size] = day;
+            this.amounts[this.size] = amount;
+            this.categoryIds[this.size] = category;
+            this.merchantIds[this.size] = merchant;
+            ++this.size;
+        }
+    }
+
+    /**
+     * Names met in one chunk, numbered in order of first use and looked up by their raw bytes,
+     * so each distinct name is decoded once rather than once per record.
+     */
+    private static final class NameTable {
+        private final Charset charset;
+        private int[] slots = new int[64];
+        private byte[][] raw = new byte[32][];
+        private long[] rawHashes = new long[32];
+        private String[] names = new String[32];
+        private long[] hashes = new long[32];
+        private int size;
+
+        private NameTable(Charset charset) {
+            this.charset = charset;
+        }
+
+        /**
+         * Retrieves the number of a name given as bytes, trimming spaces, or -1 if it is empty.
+         */
+        private int intern(byte[] bytes, int length) {
+            int from = 0;
+            while (from < length && (bytes[from] == ' ' || bytes[from] == '\t')) {
+                ++from;
+            }
+            while (length > from && (bytes[length - 1] == ' ' || bytes[length - 1] == '\t' || bytes[length - 1] == '\r'
+                    || bytes[length - 1] == '\n')) {
+                --length;
+            }
+            if (from == length) {
+                return -1;
+            }
+
+            long rawHash = fnv(bytes, from, length);
+            int mask = this.slots.length - 1;
+            int slot = (int)(rawHash ^ (rawHash >>> 32)) & mask;
+            for (; this.slots[slot] != 0; slot = (slot + 1) & mask) {
+                int id = this.slots[slot] - 1;
+                if (this.rawHashes[id] == rawHash && Arrays.equals(this.raw[id], 0, this.raw[id].length, bytes, from, length)) {
+                    return id;
+                }
+            }
+
+            int id = this.size++;
+            if (id == this.names.length) {
+                this.raw = Arrays.copyOf(this.raw, id * 2);
+                this.rawHashes = Arrays.copyOf(this.rawHashes, id * 2);
+                this.names = Arrays.copyOf(this.names, id * 2);
+                this.hashes = Arrays.copyOf(this.hashes, id * 2);
+            }
+            this.raw[id] = Arrays.copyOfRange(bytes, from, length);
+            this.rawHashes[id] = rawHash;
+            this.names[id] = new String(bytes, from, length - from, this.charset);
+            this.hashes[id] = nameHash(this.names[id]);
+            this.slots[slot] = id + 1;
+            if (this.size * 2 > this.slots.length) {
+                this.rehash();
+            }
+            return id;
+        }
+
+        /**
+         * Retrieves the dictionary code of every name, by number.
+         */
+        private int[] codes(StringDictionary dictionary) {
+            int[] codes = new int[this.size];
+            for (int id = 0; id < this.size; ++id) {
+                codes[id] = dictionary.code(this.names[id]);
+            }
+            return codes;
+        }
+
+        /**
+         * Doubles the slot table.
+         */
+        private void rehash() {
+            this.slots = new int[this.slots.length * 2];
+            int mask = this.slots.length - 1;
+            for (int id = 0; id < this.size; ++id) {
+                int slot = (int)(this.rawHashes[id] ^ (this.rawHashes[id] >>> 32)) & mask;
+                while (this.slots[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                this.slots[slot] = id + 1;
+            }
+        }
+    }
+
+    /**
+     * Multiset of record keys, as an open-addressing table of key and count pairs side by side,
+     * where key 0 marks an empty slot.
+     */
+    private static final class KeyCounts {
+        private long[] table;
+        private int size;
+
+        /**
+         * Creates a table sized for an expected number of distinct keys.
+         */
+        private KeyCounts(int expected) {
+            //At least twice as many pairs as keys, a power of two
+            int pairs = Integer.highestOneBit(Math.max(512, expected * 2 - 1)) << 1;
+            this.table = new long[pairs * 2];
+        }
+
+        /**
+         * Counts one more record with a key.
+         */
+        private void add(long key) {
+            if ((this.size + 1) * 4 > this.table.length) {
+                this.grow();
+            }
+            int slot = this.slot(key);
+            if (this.table[slot] == 0) {
+                this.table[slot] = key;
+                ++this.size;
+            }
+            ++this.table[slot + 1];
+        }
+
+        /**
+         * Takes one record with a key out, returning false if none is left.
+         */
+        private boolean take(long key) {
+            int slot = this.slot(key);
+            if (this.table[slot] != key || this.table[slot + 1] == 0) {
+                return false;
+            }
+            --this.table[slot + 1];
+            return true;
+        }
+
+        /**
+         * Finds the index of the pair holding a key, or of the empty pair where it would go.
+         */
+        private int slot(long key) {
+            int mask = this.table.length - 2;
+            int slot = (int)(key ^ (key >>> 32)) * 2 & mask;
+            while (this.table[slot] != 0 && this.table[slot] != key) {
+                slot = (slot + 2) & mask;
+            }
+            return slot;
+        }
+
+        /**
+         * Doubles the table.
+         */
+        private void grow() {
+            long[] old = this.table;
+            this.table = new long[old.length * 2];
+            for (int i = 0; i < old.length; i += 2) {
+                if (old[i] != 0) {
+                    int slot = this.slot(old[i]);
+                    this.table[slot] = old[i];
+                    this.table[slot + 1] = old[i + 1];
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,51 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Assigns dense int codes to strings so repeated values are stored once.
+ * Codes count up from 0 in order of first use and are never reused.
+ */
+public final class StringDictionary {
+    private final Map<String, Integer> codes = new HashMap<>();
+    private final List<String> values = new ArrayList<>();
+
+    /**
+     * Retrieves the code of a value, assigning the next one on first use. Null has code -1.
+     */
+    public synchronized int code(String value) {
+        if (value == null) {
+            return -1;
+        }
+        Integer code = this.codes.get(value);
+        if (code == null) {
+            code = this.values.size();
+            this.codes.put(value, code);
+            this.values.add(value);
+        }
+        return code;
+    }
+
+    /**
+     * Retrieves the code of a value, or -1 if it has none.
+     */
+    public synchronized int find(String value) {
+        Integer code = value == null ? null : this.codes.get(value);
+        return code == null ? -1 : code;
+    }
+
+    /**
+     * Retrieves the value of a code, or null for -1.
+     */
+    public synchronized String value(int code) {
+        return code < 0 ? null : this.values.get(code);
+    }
+
+    /**
+     * Retrieves the number of codes assigned.
+     */
+    public synchronized int size() {
+        return this.values.size();
+    }
+}
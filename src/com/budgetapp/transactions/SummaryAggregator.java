@@ -0,0 +1,266 @@
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps spending summaries up to date as transactions are written, for summary notifications.
+ *
+ * Every transaction is added to the bucket of its day, week and month, each holding the
+ * period's total, count, per-category sums and a fixed-size sketch of its top merchants.
+ * A summary is read from a single bucket and cached there until the next write to it, so
+ * its cost does not depend on how many transactions the period holds. When following the
+ * active settings, the summary due at the next notify time is built a few minutes ahead of
+ * it on a background thread, so delivery only has to pick it up.
+ */
+public class SummaryAggregator implements TransactionListener, AutoCloseable {
+    //Merchants tracked per bucket, and how many of them a summary lists
+    private static final int SKETCH_SIZE = 32;
+    private static final int TOP_MERCHANTS = 5;
+
+    //How long before the notify time the next summary is built
+    private static final Duration LEAD = Duration.ofMinutes(10);
+
+    //Granularities kept per transaction
+    private static final int[] GRANULARITIES = new int[]{Periods.DAY, Periods.WEEK, Periods.MONTH};
+
+    private final Map<Long, Bucket> buckets = new HashMap<>();
+    private final ScheduledExecutorService materializer = Executors.newSingleThreadScheduledExecutor((task) -> {
+        Thread thread = new Thread(task, "summary-materializer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private ScheduledFuture<?> nextRun;
+
+    /**
+     * Running totals of one period, with the summary built from them if it is still current.
+     */
+    private static final class Bucket {
+        private final int granularity;
+        private final int period;
+        private long total;
+        private int count;
+        private final Map<String, long[]> categories = new HashMap<>();
+        private final MerchantSketch merchants = new MerchantSketch();
+        private SpendingSummary summary;
+
+        private Bucket(int granularity, int period) {
+            this.granularity = granularity;
+            this.period = period;
+        }
+    }
+
+    /**
+     * Space-saving sketch of the merchants with the most spending in a bucket.
+     * A merchant outside the sketch replaces the smallest entry and inherits its amount,
+     * so the largest merchants are always kept and their totals are never underestimated.
+     */
+    private static final class MerchantSketch {
+        private final String[] names = new String[SKETCH_SIZE];
+        private final long[] amounts = new long[SKETCH_SIZE];
+        private int size;
+
+        /**
+         * Adds spending for a merchant. Refunds only reduce a merchant already in the sketch.
+         */
+        private void add(String merchant, long cents) {
+            int smallest = 0;
+            for (int i = 0; i < this.size; ++i) {
+                if (this.names[i].equals(merchant)) {
+                    this.amounts[i] += cents;
+                    return;
+                }
+                if (this.amounts[i] < this.amounts[smallest]) {
+                    smallest = i;
+                }
+            }
+            if (cents <= 0) {
+                return;
+            }
+            if (this.size < SKETCH_SIZE) {
+                this.names[this.size] = merchant;
+                this.amounts[this.size++] = cents;
+            } else {
+                this.names[smallest] = merchant;
+                this.amounts[smallest] += cents;
+            }
+        }
+
+        /**
+         * Retrieves the merchants with the most spending, largest first.
+         */
+        private Map<String, Long> top(int limit) {
+            List<Integer> order = new ArrayList<>(this.size);
+            for (int i = 0; i < this.size; ++i) {
+                if (this.amounts[i] > 0) {
+                    order.add(i);
+                }
+            }
+            order.sort((a, b) -> Long.compare(this.amounts[b], this.amounts[a]));
+            Map<String, Long> top = new LinkedHashMap<>();
+            for (int i = 0; i < Math.min(limit, order.size()); ++i) {
+                top.put(this.names[order.get(i)], this.amounts[order.get(i)]);
+            }
+            return top;
+        }
+    }
+
+    /**
+     * Adds a transaction to the buckets of its day, week and month.
+     */
+    public synchronized void record(Transaction transaction) {
+        this.apply(transaction, transaction.amountCents(), 1);
+    }
+
+    /**
+     * Takes a deleted transaction back out of its buckets.
+     */
+    public synchronized void remove(Transaction transaction) {
+        this.apply(transaction, -transaction.amountCents(), -1);
+    }
+
+    /**
+     * Records a transaction added to a store.
+     */
+    public void transactionAdded(Transaction transaction) {
+        this.record(transaction);
+    }
+
+    /**
+     * Takes a transaction removed from a store back out.
+     */
+    public void transactionRemoved(Transaction transaction) {
+        this.remove(transaction);
+    }
+
+    /**
+     * Retrieves the summary of the day, week or month holding a date, as a Periods granularity.
+     */
+    public synchronized SpendingSummary getSummary(int granularity, LocalDate date) {
+        int period = Periods.of(granularity, (int)date.toEpochDay());
+        Bucket bucket = this.buckets.get(key(granularity, period));
+        if (bucket == null) {
+            return new SpendingSummary(Periods.startDate(granularity, period),
+                    Periods.startDate(granularity, period + 1).minusDays(1), 0, 0, Map.of(), Map.of());
+        }
+        if (bucket.summary == null) {
+            bucket.summary = summarize(bucket);
+        }
+        return bucket.summary;
+    }
+
+    /**
+     * Retrieves the summary delivered on a date: the previous day, week or month, following the notify frequency.
+     */
+    public SpendingSummary getSummaryDue(LocalDate deliveryDate, NotificationSettings settings) {
+        int granularity = switch (settings.frequencyOrdinal()) {
+            case 0 -> Periods.DAY;
+            case 2 -> Periods.MONTH;
+            default -> Periods.WEEK;
+        };
+        LocalDate previous = switch (granularity) {
+            case Periods.DAY -> deliveryDate.minusDays(1);
+            case Periods.MONTH -> deliveryDate.minusMonths(1);
+            default -> deliveryDate.minusWeeks(1);
+        };
+        return this.getSummary(granularity, previous);
+    }
+
+    /**
+     * Builds the summary for the next notify time shortly before it, following changes to the notification settings.
+     */
+    public void followActiveSettings() {
+        this.scheduleNext(SettingsManager.getNotificationSettings());
+        SettingsManager.subscribe((event) -> this.scheduleNext(SettingsManager.getNotificationSettings()),
+                Runnable::run, List.copyOf(SettingsManager.NOTIFICATION_KEYS));
+    }
+
+    /**
+     * Stops building summaries ahead of time.
+     */
+    public void close() {
+        this.materializer.shutdownNow();
+    }
+
+    /**
+     * Adds an amount to every bucket of a transaction, clearing their cached summaries.
+     */
+    private void apply(Transaction transaction, long cents, int count) {
+        for (int granularity : GRANULARITIES) {
+            int period = Periods.of(granularity, transaction.epochDay());
+            Bucket bucket = this.buckets.computeIfAbsent(key(granularity, period), (k) -> new Bucket(granularity, period));
+            bucket.total += cents;
+            bucket.count += count;
+            long[] category = bucket.categories.computeIfAbsent(transaction.category(), (k) -> new long[2]);
+            category[0] += cents;
+            category[1] += count;
+            if (category[1] == 0) {
+                bucket.categories.remove(transaction.category());
+            }
+            if (transaction.merchant() != null) {
+                bucket.merchants.add(transaction.merchant(), cents);
+            }
+            bucket.summary = null;
+        }
+    }
+
+    /**
+     * Plans building the summary due at the next notify time, replacing any earlier plan.
+     * The delay is measured between instants in the system time zone, so daylight saving changes are allowed for.
+     */
+    private synchronized void scheduleNext(NotificationSettings settings) {
+        if (this.nextRun != null) {
+            this.nextRun.cancel(false);
+        }
+        if (!settings.notifyWeekly() || this.materializer.isShutdown()) {
+            return;
+        }
+
+        LocalTime notifyTime = SettingsSchema.NOTIFY_TIME.parse(settings.notifyTime());
+        ZoneId zone = ZoneId.systemDefault();
+        ZonedDateTime now = ZonedDateTime.now(zone);
+        ZonedDateTime delivery = now.toLocalDate().atTime(notifyTime).atZone(zone);
+        if (!delivery.minus(LEAD).isAfter(now)) {
+            delivery = now.toLocalDate().plusDays(1).atTime(notifyTime).atZone(zone);
+        }
+        LocalDate deliveryDate = delivery.toLocalDate();
+        long delay = Math.max(0, Duration.between(now, delivery.minus(LEAD)).toMillis());
+        this.nextRun = this.materializer.schedule(() -> {
+            this.getSummaryDue(deliveryDate, settings);
+            this.scheduleNext(settings);
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Builds the summary of a bucket, with categories largest first.
+     */
+    private static SpendingSummary summarize(Bucket bucket) {
+        List<Map.Entry<String, long[]>> categories = new ArrayList<>(bucket.categories.entrySet());
+        categories.sort((a, b) -> Long.compare(b.getValue()[0], a.getValue()[0]));
+        Map<String, Long> totals = new LinkedHashMap<>();
+        for (Map.Entry<String, long[]> category : categories) {
+            totals.put(category.getKey(), category.getValue()[0]);
+        }
+        return new SpendingSummary(Periods.startDate(bucket.granularity, bucket.period),
+                Periods.startDate(bucket.granularity, bucket.period + 1).minusDays(1), bucket.total, bucket.count,
+                Collections.unmodifiableMap(totals), Collections.unmodifiableMap(bucket.merchants.top(TOP_MERCHANTS)));
+    }
+
+    /**
+     * Packs a granularity and period number into a map key.
+     */
+    private static long key(int granularity, int period) {
+        return ((long)granularity << 32) | (period & 0xffffffffL);
+    }
+}
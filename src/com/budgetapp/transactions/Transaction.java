@@ -0,0 +1,20 @@
+import java.time.LocalDate;
+
+/**
+ * One spending entry. Amounts are in cents of the display currency and negative for refunds.
+ */
+public record Transaction(long id, int epochDay, long amountCents, String category, String merchant) {
+    /**
+     * Creates a transaction dated on the given day.
+     */
+    public Transaction(long id, LocalDate date, long amountCents, String category, String merchant) {
+        this(id, (int)date.toEpochDay(), amountCents, category, merchant);
+    }
+
+    /**
+     * Retrieves the date of the transaction.
+     */
+    public LocalDate date() {
+        return LocalDate.ofEpochDay(this.epochDay);
+    }
+}
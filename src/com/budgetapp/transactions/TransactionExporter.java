@@ -0,0 +1,716 @@
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.Currency;
+import java.util.function.IntFunction;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Exports the transactions in a store to CSV, Excel or PDF, streaming them straight to a file or stream.
+ *
+ * Rows are pulled from the store a batch at a time and written through one fixed buffer, so
+ * memory does not grow with the number of transactions. The encoded text of each category,
+ * merchant and recently seen date is cached, so most rows are written by copying bytes.
+ * Excel files are a zip of sheet XML written as it goes, a new sheet every million rows as
+ * Excel requires, with names kept in a shared strings table numbered by their dictionary
+ * codes and written at the end. PDF pages are written one at a time; only the PDF's
+ * cross-reference table, 8 bytes per object, is kept until the end. Transactions added while
+ * an export runs may or may not be included.
+ */
+public class TransactionExporter {
+    //Rows read from the store at a time
+    private static final int BATCH = 4096;
+
+    //Output buffer size
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    //Dates whose text is cached, indexed by epoch day
+    private static final int DATE_CACHE_SIZE = 1024;
+
+    //Excel's row limit per sheet, header included, and the serial number of 1970-01-01
+    private static final int EXCEL_SHEET_ROWS = 1 << 20;
+    private static final int EXCEL_EPOCH = 25569;
+
+    //PDF page layout in points, with column widths in characters of 8 point Courier
+    private static final int PDF_ROWS_PER_PAGE = 70;
+    private static final int PDF_DATE_WIDTH = 12;
+    private static final int PDF_CATEGORY_WIDTH = 26;
+    private static final int PDF_MERCHANT_WIDTH = 52;
+    private static final int PDF_AMOUNT_WIDTH = 16;
+
+    private static final String[] HEADERS = new String[]{"Date", "Category", "Merchant", "Amount"};
+
+    private static final byte[] CSV_NEWLINE = ascii("\r\n");
+    private static final byte[] XML_ROW_START = ascii("<row>");
+    private static final byte[] XML_ROW_END = ascii("</row>\n");
+    private static final byte[] XML_AMOUNT_START = ascii("<c s=\"2\"><v>");
+    private static final byte[] XML_AMOUNT_END = ascii("</v></c>");
+    private static final byte[] PDF_ROW_START = ascii("T* (");
+    private static final byte[] PDF_ROW_END = ascii(") Tj\n");
+    private static final byte[] PDF_PAGE_START = pdfPageStart();
+    private static final byte[] PDF_FOOTER_START = ascii("ET\nBT /F1 8 Tf 36 30 Td (Page ");
+    private static final byte[] PDF_FOOTER_END = ascii(") Tj ET\n");
+    private static final byte[] PDF_STREAM_START = ascii(" 0 obj\n<</Length ");
+    private static final byte[] PDF_STREAM_DATA = ascii(">>\nstream\n");
+    private static final byte[] PDF_STREAM_END = ascii("endstream\nendobj\n");
+    private static final byte[] PDF_PAGE_OBJECT = ascii(" 0 obj\n<</Type/Page/Parent 2 0 R/MediaBox[0 0 612 792]"
+            + "/Resources<</Font<</F1 3 0 R>>>>/Contents ");
+    private static final byte[] PDF_REFERENCE = ascii(" 0 R ");
+    private static final byte[] PDF_OBJECT_END = ascii(">>\nendobj\n");
+    private static final byte[] PDF_XREF_ENTRY = ascii(" 00000 n \n");
+
+    private final TransactionStore store;
+    private final DateTimeFormatter dateFormat;
+    private final int fractionDigits;
+
+    /**
+     * Creates an exporter that writes dates and amounts in the format and currency of the active settings.
+     */
+    public TransactionExporter(TransactionStore store) {
+        this(store, SettingsManager.get(SettingsSchema.DATE_FORMAT), SettingsManager.get(SettingsSchema.CURRENCY));
+    }
+
+    /**
+     * Creates an exporter that writes dates in the given format and amounts in minor units of the given currency.
+     */
+    public TransactionExporter(TransactionStore store, DateTimeFormatter dateFormat, Currency currency) {
+        this.store = store;
+        this.dateFormat = dateFormat;
+        this.fractionDigits = Math.max(0, currency.getDefaultFractionDigits());
+    }
+
+    /**
+     * Exports every transaction to a file, replacing it if it exists.
+     */
+    public void export(Path file, ExportFormat format) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            this.export(channel, format);
+        }
+    }
+
+    /**
+     * Exports every transaction to a stream, leaving it open.
+     */
+    public void export(OutputStream stream, ExportFormat format) throws IOException {
+        this.export(Channels.newChannel(stream), format);
+        stream.flush();
+    }
+
+    /**
+     * Exports every transaction to a channel, leaving it open.
+     */
+    public void export(WritableByteChannel channel, ExportFormat format) throws IOException {
+        switch (format) {
+            case CSV -> this.writeCsv(new Output(channel));
+            case EXCEL -> this.writeExcel(channel);
+            case PDF -> this.writePdf(new Output(channel));
+        }
+    }
+
+    /**
+     * Writes a CSV file with a header line, quoting fields as RFC 4180 describes.
+     */
+    private void writeCsv(Output out) throws IOException {
+        for (int i = 0; i < HEADERS.length; ++i) {
+            out.write(csvField(HEADERS[i], i < HEADERS.length - 1 ? "," : ""));
+        }
+        out.write(CSV_NEWLINE);
+
+        //Each cached field carries the separator after it
+        DateCache dates = new DateCache((day) -> csvField(this.formatDate(day), ","));
+        StringDictionary categoryNames = this.store.getCategories();
+        StringDictionary merchantNames = this.store.getMerchants();
+        NameCache categories = new NameCache((code) -> csvField(categoryNames.value(code), ","));
+        NameCache merchants = new NameCache((code) -> csvField(merchantNames.value(code), ","));
+        byte[] amount = new byte[32];
+        Batch batch = new Batch();
+        while (batch.next(this.store)) {
+            for (int i = 0; i < batch.size; ++i) {
+                out.write(dates.get(batch.days[i]));
+                out.write(categories.get(batch.categories[i]));
+                out.write(merchants.get(batch.merchants[i]));
+                int start = formatAmount(batch.amounts[i], this.fractionDigits, amount);
+                out.write(amount, start, amount.length - start);
+                out.write(CSV_NEWLINE);
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * Writes an Excel workbook: the sheets first, streamed row by row, then the parts that list them.
+     */
+    private void writeExcel(WritableByteChannel channel) throws IOException {
+        BufferedOutputStream buffered = new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE);
+        ZipOutputStream zip = new ZipOutputStream(buffered, StandardCharsets.UTF_8);
+        //Deflating dominates the cost of an export, and the fastest level still shrinks sheet XML several times
+        zip.setLevel(Deflater.BEST_SPEED);
+        Output out = new Output(Channels.newChannel(zip));
+
+        DateCache dates = new DateCache((day) -> day + EXCEL_EPOCH > 60
+                ? ascii("<c s=\"1\"><v>" + (day + EXCEL_EPOCH) + "</v></c>")
+                : ascii("<c t=\"inlineStr\"><is><t>" + this.formatDate(day) + "</t></is></c>"));
+        //Names refer to the shared strings written at the end, categories at even and merchants at odd positions
+        NameCache categories = new NameCache((code) -> ascii(code < 0 ? "<c/>" : "<c t=\"s\"><v>" + 2 * code + "</v></c>"));
+        NameCache merchants = new NameCache((code) -> ascii(code < 0 ? "<c/>" : "<c t=\"s\"><v>" + (2 * code + 1) + "</v></c>"));
+        byte[] amount = new byte[32];
+        int sheets = 0;
+        int rows = EXCEL_SHEET_ROWS;
+        Batch batch = new Batch();
+        while (batch.next(this.store)) {
+            for (int i = 0; i < batch.size; ++i) {
+                if (rows == EXCEL_SHEET_ROWS) {
+                    if (sheets > 0) {
+                        endSheet(zip, out);
+                    }
+                    startSheet(zip, out, ++sheets);
+                    rows = 1;
+                }
+                out.write(XML_ROW_START);
+                out.write(dates.get(batch.days[i]));
+                out.write(categories.get(batch.categories[i]));
+                out.write(merchants.get(batch.merchants[i]));
+                out.write(XML_AMOUNT_START);
+                int start = formatAmount(batch.amounts[i], this.fractionDigits, amount);
+                out.write(amount, start, amount.length - start);
+                out.write(XML_AMOUNT_END);
+                out.write(XML_ROW_END);
+                ++rows;
+            }
+        }
+        if (sheets == 0) {
+            startSheet(zip, out, ++sheets);
+        }
+        endSheet(zip, out);
+
+        //Shared strings, read from the dictionaries now so names added during the export are included
+        StringDictionary categoryNames = this.store.getCategories();
+        StringDictionary merchantNames = this.store.getMerchants();
+        zip.putNextEntry(new ZipEntry("xl/sharedStrings.xml"));
+        out.write(ascii("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n"
+                + "<sst xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\">\n"));
+        int names = Math.max(categoryNames.size(), merchantNames.size());
+        for (int code = 0; code < names; ++code) {
+            out.write(sharedString(code < categoryNames.size() ? categoryNames.value(code) : null));
+            out.write(sharedString(code < merchantNames.size() ? merchantNames.value(code) : null));
+        }
+        out.write(ascii("</sst>\n"));
+        out.flush();
+        zip.closeEntry();
+
+        //Workbook parts naming every sheet
+        StringBuilder workbook = new StringBuilder("<sheets>");
+        StringBuilder relationships = new StringBuilder();
+        StringBuilder contentTypes = new StringBuilder();
+        for (int sheet = 1; sheet <= sheets; ++sheet) {
+            workbook.append("<sheet name=\"Transactions").append(sheet == 1 ? "" : " " + sheet)
+                    .append("\" sheetId=\"").append(sheet).append("\" r:id=\"rId").append(sheet).append("\"/>");
+            relationships.append("<Relationship Id=\"rId").append(sheet)
+                    .append("\" Type=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships/worksheet\"")
+                    .append(" Target=\"worksheets/sheet").append(sheet).append(".xml\"/>");
+            contentTypes.append("<Override PartName=\"/xl/worksheets/sheet").append(sheet)
+                    .append(".xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.worksheet+xml\"/>");
+        }
+        workbook.append("</sheets>");
+        relationships.append("<Relationship Id=\"rId").append(sheets + 1)
+                .append("\" Type=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships/styles\" Target=\"styles.xml\"/>")
+                .append("<Relationship Id=\"rId").append(sheets + 2)
+                .append("\" Type=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships/sharedStrings\"")
+                .append(" Target=\"sharedStrings.xml\"/>");
+
+        writeEntry(zip, "xl/workbook.xml", "<workbook xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\""
+                + " xmlns:r=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships\">" + workbook + "</workbook>");
+        writeEntry(zip, "xl/_rels/workbook.xml.rels",
+                "<Relationships xmlns=\"http://schemas.openxmlformats.org/package/2006/relationships\">" + relationships + "</Relationships>");
+        writeEntry(zip, "xl/styles.xml", this.excelStyles());
+        writeEntry(zip, "_rels/.rels", "<Relationships xmlns=\"http://schemas.openxmlformats.org/package/2006/relationships\">"
+                + "<Relationship Id=\"rId1\" Type=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships/officeDocument\""
+                + " Target=\"xl/workbook.xml\"/></Relationships>");
+        writeEntry(zip, "[Content_Types].xml", "<Types xmlns=\"http://schemas.openxmlformats.org/package/2006/content-types\">"
+                + "<Default Extension=\"rels\" ContentType=\"application/vnd.openxmlformats-package.relationships+xml\"/>"
+                + "<Default Extension=\"xml\" ContentType=\"application/xml\"/>"
+                + "<Override PartName=\"/xl/workbook.xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.sheet.main+xml\"/>"
+                + "<Override PartName=\"/xl/styles.xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.styles+xml\"/>"
+                + "<Override PartName=\"/xl/sharedStrings.xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.sharedStrings+xml\"/>"
+                + contentTypes + "</Types>");
+        zip.finish();
+        buffered.flush();
+    }
+
+    /**
+     * Opens a sheet entry and writes its header row.
+     */
+    private static void startSheet(ZipOutputStream zip, Output out, int sheet) throws IOException {
+        zip.putNextEntry(new ZipEntry("xl/worksheets/sheet" + sheet + ".xml"));
+        out.write(ascii("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n"
+                + "<worksheet xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\"><sheetData>\n<row>"));
+        for (String header : HEADERS) {
+            out.write(ascii("<c t=\"inlineStr\" s=\"3\"><is><t>" + header + "</t></is></c>"));
+        }
+        out.write(XML_ROW_END);
+    }
+
+    /**
+     * Finishes the sheet entry being written.
+     */
+    private static void endSheet(ZipOutputStream zip, Output out) throws IOException {
+        out.write(ascii("</sheetData></worksheet>\n"));
+        out.flush();
+        zip.closeEntry();
+    }
+
+    /**
+     * Writes a small zip entry in one go.
+     */
+    private static void writeEntry(ZipOutputStream zip, String name, String xml) throws IOException {
+        zip.putNextEntry(new ZipEntry(name));
+        zip.write(("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n" + xml).getBytes(StandardCharsets.UTF_8));
+        zip.closeEntry();
+    }
+
+    /**
+     * Builds the workbook styles: dates in the chosen format, amounts to the currency's decimals, bold headers.
+     */
+    private String excelStyles() {
+        int ordinal = Arrays.asList(SettingsSchema.DATE_FORMATTERS).indexOf(this.dateFormat);
+        String dateCode = ordinal < 0 ? "yyyy-mm-dd" : SettingsSchema.DATE_FORMATS[ordinal].toLowerCase();
+        String amountCode = this.fractionDigits == 0 ? "#,##0" : "#,##0." + "0".repeat(this.fractionDigits);
+        return "<styleSheet xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\">"
+                + "<numFmts count=\"2\"><numFmt numFmtId=\"164\" formatCode=\"" + dateCode + "\"/>"
+                + "<numFmt numFmtId=\"165\" formatCode=\"" + amountCode + "\"/></numFmts>"
+                + "<fonts count=\"2\"><font><sz val=\"11\"/><name val=\"Calibri\"/></font>"
+                + "<font><b/><sz val=\"11\"/><name val=\"Calibri\"/></font></fonts>"
+                + "<fills count=\"2\"><fill><patternFill patternType=\"none\"/></fill><fill><patternFill patternType=\"gray125\"/></fill></fills>"
+                + "<borders count=\"1\"><border><left/><right/><top/><bottom/><diagonal/></border></borders>"
+                + "<cellStyleXfs count=\"1\"><xf numFmtId=\"0\" fontId=\"0\" fillId=\"0\" borderId=\"0\"/></cellStyleXfs>"
+                + "<cellXfs count=\"4\"><xf numFmtId=\"0\" fontId=\"0\" fillId=\"0\" borderId=\"0\" xfId=\"0\"/>"
+                + "<xf numFmtId=\"164\" fontId=\"0\" fillId=\"0\" borderId=\"0\" xfId=\"0\" applyNumberFormat=\"1\"/>"
+                + "<xf numFmtId=\"165\" fontId=\"0\" fillId=\"0\" borderId=\"0\" xfId=\"0\" applyNumberFormat=\"1\"/>"
+                + "<xf numFmtId=\"0\" fontId=\"1\" fillId=\"0\" borderId=\"0\" xfId=\"0\" applyFont=\"1\"/></cellXfs>"
+                + "</styleSheet>";
+    }
+
+    /**
+     * Writes a PDF of fixed-width text pages, each page's content and page object written once it fills.
+     * Pages are numbered so the page tree written at the end can list them without remembering them.
+     */
+    private void writePdf(Output out) throws IOException {
+        //Object 1 is the catalog, 2 the page tree, 3 the font, then a content stream and page object per page
+        long[] offsets = new long[64];
+        out.write(new byte[]{'%', 'P', 'D', 'F', '-', '1', '.', '4', '\n', '%', (byte)0xe2, (byte)0xe3, (byte)0xcf, (byte)0xd3, '\n'});
+        offsets[1] = out.position();
+        out.write(ascii("1 0 obj\n<</Type/Catalog/Pages 2 0 R>>\nendobj\n"));
+        offsets[3] = out.position();
+        out.write(ascii("3 0 obj\n<</Type/Font/Subtype/Type1/BaseFont/Courier/Encoding/WinAnsiEncoding>>\nendobj\n"));
+
+        DateCache dates = new DateCache((day) -> pdfText(this.formatDate(day), PDF_DATE_WIDTH));
+        StringDictionary categoryNames = this.store.getCategories();
+        StringDictionary merchantNames = this.store.getMerchants();
+        NameCache categories = new NameCache((code) -> pdfText(categoryNames.value(code), PDF_CATEGORY_WIDTH));
+        NameCache merchants = new NameCache((code) -> pdfText(merchantNames.value(code), PDF_MERCHANT_WIDTH));
+        byte[] amount = new byte[32];
+        Output page = new Output(null);
+        int pages = 0;
+        int rows = 0;
+        Batch batch = new Batch();
+        while (batch.next(this.store)) {
+            for (int i = 0; i < batch.size; ++i) {
+                if (rows == 0) {
+                    startPage(page);
+                }
+                page.write(PDF_ROW_START);
+                page.write(dates.get(batch.days[i]));
+                page.write(categories.get(batch.categories[i]));
+                page.write(merchants.get(batch.merchants[i]));
+                int start = formatAmount(batch.amounts[i], this.fractionDigits, amount);
+                page.writePadding(PDF_AMOUNT_WIDTH - (amount.length - start), ' ');
+                page.write(amount, start, amount.length - start);
+                page.write(PDF_ROW_END);
+                if (++rows == PDF_ROWS_PER_PAGE) {
+                    offsets = endPage(out, page, ++pages, offsets);
+                    rows = 0;
+                }
+            }
+        }
+        if (rows > 0 || pages == 0) {
+            if (pages == 0 && rows == 0) {
+                startPage(page);
+            }
+            offsets = endPage(out, page, ++pages, offsets);
+        }
+
+        offsets[2] = out.position();
+        out.write(ascii("2 0 obj\n<</Type/Pages/Count " + pages + "/Kids["));
+        for (int i = 0; i < pages; ++i) {
+            out.writeNumber(pageObject(i + 1), 0, ' ');
+            out.write(PDF_REFERENCE);
+        }
+        out.write(ascii("]>>\nendobj\n"));
+
+        //Cross-reference table of fixed 20 byte entries
+        int objects = pageObject(pages) + 1;
+        long xref = out.position();
+        out.write(ascii("xref\n0 " + objects + "\n0000000000 65535 f \n"));
+        for (int object = 1; object < objects; ++object) {
+            out.writeNumber(offsets[object], 10, '0');
+            out.write(PDF_XREF_ENTRY);
+        }
+        out.write(ascii("trailer\n<</Size " + objects + "/Root 1 0 R>>\nstartxref\n" + xref + "\n%%EOF\n"));
+        out.flush();
+    }
+
+    /**
+     * Starts the content of a new page with the column headers.
+     */
+    private static void startPage(Output page) throws IOException {
+        page.reset();
+        page.write(PDF_PAGE_START);
+    }
+
+    /**
+     * Builds the start of every page's content: the font, line spacing and the column headers.
+     */
+    private static byte[] pdfPageStart() {
+        String amount = " ".repeat(PDF_AMOUNT_WIDTH - HEADERS[3].length()) + HEADERS[3];
+        return ascii("BT /F1 8 Tf 10 TL 36 756 Td (" + new String(pdfText(HEADERS[0], PDF_DATE_WIDTH), StandardCharsets.US_ASCII)
+                + new String(pdfText(HEADERS[1], PDF_CATEGORY_WIDTH), StandardCharsets.US_ASCII)
+                + new String(pdfText(HEADERS[2], PDF_MERCHANT_WIDTH), StandardCharsets.US_ASCII) + amount + ") Tj\n");
+    }
+
+    /**
+     * Writes a finished page's content stream and page object, returning the offsets grown as needed.
+     */
+    private static long[] endPage(Output out, Output page, int number, long[] offsets) throws IOException {
+        page.write(PDF_FOOTER_START);
+        page.writeNumber(number, 0, ' ');
+        page.write(PDF_FOOTER_END);
+        int object = pageObject(number);
+        if (object >= offsets.length) {
+            offsets = Arrays.copyOf(offsets, Math.max(object + 1, offsets.length * 2));
+        }
+        offsets[object - 1] = out.position();
+        out.writeNumber(object - 1, 0, ' ');
+        out.write(PDF_STREAM_START);
+        out.writeNumber(page.length, 0, ' ');
+        out.write(PDF_STREAM_DATA);
+        out.write(page.buffer, 0, page.length);
+        out.write(PDF_STREAM_END);
+        offsets[object] = out.position();
+        out.writeNumber(object, 0, ' ');
+        out.write(PDF_PAGE_OBJECT);
+        out.writeNumber(object - 1, 0, ' ');
+        out.write(PDF_REFERENCE);
+        out.write(PDF_OBJECT_END);
+        return offsets;
+    }
+
+    /**
+     * Retrieves the object number of a page, counting from 1; its content stream is the object before.
+     */
+    private static int pageObject(int number) {
+        return 3 + 2 * number;
+    }
+
+    /**
+     * Formats an epoch day in the export's date format.
+     */
+    private String formatDate(int day) {
+        return this.dateFormat.format(LocalDate.ofEpochDay(day));
+    }
+
+    /**
+     * Writes an amount in minor units as a plain decimal at the end of a buffer, returning where it starts.
+     */
+    private static int formatAmount(long amount, int fractionDigits, byte[] text) {
+        //Work with the amount negated to non-positive, which cannot overflow even for Long.MIN_VALUE
+        long rest = amount > 0 ? -amount : amount;
+        int start = text.length;
+        for (int i = 0; i < fractionDigits; ++i) {
+            text[--start] = (byte)('0' - rest % 10);
+            rest /= 10;
+        }
+        if (fractionDigits > 0) {
+            text[--start] = '.';
+        }
+        do {
+            text[--start] = (byte)('0' - rest % 10);
+            rest /= 10;
+        } while (rest != 0);
+        if (amount < 0) {
+            text[--start] = '-';
+        }
+        return start;
+    }
+
+    /**
+     * Encodes a CSV field followed by a separator, quoting it if needed.
+     * Text a spreadsheet would take for a formula is prefixed with a quote so it stays text.
+     */
+    private static byte[] csvField(String value, String separator) {
+        if (value == null) {
+            return ascii(separator);
+        }
+        if (!value.isEmpty() && "=+-@\t\r".indexOf(value.charAt(0)) >= 0) {
+            value = "'" + value;
+        }
+        if (value.indexOf(',') >= 0 || value.indexOf('"') >= 0 || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0) {
+            value = "\"" + value.replace("\"", "\"\"") + "\"";
+        }
+        return (value + separator).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Encodes an entry of the shared strings table, dropping characters XML cannot hold.
+     */
+    private static byte[] sharedString(String value) {
+        StringBuilder cell = new StringBuilder("<si><t xml:space=\"preserve\">");
+        if (value != null) {
+            for (int i = 0; i < value.length(); ++i) {
+                char c = value.charAt(i);
+                switch (c) {
+                    case '&' -> cell.append("&amp;");
+                    case '<' -> cell.append("&lt;");
+                    case '>' -> cell.append("&gt;");
+                    default -> {
+                        if (c >= 0x20 || c == '\t' || c == '\n' || c == '\r') {
+                            cell.append(c);
+                        }
+                    }
+                }
+            }
+        }
+        return cell.append("</t></si>\n").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Encodes text for a PDF string in the Courier font's WinAnsi encoding, cut or padded to a column width.
+     * Characters the encoding lacks become question marks.
+     */
+    private static byte[] pdfText(String value, int width) {
+        byte[] text = new byte[width * 2];
+        int length = 0;
+        int characters = 0;
+        if (value != null) {
+            for (int i = 0; i < value.length() && characters < width - 2; i = value.offsetByCodePoints(i, 1)) {
+                int c = value.codePointAt(i);
+                if (c == '(' || c == ')' || c == '\\') {
+                    text[length++] = '\\';
+                } else if (c == '€') {
+                    c = 0x80;
+                } else if (c < 0x20) {
+                    c = ' ';
+                } else if ((c > 0x7e && c < 0xa0) || c > 0xff) {
+                    c = '?';
+                }
+                text[length++] = (byte)c;
+                ++characters;
+            }
+        }
+        Arrays.fill(text, length, length + width - characters, (byte)' ');
+        return Arrays.copyOf(text, length + width - characters);
+    }
+
+    /**
+     * Encodes ASCII text.
+     */
+    private static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * One batch of rows read from the store, reused for the whole export.
+     */
+    private static final class Batch {
+        private final int[] days = new int[BATCH];
+        private final long[] amounts = new long[BATCH];
+        private final int[] categories = new int[BATCH];
+        private final int[] merchants = new int[BATCH];
+        private final int[] filled = new int[1];
+        private long next;
+        private int size;
+
+        /**
+         * Reads the next batch, returning false once the store is exhausted.
+         */
+        private boolean next(TransactionStore store) {
+            while (this.next >= 0) {
+                this.next = store.read(this.next, this.days, this.amounts, this.categories, this.merchants, BATCH, this.filled);
+                this.size = this.filled[0];
+                if (this.size > 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Encoded text of dictionary names, indexed by code. Bounded by the number of distinct names, not rows.
+     */
+    private static final class NameCache {
+        private final IntFunction<byte[]> encoder;
+        private final byte[] none;
+        private byte[][] entries = new byte[64][];
+
+        private NameCache(IntFunction<byte[]> encoder) {
+            this.encoder = encoder;
+            this.none = encoder.apply(-1);
+        }
+
+        /**
+         * Retrieves the encoded text of a code, or of a missing value for -1.
+         */
+        private byte[] get(int code) {
+            if (code < 0) {
+                return this.none;
+            }
+            if (code >= this.entries.length) {
+                this.entries = Arrays.copyOf(this.entries, Math.max(code + 1, this.entries.length * 2));
+            }
+            byte[] entry = this.entries[code];
+            if (entry == null) {
+                entry = this.encoder.apply(code);
+                this.entries[code] = entry;
+            }
+            return entry;
+        }
+    }
+
+    /**
+     * Encoded text of recently seen dates, one slot per epoch day modulo the cache size.
+     */
+    private static final class DateCache {
+        private final IntFunction<byte[]> encoder;
+        private final int[] days = new int[DATE_CACHE_SIZE];
+        private final byte[][] entries = new byte[DATE_CACHE_SIZE][];
+
+        private DateCache(IntFunction<byte[]> encoder) {
+            this.encoder = encoder;
+        }
+
+        /**
+         * Retrieves the encoded text of an epoch day.
+         */
+        private byte[] get(int day) {
+            int slot = day & (DATE_CACHE_SIZE - 1);
+            byte[] entry = this.entries[slot];
+            if (entry == null || this.days[slot] != day) {
+                entry = this.encoder.apply(day);
+                this.entries[slot] = entry;
+                this.days[slot] = day;
+            }
+            return entry;
+        }
+    }
+
+    /**
+     * Buffered bytes on their way to a channel, or kept in memory and grown when there is no channel.
+     */
+    private static final class Output {
+        private final WritableByteChannel channel;
+        private byte[] buffer = new byte[BUFFER_SIZE];
+        private int length;
+        private long flushed;
+        private final byte[] digits = new byte[20];
+
+        private Output(WritableByteChannel channel) {
+            this.channel = channel;
+        }
+
+        /**
+         * Retrieves how many bytes have been written in all.
+         */
+        private long position() {
+            return this.flushed + this.length;
+        }
+
+        private void write(int b) throws IOException {
+            if (this.length == this.buffer.length) {
+                this.makeRoom(1);
+            }
+            this.buffer[this.length++] = (byte)b;
+        }
+
+        private void write(byte[] bytes) throws IOException {
+            this.write(bytes, 0, bytes.length);
+        }
+
+        private void write(byte[] bytes, int offset, int count) throws IOException {
+            if (this.length + count > this.buffer.length) {
+                this.makeRoom(count);
+            }
+            System.arraycopy(bytes, offset, this.buffer, this.length, count);
+            this.length += count;
+        }
+
+        /**
+         * Writes a byte repeated, nothing if the count is not positive.
+         */
+        private void writePadding(int count, char c) throws IOException {
+            for (int i = 0; i < count; ++i) {
+                this.write(c);
+            }
+        }
+
+        /**
+         * Writes a non-negative number, padded on the left to a width.
+         */
+        private void writeNumber(long value, int width, char pad) throws IOException {
+            byte[] digits = this.digits;
+            int start = digits.length;
+            do {
+                digits[--start] = (byte)('0' + value % 10);
+                value /= 10;
+            } while (value != 0);
+            this.writePadding(width - (digits.length - start), pad);
+            this.write(digits, start, digits.length - start);
+        }
+
+        /**
+         * Empties an in-memory output for reuse.
+         */
+        private void reset() {
+            this.length = 0;
+            this.flushed = 0;
+        }
+
+        /**
+         * Writes out the buffer, or grows it if there is no channel, so that count more bytes fit.
+         */
+        private void makeRoom(int count) throws IOException {
+            if (this.channel == null) {
+                this.buffer = Arrays.copyOf(this.buffer, Math.max(this.buffer.length * 2, this.length + count));
+                return;
+            }
+            this.flush();
+            if (count > this.buffer.length) {
+                this.buffer = new byte[count];
+            }
+        }
+
+        /**
+         * Writes the buffered bytes to the channel.
+         */
+        private void flush() throws IOException {
+            ByteBuffer bytes = ByteBuffer.wrap(this.buffer, 0, this.length);
+            while (bytes.hasRemaining()) {
+                this.channel.write(bytes);
+            }
+            this.flushed += this.length;
+            this.length = 0;
+        }
+    }
+}
@@ -0,0 +1,16 @@
+import java.util.EventListener;
+
+/**
+ * Receives transactions as they are added to or removed from a TransactionStore.
+ */
+public interface TransactionListener extends EventListener {
+    /**
+     * Called after a transaction is added, outside the store lock.
+     */
+    void transactionAdded(Transaction transaction);
+
+    /**
+     * Called after a transaction is removed, outside the store lock.
+     */
+    void transactionRemoved(Transaction transaction);
+}
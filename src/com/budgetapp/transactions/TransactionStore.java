@@ -0,0 +1,410 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Holds the user's transactions column by column in primitive arrays.
+ *
+ * A row is a day (int epoch day), an amount (long cents) and dictionary codes for its category
+ * and merchant, about 20 bytes against several times that for a Transaction object and its
+ * strings. Columns grow in fixed-size chunks, so appending never copies existing rows, and
+ * scans run tight loops over each chunk. Row numbers are the transaction ids; removed rows
+ * are only marked, so ids stay stable. Listeners hear of every change outside the lock,
+ * in the order the changes were made.
+ */
+public class TransactionStore {
+    //Rows per chunk
+    private static final int CHUNK_BITS = 16;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private final StringDictionary categories = new StringDictionary();
+    private final StringDictionary merchants = new StringDictionary();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final List<TransactionListener> listeners = new CopyOnWriteArrayList<>();
+
+    //Changes queued under the write lock, handed to listeners in that order once it is released
+    private final ArrayDeque<Change> undelivered = new ArrayDeque<>();
+    private final Object delivery = new Object();
+
+    //Columns, one array per chunk
+    private int[][] days = new int[0][];
+    private long[][] amounts = new long[0][];
+    private int[][] categoryCodes = new int[0][];
+    private int[][] merchantCodes = new int[0][];
+    private final BitSet removed = new BitSet();
+    private int size;
+
+    /**
+     * A change waiting for delivery: added rows from..to, or one removed transaction.
+     */
+    private record Change(int from, int to, Transaction removed) {
+    }
+
+    /**
+     * Registers a listener for added and removed transactions.
+     */
+    public void addListener(TransactionListener listener) {
+        this.listeners.add(listener);
+    }
+
+    /**
+     * Unregisters a listener.
+     */
+    public void removeListener(TransactionListener listener) {
+        this.listeners.remove(listener);
+    }
+
+    /**
+     * Retrieves the dictionary of category names.
+     */
+    public StringDictionary getCategories() {
+        return this.categories;
+    }
+
+    /**
+     * Retrieves the dictionary of merchant names.
+     */
+    public StringDictionary getMerchants() {
+        return this.merchants;
+    }
+
+    /**
+     * Adds a transaction and returns its id.
+     */
+    public long add(int epochDay, long amountCents, String category, String merchant) {
+        int row;
+        this.lock.writeLock().lock();
+        try {
+            row = this.append(epochDay, amountCents, this.categories.code(category), this.merchants.code(merchant));
+            this.queue(new Change(row, row + 1, null));
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+        this.deliverChanges();
+        return row;
+    }
+
+    /**
+     * Adds a batch of transactions given as columns of dictionary codes, returning the id of the first.
+     * Listeners hear of them once the whole batch is in.
+     */
+    public long addAll(int[] epochDays, long[] amountsCents, int[] categories, int[] merchants, int count) {
+        int first;
+        this.lock.writeLock().lock();
+        try {
+            first = this.size;
+            for (int i = 0; i < count; ) {
+                int row = this.size;
+                if ((row & CHUNK_MASK) == 0) {
+                    this.addChunk();
+                }
+                //Copy as much of the batch as fits in the current chunk at once
+                int chunk = row >>> CHUNK_BITS;
+                int offset = row & CHUNK_MASK;
+                int length = Math.min(count - i, CHUNK_SIZE - offset);
+                System.arraycopy(epochDays, i, this.days[chunk], offset, length);
+                System.arraycopy(amountsCents, i, this.amounts[chunk], offset, length);
+                System.arraycopy(categories, i, this.categoryCodes[chunk], offset, length);
+                System.arraycopy(merchants, i, this.merchantCodes[chunk], offset, length);
+                this.size += length;
+                i += length;
+            }
+            this.queue(new Change(first, first + count, null));
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+        this.deliverChanges();
+        return first;
+    }
+
+    /**
+     * Removes a transaction. Returns false if there is no such transaction.
+     */
+    public boolean remove(long id) {
+        Transaction transaction;
+        this.lock.writeLock().lock();
+        try {
+            if (id < 0 || id >= this.size || this.removed.get((int)id)) {
+                return false;
+            }
+            transaction = this.row((int)id);
+            this.removed.set((int)id);
+            this.queue(new Change(0, 0, transaction));
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+        this.deliverChanges();
+        return true;
+    }
+
+    /**
+     * Retrieves a transaction, or null if there is no such transaction.
+     */
+    public Transaction get(long id) {
+        this.lock.readLock().lock();
+        try {
+            return id < 0 || id >= this.size || this.removed.get((int)id) ? null : this.row((int)id);
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Retrieves the number of transactions, removed ones excluded.
+     */
+    public int size() {
+        this.lock.readLock().lock();
+        try {
+            return this.size - this.removed.cardinality();
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Retrieves the total spent between two days inclusive.
+     */
+    public long getTotal(int fromDay, int toDay) {
+        this.lock.readLock().lock();
+        try {
+            long total = 0;
+            for (int chunk = 0; chunk < this.days.length; ++chunk) {
+                int[] days = this.days[chunk];
+                long[] amounts = this.amounts[chunk];
+                int rows = this.rowsIn(chunk);
+                for (int i = 0; i < rows; ++i) {
+                    //All ones when the day is in range, without a branch to mispredict
+                    long inRange = ~(((long)days[i] - fromDay) | ((long)toDay - days[i])) >> 63;
+                    total += amounts[i] & inRange;
+                }
+            }
+            return total - this.removedTotal(fromDay, toDay);
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Retrieves the total spent per category between two days inclusive, indexed by category code.
+     */
+    public long[] getTotalsByCategory(int fromDay, int toDay) {
+        this.lock.readLock().lock();
+        try {
+            long[] totals = new long[this.categories.size()];
+            for (int chunk = 0; chunk < this.days.length; ++chunk) {
+                int[] days = this.days[chunk];
+                long[] amounts = this.amounts[chunk];
+                int[] codes = this.categoryCodes[chunk];
+                int rows = this.rowsIn(chunk);
+                for (int i = 0; i < rows; ++i) {
+                    //All ones when the day is in range, without a branch to mispredict
+                    long inRange = ~(((long)days[i] - fromDay) | ((long)toDay - days[i])) >> 63;
+                    int code = codes[i];
+                    if (code >= 0) {
+                        totals[code] += amounts[i] & inRange;
+                    }
+                }
+            }
+            //Take removed rows back out, as in getTotal
+            for (int id = this.removed.nextSetBit(0); id >= 0; id = this.removed.nextSetBit(id + 1)) {
+                int chunk = id >>> CHUNK_BITS;
+                int offset = id & CHUNK_MASK;
+                int day = this.days[chunk][offset];
+                int code = this.categoryCodes[chunk][offset];
+                if (day >= fromDay && day <= toDay && code >= 0) {
+                    totals[code] -= this.amounts[chunk][offset];
+                }
+            }
+            return totals;
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Retrieves the transactions between two days inclusive, in the order they were added.
+     */
+    public List<Transaction> getBetween(int fromDay, int toDay) {
+        this.lock.readLock().lock();
+        try {
+            List<Transaction> transactions = new ArrayList<>();
+            for (int chunk = 0; chunk < this.days.length; ++chunk) {
+                int[] days = this.days[chunk];
+                int rows = this.rowsIn(chunk);
+                for (int i = 0; i < rows; ++i) {
+                    int id = (chunk << CHUNK_BITS) | i;
+                    if (days[i] >= fromDay && days[i] <= toDay && !this.removed.get(id)) {
+                        transactions.add(this.row(id));
+                    }
+                }
+            }
+            return transactions;
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Copies up to count transactions starting at an id into the given columns, skipping removed ones,
+     * for readers that walk the whole store a chunk at a time. Returns the id to continue from,
+     * or -1 once the end is reached; the number of rows copied is left in filled[0].
+     */
+    public long read(long fromId, int[] epochDays, long[] amountsCents, int[] categories, int[] merchants,
+                     int count, int[] filled) {
+        this.lock.readLock().lock();
+        try {
+            int id = (int)fromId;
+            int n = 0;
+            for (; id < this.size && n < count; ++id) {
+                if (this.removed.get(id)) {
+                    continue;
+                }
+                int chunk = id >>> CHUNK_BITS;
+                int offset = id & CHUNK_MASK;
+                epochDays[n] = this.days[chunk][offset];
+                amountsCents[n] = this.amounts[chunk][offset];
+                categories[n] = this.categoryCodes[chunk][offset];
+                merchants[n] = this.merchantCodes[chunk][offset];
+                ++n;
+            }
+            filled[0] = n;
+            return id >= this.size ? -1 : id;
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Appends one row to the columns.
+     */
+    private int append(int epochDay, long amountCents, int category, int merchant) {
+        int row = this.size;
+        if ((row & CHUNK_MASK) == 0) {
+            this.addChunk();
+        }
+        int chunk = row >>> CHUNK_BITS;
+        int offset = row & CHUNK_MASK;
+        this.days[chunk][offset] = epochDay;
+        this.amounts[chunk][offset] = amountCents;
+        this.categoryCodes[chunk][offset] = category;
+        this.merchantCodes[chunk][offset] = merchant;
+        this.size++;
+        return row;
+    }
+
+    /**
+     * Adds an empty chunk to every column.
+     */
+    private void addChunk() {
+        int chunks = this.days.length + 1;
+        this.days = Arrays.copyOf(this.days, chunks);
+        this.amounts = Arrays.copyOf(this.amounts, chunks);
+        this.categoryCodes = Arrays.copyOf(this.categoryCodes, chunks);
+        this.merchantCodes = Arrays.copyOf(this.merchantCodes, chunks);
+        this.days[chunks - 1] = new int[CHUNK_SIZE];
+        this.amounts[chunks - 1] = new long[CHUNK_SIZE];
+        this.categoryCodes[chunks - 1] = new int[CHUNK_SIZE];
+        this.merchantCodes[chunks - 1] = new int[CHUNK_SIZE];
+    }
+
+    /**
+     * Retrieves the number of rows in use in a chunk.
+     */
+    private int rowsIn(int chunk) {
+        return Math.min(CHUNK_SIZE, this.size - (chunk << CHUNK_BITS));
+    }
+
+    /**
+     * Sums the removed rows between two days.
+     * Scans add up every row without checking for removals and take these back out afterwards.
+     */
+    private long removedTotal(int fromDay, int toDay) {
+        long total = 0;
+        for (int id = this.removed.nextSetBit(0); id >= 0; id = this.removed.nextSetBit(id + 1)) {
+            int chunk = id >>> CHUNK_BITS;
+            int offset = id & CHUNK_MASK;
+            int day = this.days[chunk][offset];
+            if (day >= fromDay && day <= toDay) {
+                total += this.amounts[chunk][offset];
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Builds the Transaction for a row.
+     */
+    private Transaction row(int id) {
+        int chunk = id >>> CHUNK_BITS;
+        int offset = id & CHUNK_MASK;
+        return new Transaction(id, this.days[chunk][offset], this.amounts[chunk][offset],
+                this.categories.value(this.categoryCodes[chunk][offset]), this.merchants.value(this.merchantCodes[chunk][offset]));
+    }
+
+    /**
+     * Queues a change for listeners until the write lock is released.
+     * Must be called holding the write lock.
+     */
+    private void queue(Change change) {
+        if (this.listeners.isEmpty()) {
+            return;
+        }
+        synchronized (this.undelivered) {
+            this.undelivered.add(change);
+        }
+    }
+
+    /**
+     * Hands queued changes to listeners one at a time, in the order they were made.
+     * A change made by a listener is delivered after the one being delivered, by the same loop.
+     */
+    private void deliverChanges() {
+        if (Thread.holdsLock(this.delivery)) {
+            return;
+        }
+
+        synchronized (this.delivery) {
+            while (true) {
+                Change change;
+                synchronized (this.undelivered) {
+                    change = this.undelivered.poll();
+                }
+                if (change == null) {
+                    return;
+                }
+
+                if (change.removed() != null) {
+                    for (TransactionListener listener : this.listeners) {
+                        listener.transactionRemoved(change.removed());
+                    }
+                    continue;
+                }
+                //Rows never change once appended, so an added row is read as it was added even if since removed
+                for (int id = change.from(); id < change.to(); ++id) {
+                    Transaction transaction = this.added(id);
+                    for (TransactionListener listener : this.listeners) {
+                        listener.transactionAdded(transaction);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Retrieves an added row, whether or not it has been removed since.
+     */
+    private Transaction added(int id) {
+        this.lock.readLock().lock();
+        try {
+            return this.row(id);
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,80 @@
+import java.io.IOException;
+
+/**
+ * Checks that a delivery channel retries failed SMTP sessions without sending anything twice,
+ * and reports notifications it gives up on through its statistics.
+ * Run with the compiled sources on the class path; exits with status 1 on the first failure.
+ */
+public class DeliveryChannelCheck {
+    public static void main(String[] args) throws IOException, InterruptedException {
+        try (LocalSmtpServer server = new LocalSmtpServer()) {
+            SmtpSink sink = new SmtpSink("localhost", server.getPort(), "reminders@spentwise.local");
+
+            //Two failed sessions are retried and every notification arrives once
+            server.failNextSessions(2);
+            DeliveryChannel channel = new DeliveryChannel("email", sink, 1000, 50, 10, 5, 1, 10);
+            offer(channel, 120);
+            await(channel, 120);
+            expect(channel.getDelivered(), 120, "delivered after retries");
+            expect(server.getMessages().size(), 120, "messages received");
+            expect(channel.getRetries(), 2, "retried attempts");
+            expect(channel.getDropped(), 0, "dropped after retries");
+            channel.close();
+
+            //A destination that keeps failing has the batch dropped and counted once attempts run out
+            server.failNextSessions(1000);
+            channel = new DeliveryChannel("email", sink, 1000, 50, 10, 2, 1, 10);
+            offer(channel, 10);
+            await(channel, 10);
+            expect(channel.getDropped(), 10, "dropped after every attempt failed");
+            expect(channel.getFailed(), 10, "failed after every attempt failed");
+            if (channel.getLastError() == null) {
+                fail("no error recorded for the dropped batch");
+            }
+            channel.close();
+        }
+        System.out.println("DeliveryChannel retries and drops as expected");
+    }
+
+    /**
+     * Offers numbered bill reminders to a channel.
+     */
+    private static void offer(DeliveryChannel channel, int count) {
+        for (int i = 0; i < count; ++i) {
+            if (!channel.offer(new Notification(i, NotificationType.BILLS, "user" + i + "@example.com",
+                    NotificationType.BILLS.getTitle(), "Reminder " + i, System.nanoTime()))) {
+                fail("channel refused notification " + i);
+            }
+        }
+    }
+
+    /**
+     * Waits up to ten seconds for the channel to finish with the given number of notifications.
+     */
+    private static void await(DeliveryChannel channel, int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (channel.getDelivered() + channel.getFailed() < count) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("channel finished with " + (channel.getDelivered() + channel.getFailed()) + " of " + count);
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Fails the check if a count differs from the expected one.
+     */
+    private static void expect(long actual, long expected, String what) {
+        if (actual != expected) {
+            fail(what + ": got " + actual + ", expected " + expected);
+        }
+    }
+
+    /**
+     * Reports a failure and exits with status 1.
+     */
+    private static void fail(String message) {
+        System.out.println("Failed: " + message);
+        System.exit(1);
+    }
+}
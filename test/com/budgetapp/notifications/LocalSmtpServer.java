@@ -0,0 +1,158 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Minimal SMTP server on the loopback interface that keeps every message it receives.
+ * Stands in for a real mail server when trying out or testing email delivery; it speaks
+ * just enough SMTP for SmtpSink and can be told to reject sessions to exercise retries.
+ */
+public class LocalSmtpServer implements AutoCloseable {
+    private final ServerSocket server;
+    private final ExecutorService sessions = Executors.newVirtualThreadPerTaskExecutor();
+    private final List<Message> messages = Collections.synchronizedList(new ArrayList<>());
+    private volatile int failuresToInject;
+
+    /**
+     * A received message with its envelope and raw content.
+     */
+    public record Message(String sender, List<String> recipients, String content) {
+    }
+
+    /**
+     * Starts a server on a free loopback port.
+     */
+    public LocalSmtpServer() throws IOException {
+        this.server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        Thread acceptor = new Thread(this::accept, "local-smtp");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * Retrieves the port the server listens on.
+     */
+    public int getPort() {
+        return this.server.getLocalPort();
+    }
+
+    /**
+     * Retrieves a copy of every message received so far.
+     */
+    public List<Message> getMessages() {
+        synchronized (this.messages) {
+            return new ArrayList<>(this.messages);
+        }
+    }
+
+    /**
+     * Makes the next sessions fail with a temporary error, to exercise retries.
+     */
+    public void failNextSessions(int count) {
+        this.failuresToInject = count;
+    }
+
+    /**
+     * Stops the server.
+     */
+    public void close() throws IOException {
+        this.server.close();
+        this.sessions.shutdownNow();
+    }
+
+    /**
+     * Accepts connections until closed, serving each on its own virtual thread.
+     */
+    private void accept() {
+        while (!this.server.isClosed()) {
+            try {
+                Socket socket = this.server.accept();
+                this.sessions.execute(() -> this.serve(socket));
+            } catch (SocketException e) {
+                //Server closed
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Runs one SMTP session.
+     */
+    private void serve(Socket socket) {
+        try (socket) {
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            OutputStream out = socket.getOutputStream();
+            if (this.failuresToInject > 0) {
+                this.failuresToInject--;
+                reply(out, "421 Service not available, try again later");
+                return;
+            }
+            reply(out, "220 localhost SpentWise test SMTP");
+
+            String sender = null;
+            List<String> recipients = new ArrayList<>();
+            String line;
+            while ((line = in.readLine()) != null) {
+                String verb = line.length() >= 4 ? line.substring(0, 4).toUpperCase() : line.toUpperCase();
+                switch (verb) {
+                    case "HELO", "EHLO" -> reply(out, "250 localhost");
+                    case "MAIL" -> {
+                        sender = address(line);
+                        recipients = new ArrayList<>();
+                        reply(out, "250 OK");
+                    }
+                    case "RCPT" -> {
+                        recipients.add(address(line));
+                        reply(out, "250 OK");
+                    }
+                    case "DATA" -> {
+                        reply(out, "354 End data with <CR><LF>.<CR><LF>");
+                        StringBuilder content = new StringBuilder();
+                        while ((line = in.readLine()) != null && !line.equals(".")) {
+                            content.append(line.startsWith("..") ? line.substring(1) : line).append("\n");
+                        }
+                        this.messages.add(new Message(sender, List.copyOf(recipients), content.toString()));
+                        reply(out, "250 OK");
+                    }
+                    case "RSET", "NOOP" -> reply(out, "250 OK");
+                    case "QUIT" -> {
+                        reply(out, "221 Bye");
+                        return;
+                    }
+                    default -> reply(out, "502 Command not implemented");
+                }
+            }
+        } catch (IOException e) {
+            //Client went away
+        }
+    }
+
+    /**
+     * Extracts the address between angle brackets in a MAIL or RCPT command.
+     */
+    private static String address(String line) {
+        int start = line.indexOf('<');
+        int end = line.indexOf('>', start + 1);
+        return start >= 0 && end > start ? line.substring(start + 1, end) : line.substring(line.indexOf(':') + 1).trim();
+    }
+
+    /**
+     * Writes one reply line.
+     */
+    private static void reply(OutputStream out, String line) throws IOException {
+        out.write((line + "\r\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+}
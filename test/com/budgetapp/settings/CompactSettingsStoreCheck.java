@@ -0,0 +1,64 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.prefs.Preferences;
+
+/**
+ * Checks that a save too large for the compact blob is refused before it is published,
+ * and that it leaves nothing staged to fail later saves and flushes.
+ * Run with the compiled sources on the class path; exits with status 1 on the first failure.
+ */
+public class CompactSettingsStoreCheck {
+    public static void main(String[] args) throws IOException {
+        //Keep the run away from the real user preferences and warm-start file
+        System.setProperty("java.util.prefs.userRoot", Files.createTempDirectory("spentwise-prefs").toString());
+        System.setProperty("spentwise.settings.snapshot", "none");
+        SettingsManager.setFlushWindow(0);
+
+        //Each value fits in a preferences entry on its own, but the encoded blob of all of them does not
+        AccountSettings before = SettingsManager.getAccountSettings();
+        AccountSettings oversize = withAddress(before, "A".repeat(7000));
+        try {
+            SettingsManager.saveAccountSettings(oversize);
+            fail("oversize save was accepted");
+        } catch (IllegalArgumentException e) {
+            //Expected
+        }
+        expect(SettingsManager.getAddress(), before.address(), "address after the refused save");
+
+        //A normal save afterwards must flush on its own, with nothing left staged from the refused one
+        SettingsManager.saveAccountSettings(withAddress(before, "2 George Street"));
+        SettingsManager.flush();
+        expect(SettingsManager.getAddress(), "2 George Street", "address after the next save");
+        CompactSettingsStore reopened = new CompactSettingsStore(
+                new PreferencesSettingsStore(Preferences.userNodeForPackage(SettingsManager.class)));
+        expect(reopened.get(SettingsManager.KEY_ADDRESS), "2 George Street", "stored address");
+
+        System.out.println("CompactSettingsStore refuses oversize saves before publishing them");
+    }
+
+    /**
+     * Copies account settings with a different address.
+     */
+    private static AccountSettings withAddress(AccountSettings settings, String address) {
+        return new AccountSettings(settings.fullName(), settings.dateOfBirth(), settings.username(),
+                settings.email(), settings.phone(), address, settings.accountCreated(), settings.currency(),
+                settings.twoFactorAuth());
+    }
+
+    /**
+     * Fails the check if a value differs from the expected one.
+     */
+    private static void expect(String actual, String expected, String what) {
+        if (!expected.equals(actual)) {
+            fail(what + ": got " + actual + ", expected " + expected);
+        }
+    }
+
+    /**
+     * Reports a failure and exits with status 1.
+     */
+    private static void fail(String message) {
+        System.out.println("Failed: " + message);
+        System.exit(1);
+    }
+}
@@ -0,0 +1,76 @@
+import java.io.IOException;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Currency;
+import java.util.SplittableRandom;
+
+/**
+ * Checks CurrencyConverter against BigDecimal arithmetic on the feed's own decimal rates.
+ * Run with the compiled sources on the class path; exits with status 1 on the first mismatch.
+ */
+public class CurrencyConverterCheck {
+    //Rates chosen to produce exact ties, repeating quotients and currencies with 0, 2 and 3 decimals
+    private static final String FEED = String.join("\n", "base=USD", "EUR=0.15", "GBP=0.79", "JPY=157.23",
+            "KWD=0.3071", "CHF=0.8875");
+
+    public static void main(String[] args) throws IOException {
+        Currency[] currencies = new Currency[]{Currency.getInstance("USD"), Currency.getInstance("EUR"),
+                Currency.getInstance("GBP"), Currency.getInstance("JPY"), Currency.getInstance("KWD"),
+                Currency.getInstance("CHF")};
+        String[] rates = new String[]{"1", "0.15", "0.79", "157.23", "0.3071", "0.8875"};
+        CurrencyConverter converter = new CurrencyConverter(currencies);
+        converter.load(new StringReader(FEED));
+
+        //An exact half cent: 30 cents at 0.15 is 4.5 cents, which rounds half to even to 4
+        expect(converter.convert(30, currencies[0], currencies[1]), 4, "30 USD cents to EUR");
+        expect(converter.convert(-30, currencies[0], currencies[1]), -4, "-30 USD cents to EUR");
+        expect(converter.convert(10, currencies[0], currencies[1]), 2, "10 USD cents to EUR");
+
+        SplittableRandom random = new SplittableRandom(302);
+        long[] amounts = new long[100000];
+        long[] converted = new long[amounts.length];
+        for (int from = 0; from < currencies.length; ++from) {
+            for (int to = 0; to < currencies.length; ++to) {
+                for (int i = 0; i < amounts.length; ++i) {
+                    //Mostly everyday amounts, with some large enough to reach the overflow path but whose
+                    //results still fit, as no pair here multiplies by more than 64
+                    amounts[i] = i % 100 == 0 ? random.nextLong() >> (6 + random.nextInt(8)) : random.nextLong(-10000000, 10000000);
+                }
+                converter.convert(amounts, 0, converted, 0, amounts.length, currencies[from], currencies[to]);
+
+                for (int i = 0; i < amounts.length; ++i) {
+                    BigDecimal expected = reference(amounts[i], rates[from], rates[to], currencies[from], currencies[to]);
+                    expect(converted[i], expected.longValueExact(), amounts[i] + " " + currencies[from] + " to " + currencies[to]);
+                    expect(converter.convert(amounts[i], currencies[from], currencies[to]), expected.longValueExact(),
+                            amounts[i] + " " + currencies[from] + " to " + currencies[to]);
+                }
+            }
+        }
+        System.out.println("CurrencyConverter matches BigDecimal for " + currencies.length * currencies.length
+                * amounts.length + " conversions");
+    }
+
+    /**
+     * Converts minor units with exact decimals: amount * to / from, shifted between the currencies' decimals.
+     */
+    private static BigDecimal reference(long amount, String fromRate, String toRate, Currency from, Currency to) {
+        BigDecimal numerator = BigDecimal.valueOf(amount).multiply(new BigDecimal(toRate))
+                .scaleByPowerOfTen(to.getDefaultFractionDigits() - from.getDefaultFractionDigits());
+        //Dividing by a decimal rate exactly: multiply both sides up to integers first
+        BigDecimal denominator = new BigDecimal(fromRate);
+        int scale = Math.max(0, Math.max(numerator.scale(), denominator.scale()));
+        return new BigDecimal(numerator.movePointRight(scale).toBigIntegerExact())
+                .divide(new BigDecimal(denominator.movePointRight(scale).toBigIntegerExact()), 0, RoundingMode.HALF_EVEN);
+    }
+
+    /**
+     * Fails the check if a converted amount differs from the expected one.
+     */
+    private static void expect(long actual, long expected, String what) {
+        if (actual != expected) {
+            System.out.println("Mismatch for " + what + ": got " + actual + ", expected " + expected);
+            System.exit(1);
+        }
+    }
+}